@@ -0,0 +1,110 @@
+package br.hefesto.simulation;
+
+import java.lang.management.ManagementFactory;
+
+import br.law123.core.Matrix3;
+import br.law123.core.Quaternion;
+import br.law123.core.Vector3;
+import br.law123.force.Gravity;
+import br.law123.rigidbody.RigidBody;
+
+/**
+ * Mede a memria alocada pela integrao de {@link PhysicSimulation}
+ * ({@link PhysicSimulation#integrateObjects(double)}), por thread, com
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ * </br>
+ * Monta corpos acordados, com gravidade, aquece a JVM e ento conta os bytes
+ * alocados em N passos, nos dois caminhos: corpos soltos e
+ * {@link PhysicSimulation#setBodyStore(boolean) RigidBodyStore}. A
+ * integrao deve ser livre de alocao; qualquer byte alocado encerra com
+ * cdigo 1. </br>
+ * O passo paralelo no  medido: as faixas alocam as tarefas do executor.
+ * Os iteradores e o vetor de {@link Gravity} so temporrios que a anlise
+ * de escape do JIT elimina; com <code>-XX:-DoEscapeAnalysis</code> eles
+ * aparecem na conta.
+ *
+ * <pre>
+ * java -cp &lt;classes&gt; br.hefesto.simulation.IntegrateAllocationTest [corpos] [passos]
+ * </pre>
+ *
+ * @author teixeira
+ */
+public final class IntegrateAllocationTest {
+
+    private static final double DURATION = 1.0 / 120;
+    private static final int WARMUP_STEPS = 20000;
+
+    private IntegrateAllocationTest() {
+    }
+
+    public static void main(String[] args) {
+        int bodies = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("FAILED: a JVM no mede a alocao por thread");
+            System.exit(1);
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        boolean ok = true;
+        for (boolean store : new boolean[] { false, true }) {
+            PhysicSimulation simulation = new PhysicSimulation(1);
+            simulation.setParallel(false);
+            simulation.setBodyStore(store);
+            populate(simulation, bodies);
+
+            for (int i = 0; i < WARMUP_STEPS; i++) {
+                simulation.integrateObjects(DURATION);
+            }
+
+            long thread = Thread.currentThread().getId();
+            long before = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            for (int i = 0; i < steps; i++) {
+                simulation.integrateObjects(DURATION);
+            }
+            long elapsed = System.nanoTime() - start;
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+            System.out.printf("%s\t%d corpos\t%d passos\t%d B\t%.1f B/passo\t%.1f ns/corpo%n", store ? "store" : "objetos", bodies, steps, allocated,
+                    allocated / (double) steps, elapsed / (double) steps / bodies);
+            ok &= allocated == 0;
+        }
+        if (!ok) {
+            System.out.println("FAILED: a integrao alocou memria");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /**
+     * Corpos soltos no espao, que nunca adormecem, sob a gravidade do mundo.
+     */
+    private static void populate(PhysicSimulation simulation, int bodies) {
+        simulation.addForce(new HForce("gravity", new Gravity(new Vector3(0, -10, 0))));
+        for (int i = 0; i < bodies; i++) {
+            HRigidBody hbody = new HRigidBody("b" + i, simulation);
+            RigidBody body = hbody.initBody();
+            body.setPosition(new Vector3((i % 16) * 2, 100 + i * 0.1, (i / 16) * 2));
+            body.setOrientation(new Quaternion(1, 0, 0, 0));
+            body.setVelocity(new Vector3(0, 0, 0));
+            body.setRotation(new Vector3(0.1, 0.2, 0.3));
+            body.setAcceleration(new Vector3());
+            body.setMass(1);
+            Matrix3 tensor = new Matrix3();
+            tensor.setBlockInertiaTensor(new Vector3(0.5, 0.5, 0.5), 1);
+            body.setInertiaTensor(tensor);
+            body.setLinearDamping(0.95);
+            body.setAngularDamping(0.8);
+            body.setCanSleep(false);
+            hbody.setRadius(0.5);
+            hbody.setUseWorldForces(true);
+            body.calculateDerivedData();
+            hbody.calculateInternals();
+            simulation.addRigidBody(hbody);
+        }
+    }
+
+}
@@ -0,0 +1,234 @@
+package br.hefesto.ws;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import org.json.JSONObject;
+
+import br.hefesto.ws.processor.CommandType;
+
+/**
+ * Teste de inundao da caixa de mensagens de uma sesso (ver
+ * {@link SessionMailbox}). </br>
+ * Primeiro mede o tempo de uma {@link CommandType#INTEGRATE} enviando uma
+ * por vez. Depois envia uma rajada que enche a caixa, sem transbordar, e por
+ * fim um cliente falso envia mensagens sem esperar as respostas. O teste
+ * verifica que:
+ * <ul>
+ * <li>as mensagens pendentes nunca passam da capacidade da caixa;</li>
+ * <li>a sesso  fechada pelo transbordo;</li>
+ * <li>nenhuma resposta demora mais do que uma caixa cheia de mensagens;</li>
+ * <li>a memria retida depois do fechamento volta ao que era antes.</li>
+ * </ul>
+ * Termina com cdigo 1 se alguma verificao falhar.
+ *
+ * <pre>
+ * java -Dhefesto.ws.inboundCapacity=256 -cp &lt;classes&gt; br.hefesto.ws.MailboxFloodTest [segundos]
+ * </pre>
+ *
+ * @author teixeira
+ */
+public final class MailboxFloodTest {
+
+    private static final int WARMUP_MESSAGES = 500;
+    // folga para pausas do GC e do escalonador
+    private static final long LATENCY_SLACK_NANOS = 250000000L;
+    private static final long RETAINED_LIMIT = 16 * 1024 * 1024;
+
+    private MailboxFloodTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 10;
+        int capacity = SessionMailbox.DEFAULT_CAPACITY;
+
+        long before = usedMemory();
+
+        Client client = new Client("flood");
+        SimulationProcessor processor = PhysicSimulationOrchestrator.bindConnection(client.session);
+        MailboxLoadTest.populate(processor.getSimulation());
+
+        // tempo de servio, uma mensagem por vez
+        long start = System.nanoTime();
+        for (int i = 0; i < WARMUP_MESSAGES; i++) {
+            client.sendAndWait();
+        }
+        long service = (System.nanoTime() - start) / WARMUP_MESSAGES;
+        client.resetLatency();
+
+        // rajada do tamanho da caixa: todas respondidas, a ltima depois das demais
+        long expected = client.replies.get() + capacity;
+        for (int i = 0; i < capacity; i++) {
+            client.send();
+        }
+        while (client.replies.get() < expected && !client.closed) {
+            Thread.sleep(1);
+        }
+        long burstLatency = client.getMaxLatency();
+        boolean burstClosed = client.closed;
+
+        // inundao: envia sem esperar, at a sesso ser fechada
+        int maxPending = 0;
+        long posted = 0;
+        long deadline = System.nanoTime() + (long) (seconds * 1e9);
+        while (!client.closed && System.nanoTime() < deadline) {
+            client.send();
+            posted++;
+            maxPending = Math.max(maxPending, processor.getPendingMessages());
+        }
+        // espera o comando em execuo, se houver
+        Thread.sleep(500);
+
+        long retained = usedMemory() - before;
+        long latencyBound = capacity * service + LATENCY_SLACK_NANOS;
+
+        long maxLatency = client.getMaxLatency();
+        System.out.println("capacity=" + capacity + " service=" + service / 1000 + "us burst=" + burstLatency / 1000000 + "ms posted=" + posted + " replies="
+                + client.replies.get());
+        System.out.println("maxPending=" + maxPending + " maxLatency=" + maxLatency / 1000000 + "ms (bound " + latencyBound / 1000000 + "ms) retained="
+                + retained / 1024 + "KB");
+
+        boolean ok = true;
+        ok &= check(!burstClosed, "a burst of capacity messages closed the session");
+        ok &= check(maxPending <= capacity, "pending messages exceeded the mailbox capacity");
+        ok &= check(client.closed, "the flooding session was not closed");
+        ok &= check(PhysicSimulationOrchestrator.find(processor.getSimulation().getId()) == null, "the flooding session is still registered");
+        ok &= check(maxLatency <= latencyBound, "a reply took longer than a full mailbox");
+        ok &= check(retained <= RETAINED_LIMIT, "memory retained after the flood");
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAIL: " + message);
+        }
+        return condition;
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Cliente falso: a sesso responde na hora a cada envio, mede a latncia
+     * de cada resposta pelo id e, ao ser fechada, encerra a simulao como o
+     * endpoint faria.
+     */
+    private static final class Client implements InvocationHandler {
+
+        final Session session;
+        final RemoteEndpoint.Async remote;
+        final Map<String, Object> properties = new HashMap<String, Object>();
+        final String id;
+        // instante de envio por id da mensagem
+        final Map<Integer, Long> pending = new ConcurrentHashMap<Integer, Long>();
+        final AtomicLong replies = new AtomicLong();
+        volatile boolean closed;
+        private long maxLatency;
+        private int nextId;
+
+        Client(String id) {
+            this.id = id;
+            ClassLoader loader = MailboxFloodTest.class.getClassLoader();
+            this.session = (Session) Proxy.newProxyInstance(loader, new Class<?>[] { Session.class }, this);
+            this.remote = (RemoteEndpoint.Async) Proxy.newProxyInstance(loader, new Class<?>[] { RemoteEndpoint.Async.class }, this);
+        }
+
+        void send() {
+            JSONObject data = new JSONObject();
+            data.put("duration", 1 / 60.0);
+            JSONObject message = new JSONObject();
+            int messageId = nextId++;
+            message.put("id", messageId);
+            message.put("type", CommandType.INTEGRATE.getCommand());
+            message.put("data", data);
+            pending.put(messageId, System.nanoTime());
+            PhysicSimulationOrchestrator.processMessage(session, message.toString());
+        }
+
+        void sendAndWait() throws InterruptedException {
+            long expected = replies.get() + 1;
+            send();
+            while (replies.get() < expected) {
+                Thread.sleep(0, 100000);
+            }
+        }
+
+        private void received(String text) {
+            Long sent = pending.remove(new JSONObject(text).getInt("id"));
+            if (sent != null) {
+                long latency = System.nanoTime() - sent;
+                synchronized (this) {
+                    maxLatency = Math.max(maxLatency, latency);
+                }
+                replies.incrementAndGet();
+            }
+        }
+
+        synchronized long getMaxLatency() {
+            return maxLatency;
+        }
+
+        synchronized void resetLatency() {
+            maxLatency = 0;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("toString".equals(name)) {
+                return id;
+            }
+            if ("getAsyncRemote".equals(name)) {
+                return remote;
+            }
+            if ("getUserProperties".equals(name)) {
+                return properties;
+            }
+            if ("getId".equals(name)) {
+                return id;
+            }
+            if ("isOpen".equals(name)) {
+                return !closed;
+            }
+            if ("close".equals(name)) {
+                if (!closed) {
+                    closed = true;
+                    PhysicSimulationOrchestrator.kill(session);
+                }
+                return null;
+            }
+            if (("sendText".equals(name) || "sendBinary".equals(name)) && args.length == 2) {
+                if ("sendText".equals(name)) {
+                    received((String) args[0]);
+                }
+                ((SendHandler) args[1]).onResult(new SendResult());
+                return null;
+            }
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,264 @@
+package br.hefesto.ws;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import org.json.JSONObject;
+
+import br.hefesto.simulation.Collision;
+import br.hefesto.simulation.CollisionType;
+import br.hefesto.simulation.HRigidBody;
+import br.hefesto.simulation.PhysicSimulation;
+import br.hefesto.ws.processor.CommandType;
+import br.law123.collide.CollisionData;
+import br.law123.core.Matrix3;
+import br.law123.core.Quaternion;
+import br.law123.core.Vector3;
+import br.law123.rigidbody.RigidBody;
+
+/**
+ * Teste de carga das caixas de mensagens das sesses (ver
+ * {@link SessionMailbox}). </br>
+ * Abre sesses falsas pelo mesmo caminho do endpoint
+ * ({@link PhysicSimulationOrchestrator}) e mantm, em cada uma, um nmero
+ * fixo de {@link CommandType#INTEGRATE} em voo: cada resposta recebida
+ * envia o prximo. Mede as mensagens respondidas por segundo, somadas entre
+ * as sesses. </br>
+ * Sem a lista de workers, repete a medida em uma JVM nova para 1, 2, 4...
+ * at a quantidade de processadores, variando
+ * <code>hefesto.simulation.workers</code>, e mostra o ganho sobre um worker.
+ * Como as sesses so independentes, o total deve crescer com os ncleos.
+ *
+ * <pre>
+ * java -cp &lt;classes&gt; br.hefesto.ws.MailboxLoadTest [sesses] [segundos] [workers...]
+ * </pre>
+ *
+ * @author teixeira
+ */
+public final class MailboxLoadTest {
+
+    private static final String CHILD = "--child";
+    private static final String RESULT = "RESULT ";
+
+    // mensagens em voo por sesso
+    private static final int IN_FLIGHT = 4;
+    // esferas em cada simulao
+    private static final int BODIES = 16;
+    private static final double WARMUP_SECONDS = 2;
+
+    private MailboxLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && CHILD.equals(args[0])) {
+            int sessions = Integer.parseInt(args[1]);
+            double seconds = Double.parseDouble(args[2]);
+            System.out.println(RESULT + run(sessions, seconds));
+            System.exit(0);
+        }
+
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 5;
+        List<Integer> workers = new ArrayList<Integer>();
+        for (int i = 2; i < args.length; i++) {
+            workers.add(Integer.parseInt(args[i]));
+        }
+        if (workers.isEmpty()) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int n = 1; n < cores; n *= 2) {
+                workers.add(n);
+            }
+            workers.add(cores);
+        }
+
+        System.out.println(sessions + " sessions, " + IN_FLIGHT + " messages in flight each, " + seconds + " s per run, "
+                + Runtime.getRuntime().availableProcessors() + " processors");
+        System.out.println("workers\tmsg/s\tspeedup");
+        double base = 0;
+        for (int n : workers) {
+            double rate = fork(n, sessions, seconds);
+            if (base == 0) {
+                base = rate;
+            }
+            System.out.printf("%d\t%.0f\t%.2f%n", n, rate, rate / base);
+        }
+    }
+
+    /**
+     * Mede em uma JVM nova, j que os workers so criados uma nica vez.
+     */
+    private static double fork(int workers, int sessions, double seconds) throws Exception {
+        String java = System.getProperty("java.home") + "/bin/java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-Dhefesto.simulation.workers=" + workers, "-cp", System.getProperty("java.class.path"),
+                MailboxLoadTest.class.getName(), CHILD, String.valueOf(sessions), String.valueOf(seconds));
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+
+        double rate = -1;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT)) {
+                    rate = Double.parseDouble(line.substring(RESULT.length()));
+                } else {
+                    System.err.println(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (process.waitFor() != 0 || rate < 0) {
+            throw new IllegalStateException("Load test run failed with " + workers + " workers.");
+        }
+        return rate;
+    }
+
+    /**
+     * @return mensagens respondidas por segundo, somadas entre as sesses.
+     */
+    private static double run(int sessions, double seconds) throws InterruptedException {
+        AtomicLong replies = new AtomicLong();
+        List<Client> clients = new ArrayList<Client>();
+        for (int i = 0; i < sessions; i++) {
+            Client client = new Client("load-" + i, replies);
+            SimulationProcessor processor = PhysicSimulationOrchestrator.bindConnection(client.session);
+            populate(processor.getSimulation());
+            clients.add(client);
+        }
+        for (Client client : clients) {
+            client.started = true;
+            for (int i = 0; i < IN_FLIGHT; i++) {
+                client.send();
+            }
+        }
+
+        Thread.sleep((long) (WARMUP_SECONDS * 1000));
+        long start = System.nanoTime();
+        long first = replies.get();
+        Thread.sleep((long) (seconds * 1000));
+        long count = replies.get() - first;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        for (Client client : clients) {
+            client.started = false;
+            PhysicSimulationOrchestrator.kill(client.session);
+        }
+        return count / elapsed;
+    }
+
+    /**
+     * Esferas sobre o plano, que nunca adormecem, para que cada passo custe o
+     * mesmo.
+     */
+    static void populate(PhysicSimulation simulation) {
+        CollisionData data = new CollisionData("ground", 0.6, 0.0, 0.01, 256);
+        simulation.addCollisionData(data);
+        for (int i = 0; i < BODIES; i++) {
+            HRigidBody hbody = new HRigidBody("b" + i, simulation);
+            RigidBody body = hbody.initBody();
+            body.setPosition(new Vector3((i % 4) * 2, 1 + i * 0.1, (i / 4) * 2));
+            body.setOrientation(new Quaternion(1, 0, 0, 0));
+            body.setVelocity(new Vector3());
+            body.setRotation(new Vector3());
+            body.setAcceleration(new Vector3(0, -10, 0));
+            body.setMass(1);
+            Matrix3 tensor = new Matrix3();
+            tensor.setBlockInertiaTensor(new Vector3(0.5, 0.5, 0.5), 1);
+            body.setInertiaTensor(tensor);
+            body.setLinearDamping(0.95);
+            body.setAngularDamping(0.8);
+            body.setCanSleep(false);
+            hbody.setRadius(0.5);
+            body.calculateDerivedData();
+            hbody.calculateInternals();
+            simulation.addRigidBody(hbody);
+            simulation.addCollision(new Collision("ground" + i, CollisionType.SPHERE_AND_HALFSPACE, data, hbody, null));
+        }
+    }
+
+    /**
+     * Cliente falso: a sesso responde na hora a cada envio, e cada resposta
+     * de comando dispara o prximo.
+     */
+    private static final class Client implements InvocationHandler {
+
+        final Session session;
+        final RemoteEndpoint.Async remote;
+        final Map<String, Object> properties = new HashMap<String, Object>();
+        final String id;
+        final AtomicLong replies;
+        volatile boolean started;
+        private int nextId;
+
+        Client(String id, AtomicLong replies) {
+            this.id = id;
+            this.replies = replies;
+            ClassLoader loader = MailboxLoadTest.class.getClassLoader();
+            this.session = (Session) Proxy.newProxyInstance(loader, new Class<?>[] { Session.class }, this);
+            this.remote = (RemoteEndpoint.Async) Proxy.newProxyInstance(loader, new Class<?>[] { RemoteEndpoint.Async.class }, this);
+        }
+
+        void send() {
+            JSONObject data = new JSONObject();
+            data.put("duration", 1 / 60.0);
+            JSONObject message = new JSONObject();
+            synchronized (this) {
+                message.put("id", nextId++);
+            }
+            message.put("type", CommandType.INTEGRATE.getCommand());
+            message.put("data", data);
+            PhysicSimulationOrchestrator.processMessage(session, message.toString());
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("toString".equals(name)) {
+                return id;
+            }
+            if ("getAsyncRemote".equals(name)) {
+                return remote;
+            }
+            if ("getUserProperties".equals(name)) {
+                return properties;
+            }
+            if ("getId".equals(name)) {
+                return id;
+            }
+            if ("isOpen".equals(name)) {
+                return Boolean.TRUE;
+            }
+            if (("sendText".equals(name) || "sendBinary".equals(name)) && args.length == 2) {
+                ((SendHandler) args[1]).onResult(new SendResult());
+                // sem passos do servidor, todo texto depois do incio  resposta
+                if (started && "sendText".equals(name)) {
+                    replies.incrementAndGet();
+                    send();
+                }
+                return null;
+            }
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,196 @@
+package br.law123.collide;
+
+import java.util.Random;
+
+import br.law123.core.Quaternion;
+import br.law123.core.Vector3;
+import br.law123.rigidbody.RigidBody;
+
+/**
+ * Checks {@link BoxBoxSat} against the {@link CollideUtils#tryAxis} chain it
+ * replaced in {@link CollisionDetector#boxAndBox}, and times both.
+ *
+ * The check runs random box pairs, overlapping and separated, some of them
+ * axis-aligned so the almost parallel edge axes are skipped. For every pair
+ * the result of {@link BoxBoxSat#test}, and on overlap
+ * {@link BoxBoxSat#getBestCase}, {@link BoxBoxSat#getPenetration} and
+ * {@link BoxBoxSat#getBestSingleAxis}, must be exactly the ones of the
+ * old chain. The run exits with 1 if any pair differs.
+ *
+ * <pre>
+ * java -cp &lt;classes&gt; br.law123.collide.BoxBoxSatBench [pairs] [seconds]
+ * </pre>
+ */
+public final class BoxBoxSatBench {
+
+    private static final long SEED = 20261016L;
+
+    private BoxBoxSatBench() {
+    }
+
+    public static void main(String[] args) {
+        int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 2;
+
+        Random random = new Random(SEED);
+        CollisionBox[][] overlapping = randomPairs(random, pairs, 1.0);
+        CollisionBox[][] separated = randomPairs(random, pairs, 4.0);
+
+        int failures = check(overlapping) + check(separated);
+        if (failures > 0) {
+            System.out.println("FAILED: " + failures + " mismatches");
+            System.exit(1);
+        }
+        System.out.println("OK: " + 2 * pairs + " pairs match the tryAxis chain");
+
+        System.out.println("pairs\toverlap\ttryAxis ns/pair\tBoxBoxSat ns/pair");
+        report("overlapping", overlapping, seconds);
+        report("separated", separated, seconds);
+    }
+
+    private static int check(CollisionBox[][] pairs) {
+        BoxBoxSat sat = new BoxBoxSat();
+        Reference reference = new Reference();
+        int failures = 0;
+        for (int i = 0; i < pairs.length; i++) {
+            CollisionBox one = pairs[i][0];
+            CollisionBox two = pairs[i][1];
+            boolean expected = reference.test(one, two);
+            boolean actual = sat.test(one, two);
+            boolean same = expected == actual;
+            if (same && expected) {
+                same = reference.bestCase == sat.getBestCase() && Double.compare(reference.penetration, sat.getPenetration()) == 0
+                       && reference.bestSingleAxis == sat.getBestSingleAxis();
+            }
+            if (!same) {
+                failures++;
+                if (failures <= 10) {
+                    System.out.println("pair " + i + ": tryAxis " + expected + " case " + reference.bestCase + " pen " + reference.penetration + " single "
+                                       + reference.bestSingleAxis + ", BoxBoxSat " + actual + " case " + sat.getBestCase() + " pen " + sat.getPenetration()
+                                       + " single " + sat.getBestSingleAxis());
+                }
+            }
+        }
+        return failures;
+    }
+
+    private static void report(String name, CollisionBox[][] pairs, double seconds) {
+        BoxBoxSat sat = new BoxBoxSat();
+        Reference reference = new Reference();
+        int overlap = 0;
+        for (CollisionBox[] pair : pairs) {
+            if (sat.test(pair[0], pair[1])) overlap++;
+        }
+        // two rounds each, the first one to warm up
+        double old = 0;
+        double now = 0;
+        for (int round = 0; round < 2; round++) {
+            old = time(pairs, reference, null, seconds / 4);
+            now = time(pairs, null, sat, seconds / 4);
+        }
+        System.out.printf("%s\t%d%%\t%.1f\t%.1f%n", name, 100 * overlap / pairs.length, old, now);
+    }
+
+    /**
+     * @return nanoseconds per pair.
+     */
+    private static double time(CollisionBox[][] pairs, Reference reference, BoxBoxSat sat, double seconds) {
+        long deadline = System.nanoTime() + (long) (seconds * 1e9);
+        long start = System.nanoTime();
+        long count = 0;
+        int sink = 0;
+        do {
+            for (CollisionBox[] pair : pairs) {
+                boolean hit = reference != null ? reference.test(pair[0], pair[1]) : sat.test(pair[0], pair[1]);
+                if (hit) sink++;
+            }
+            count += pairs.length;
+        } while (System.nanoTime() < deadline);
+        double result = (System.nanoTime() - start) / (double) count;
+        if (sink == -1) System.out.println();
+        return result;
+    }
+
+    /**
+     * Pairs of boxes with centres at most <code>range</code> apart on each
+     * axis. A quarter of them keep the identity orientation.
+     */
+    private static CollisionBox[][] randomPairs(Random random, int count, double range) {
+        CollisionBox[][] pairs = new CollisionBox[count][];
+        for (int i = 0; i < count; i++) {
+            boolean aligned = random.nextInt(4) == 0;
+            CollisionBox one = randomBox(random, new Vector3(), aligned);
+            Vector3 offset = new Vector3((random.nextDouble() * 2 - 1) * range, (random.nextDouble() * 2 - 1) * range, (random.nextDouble() * 2 - 1) * range);
+            CollisionBox two = randomBox(random, offset, aligned);
+            pairs[i] = new CollisionBox[] { one, two };
+        }
+        return pairs;
+    }
+
+    private static CollisionBox randomBox(Random random, Vector3 position, boolean aligned) {
+        RigidBody body = new RigidBody();
+        body.setPosition(position);
+        if (aligned) {
+            body.setOrientation(new Quaternion(1, 0, 0, 0));
+        } else {
+            body.setOrientation(new Quaternion(random.nextGaussian(), random.nextGaussian(), random.nextGaussian(), random.nextGaussian()));
+        }
+        body.calculateDerivedData();
+
+        CollisionBox box = new CollisionBox();
+        box.setBody(body);
+        box.setHalfSize(new Vector3(0.2 + random.nextDouble(), 0.2 + random.nextDouble(), 0.2 + random.nextDouble()));
+        box.calculateInternals();
+        return box;
+    }
+
+    /**
+     * The separating axis test of boxAndBox before BoxBoxSat: fifteen calls
+     * to {@link CollideUtils#tryAxis}, the best axis and penetration kept in
+     * {@link NumberReference}s.
+     */
+    private static final class Reference {
+
+        private final Vector3 toCentre = new Vector3();
+        private final Vector3 axis = new Vector3();
+        private final Vector3 oneAxis = new Vector3();
+        private final Vector3 twoAxis = new Vector3();
+
+        int bestCase;
+        double penetration;
+        int bestSingleAxis;
+
+        boolean test(CollisionBox one, CollisionBox two) {
+            two.getAxis(3, toCentre);
+            one.getAxis(3, axis);
+            toCentre.subToMe(axis);
+
+            NumberReference pen = new NumberReference(Double.MAX_VALUE);
+            NumberReference best = new NumberReference(0xffffff);
+            bestSingleAxis = 0xffffff;
+
+            for (int i = 0; i < 6; i++) {
+                (i < 3 ? one : two).getAxis(i % 3, axis);
+                if (!CollideUtils.tryAxis(one, two, axis, toCentre, i, pen, best)) {
+                    return false;
+                }
+            }
+            bestSingleAxis = (Integer) best.get();
+
+            for (int i = 0; i < 3; i++) {
+                one.getAxis(i, oneAxis);
+                for (int j = 0; j < 3; j++) {
+                    two.getAxis(j, twoAxis);
+                    oneAxis.vectorProduct(twoAxis, axis);
+                    if (!CollideUtils.tryAxis(one, two, axis, toCentre, 6 + i * 3 + j, pen, best)) {
+                        return false;
+                    }
+                }
+            }
+            bestCase = (Integer) best.get();
+            penetration = (Double) pen.get();
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,352 @@
+package br.law123.collide;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import br.law123.core.Vector3;
+import br.law123.rigidbody.RigidBody;
+
+/**
+ * Checks {@link DynamicAABBTree} against brute force, then times it against
+ * the deprecated {@link BVHNode}.
+ *
+ * The check creates random boxes and runs steps of moves, destroys and new
+ * proxies. After each step:
+ * <ul>
+ * <li>{@link DynamicAABBTree#queryPairs} must report every pair of
+ * overlapping tight boxes, only pairs whose fat boxes overlap, and each pair
+ * once;</li>
+ * <li>{@link DynamicAABBTree#query} and {@link DynamicAABBTree#raycast} must
+ * report every box hit by a random box or ray, and only proxies whose fat
+ * boxes are hit.</li>
+ * </ul>
+ * The run exits with 1 if any check fails.
+ *
+ * The timing builds both trees over the same random objects, the BVHNode
+ * over their bounding spheres, and finds the overlapping pairs with
+ * {@link DynamicAABBTree#queryPairs} and
+ * {@link BVHNode#getPotentialContacts}. BVHNode only tests the two root
+ * subtrees against each other, as in Cyclone, so it finds fewer pairs.
+ *
+ * <pre>
+ * java -cp &lt;classes&gt; br.law123.collide.DynamicAABBTreeBench [objects...]
+ * </pre>
+ */
+public final class DynamicAABBTreeBench {
+
+    private static final long SEED = 20261016L;
+
+    private static final int CHECK_OBJECTS = 500;
+    private static final int CHECK_STEPS = 50;
+    private static final int CHECK_QUERIES = 50;
+    // objects per unit of volume, so the pair count grows with n
+    private static final double DENSITY = 0.02;
+    private static final double HALF_SIZE = 0.5;
+
+    private DynamicAABBTreeBench() {
+    }
+
+    public static void main(String[] args) {
+        int failures = check(new Random(SEED));
+        if (failures > 0) {
+            System.out.println("FAILED: " + failures + " mismatches");
+            System.exit(1);
+        }
+        System.out.println("OK: " + CHECK_STEPS + " steps of " + CHECK_OBJECTS + " objects match brute force");
+
+        int[] sizes = { 2000, 10000 };
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.println("objects\tpairs\ttree build ms\ttree pairs\ttree pairs ms\theight\tBVHNode build ms\tBVHNode pairs\tBVHNode pairs ms");
+        // the first run warms up
+        compare(new Random(SEED), sizes[0], false);
+        for (int n : sizes) {
+            compare(new Random(SEED), n, true);
+        }
+    }
+
+    // ---------------------------------------------------------------- check
+
+    private static int check(Random random) {
+        DynamicAABBTree<Integer> tree = new DynamicAABBTree<Integer>();
+        double extent = extent(CHECK_OBJECTS);
+        List<double[]> boxes = new ArrayList<double[]>();
+        List<Integer> proxies = new ArrayList<Integer>();
+        for (int i = 0; i < CHECK_OBJECTS; i++) {
+            double[] box = randomBox(random, extent);
+            boxes.add(box);
+            proxies.add(tree.createProxy(box[0], box[1], box[2], box[3], box[4], box[5], i));
+        }
+
+        int failures = 0;
+        int next = CHECK_OBJECTS;
+        for (int step = 0; step < CHECK_STEPS; step++) {
+            for (int i = 0; i < boxes.size(); i++) {
+                double[] box = boxes.get(i);
+                if (random.nextInt(4) == 0) {
+                    // a quarter jumps far, the rest drifts
+                    double scale = random.nextInt(10) == 0 ? extent / 4 : 0.1;
+                    double dx = random.nextGaussian() * scale;
+                    double dy = random.nextGaussian() * scale;
+                    double dz = random.nextGaussian() * scale;
+                    for (int k = 0; k < 3; k++) {
+                        double d = k == 0 ? dx : k == 1 ? dy : dz;
+                        box[k] += d;
+                        box[k + 3] += d;
+                    }
+                    tree.moveProxy(proxies.get(i), box[0], box[1], box[2], box[3], box[4], box[5], dx, dy, dz);
+                }
+            }
+            for (int i = 0; i < 5 && !boxes.isEmpty(); i++) {
+                int index = random.nextInt(boxes.size());
+                tree.destroyProxy(proxies.remove(index));
+                boxes.remove(index);
+            }
+            for (int i = 0; i < 5; i++) {
+                double[] box = randomBox(random, extent);
+                boxes.add(box);
+                proxies.add(tree.createProxy(box[0], box[1], box[2], box[3], box[4], box[5], next++));
+            }
+
+            if (tree.getProxyCount() != boxes.size()) {
+                System.out.println("step " + step + ": " + tree.getProxyCount() + " proxies for " + boxes.size() + " objects");
+                failures++;
+            }
+            failures += checkPairs(step, tree, boxes, proxies);
+            for (int q = 0; q < CHECK_QUERIES; q++) {
+                failures += checkQuery(step, tree, boxes, proxies, randomBox(random, extent));
+                failures += checkRay(step, random, tree, boxes, proxies, extent);
+            }
+        }
+        return failures;
+    }
+
+    private static int checkPairs(int step, DynamicAABBTree<Integer> tree, List<double[]> boxes, final List<Integer> proxies) {
+        final Set<Long> reported = new HashSet<Long>();
+        final int[] duplicates = new int[1];
+        tree.queryPairs(new DynamicAABBTree.PairCallback<Integer>() {
+
+            @Override
+            public void pair(int proxyA, Integer a, int proxyB, Integer b) {
+                if (!reported.add(key(proxyA, proxyB))) {
+                    duplicates[0]++;
+                }
+            }
+        });
+
+        int failures = duplicates[0];
+        if (duplicates[0] > 0) {
+            System.out.println("step " + step + ": " + duplicates[0] + " pairs reported twice");
+        }
+        double[] fatA = new double[6];
+        double[] fatB = new double[6];
+        for (long pair : reported) {
+            tree.getFatBounds((int) (pair >>> 32), fatA);
+            tree.getFatBounds((int) pair, fatB);
+            if (!overlaps(fatA, fatB)) {
+                System.out.println("step " + step + ": pair " + (pair >>> 32) + "-" + (int) pair + " reported without overlapping fat boxes");
+                failures++;
+            }
+        }
+        for (int i = 0; i < boxes.size(); i++) {
+            for (int j = i + 1; j < boxes.size(); j++) {
+                if (overlaps(boxes.get(i), boxes.get(j)) && !reported.contains(key(proxies.get(i), proxies.get(j)))) {
+                    System.out.println("step " + step + ": overlapping pair " + proxies.get(i) + "-" + proxies.get(j) + " not reported");
+                    failures++;
+                }
+            }
+        }
+        return failures;
+    }
+
+    private static int checkQuery(int step, DynamicAABBTree<Integer> tree, List<double[]> boxes, List<Integer> proxies, double[] query) {
+        final Set<Integer> found = new HashSet<Integer>();
+        tree.query(query[0], query[1], query[2], query[3], query[4], query[5], new DynamicAABBTree.QueryCallback<Integer>() {
+
+            @Override
+            public boolean found(int proxy, Integer data) {
+                found.add(proxy);
+                return true;
+            }
+        });
+
+        int failures = 0;
+        double[] fat = new double[6];
+        for (int proxy : found) {
+            tree.getFatBounds(proxy, fat);
+            if (!overlaps(fat, query)) {
+                System.out.println("step " + step + ": query reported proxy " + proxy + " outside the box");
+                failures++;
+            }
+        }
+        for (int i = 0; i < boxes.size(); i++) {
+            if (overlaps(boxes.get(i), query) && !found.contains(proxies.get(i))) {
+                System.out.println("step " + step + ": query missed proxy " + proxies.get(i));
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    private static int checkRay(int step, Random random, DynamicAABBTree<Integer> tree, List<double[]> boxes, List<Integer> proxies, double extent) {
+        final double[] ray = { random.nextDouble() * extent, random.nextDouble() * extent, random.nextDouble() * extent, random.nextGaussian(),
+                random.nextGaussian(), random.nextGaussian() };
+        // a ray along an axis now and then, to cover the parallel case
+        if (random.nextInt(8) == 0) {
+            ray[3 + random.nextInt(3)] = 0;
+        }
+        final double length = extent;
+        final Set<Integer> found = new HashSet<Integer>();
+        tree.raycast(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], length, new DynamicAABBTree.RayCallback<Integer>() {
+
+            @Override
+            public double hit(int proxy, Integer data, double maxDistance) {
+                found.add(proxy);
+                return maxDistance;
+            }
+        });
+
+        int failures = 0;
+        double[] fat = new double[6];
+        for (int proxy : found) {
+            tree.getFatBounds(proxy, fat);
+            if (!hits(fat, ray, length)) {
+                System.out.println("step " + step + ": ray reported proxy " + proxy + " it does not cross");
+                failures++;
+            }
+        }
+        for (int i = 0; i < boxes.size(); i++) {
+            if (hits(boxes.get(i), ray, length) && !found.contains(proxies.get(i))) {
+                System.out.println("step " + step + ": ray missed proxy " + proxies.get(i));
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    private static long key(int a, int b) {
+        return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+    }
+
+    private static boolean overlaps(double[] a, double[] b) {
+        return !(a[0] > b[3] || a[1] > b[4] || a[2] > b[5] || b[0] > a[3] || b[1] > a[4] || b[2] > a[5]);
+    }
+
+    /**
+     * Slab test of the ray against the box, for t in [0, length].
+     */
+    private static boolean hits(double[] box, double[] ray, double length) {
+        double enter = 0;
+        double exit = length;
+        for (int k = 0; k < 3; k++) {
+            double o = ray[k];
+            double d = ray[k + 3];
+            if (d == 0) {
+                if (o < box[k] || o > box[k + 3]) {
+                    return false;
+                }
+                continue;
+            }
+            double t1 = (box[k] - o) / d;
+            double t2 = (box[k + 3] - o) / d;
+            enter = Math.max(enter, Math.min(t1, t2));
+            exit = Math.min(exit, Math.max(t1, t2));
+            if (enter > exit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // -------------------------------------------------------------- compare
+
+    @SuppressWarnings("deprecation")
+    private static void compare(Random random, int n, boolean print) {
+        double extent = extent(n);
+        double[][] boxes = new double[n][];
+        for (int i = 0; i < n; i++) {
+            boxes[i] = randomBox(random, extent);
+        }
+
+        long start = System.nanoTime();
+        DynamicAABBTree<Integer> tree = new DynamicAABBTree<Integer>();
+        for (int i = 0; i < n; i++) {
+            double[] box = boxes[i];
+            tree.createProxy(box[0], box[1], box[2], box[3], box[4], box[5], i);
+        }
+        double treeBuild = (System.nanoTime() - start) / 1e6;
+
+        final int[] treePairs = new int[1];
+        start = System.nanoTime();
+        tree.queryPairs(new DynamicAABBTree.PairCallback<Integer>() {
+
+            @Override
+            public void pair(int proxyA, Integer a, int proxyB, Integer b) {
+                treePairs[0]++;
+            }
+        });
+        double treeQuery = (System.nanoTime() - start) / 1e6;
+
+        int pairs = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (overlaps(boxes[i], boxes[j])) {
+                    pairs++;
+                }
+            }
+        }
+
+        start = System.nanoTime();
+        BVHNode<BoundingSphere> root = null;
+        for (int i = 0; i < n; i++) {
+            double[] box = boxes[i];
+            BoundingSphere sphere = new BoundingSphere(new Vector3((box[0] + box[3]) / 2, (box[1] + box[4]) / 2, (box[2] + box[5]) / 2), HALF_SIZE
+                                                                                                                                          * Math.sqrt(3));
+            if (root == null) {
+                root = new BVHNode<BoundingSphere>(null, sphere, new RigidBody());
+            } else {
+                root.insert(new RigidBody(), sphere);
+            }
+        }
+        double bvhBuild = (System.nanoTime() - start) / 1e6;
+
+        int limit = Math.max(16, pairs * 4);
+        PotentialContact[] contacts = new PotentialContact[limit];
+        for (int i = 0; i < limit; i++) {
+            contacts[i] = new PotentialContact(new RigidBody[2]);
+        }
+        start = System.nanoTime();
+        int bvhPairs = root.getPotentialContacts(contacts, limit);
+        double bvhQuery = (System.nanoTime() - start) / 1e6;
+
+        if (print) {
+            System.out.printf("%d\t%d\t%.1f\t%d\t%.1f\t%d\t%.1f\t%d\t%.1f%n", n, pairs, treeBuild, treePairs[0], treeQuery, tree.getHeight(), bvhBuild, bvhPairs,
+                    bvhQuery);
+        }
+    }
+
+    // -------------------------------------------------------------- objects
+
+    private static double extent(int n) {
+        return Math.cbrt(n / DENSITY);
+    }
+
+    /**
+     * A cube of {@link #HALF_SIZE} at a random place inside
+     * <code>[0, extent)</code>.
+     */
+    private static double[] randomBox(Random random, double extent) {
+        double x = random.nextDouble() * extent;
+        double y = random.nextDouble() * extent;
+        double z = random.nextDouble() * extent;
+        return new double[] { x - HALF_SIZE, y - HALF_SIZE, z - HALF_SIZE, x + HALF_SIZE, y + HALF_SIZE, z + HALF_SIZE };
+    }
+
+}
@@ -0,0 +1,212 @@
+package br.hefesto.simulation;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Fase larga da deteco de colises, por <i>sweep and prune</i>. </br>
+ * Cada corpo  envolvido por uma caixa alinhada aos eixos (esfera pelo raio,
+ * caixa pelo <code>halfSize</code> e pela orientao) e as caixas ficam
+ * ordenadas pelo incio no eixo de varredura. Como os corpos se movem pouco de
+ * um passo para o outro, a ordem do passo anterior  reaproveitada e corrigida
+ * por insero, em tempo quase linear. A varredura s compara caixas que se
+ * sobrepem no eixo escolhido, e as demais coordenadas so testadas em
+ * seguida. </br>
+ * O eixo de varredura  o de maior varincia dos centros, trocado apenas
+ * quando outro eixo fica bem mais espalhado, para no reordenar tudo a cada
+ * passo. A ordem dos pares depende apenas das posies e da ordem de entrada
+ * dos corpos.
+ *
+ * @author teixeira
+ */
+final class BroadPhase {
+
+	// s troca de eixo quando a varincia do novo for este tanto maior
+	private static final double AXIS_HYSTERESIS = 2;
+
+	private Entry[] entries = new Entry[64];
+	private int size;
+	private int axis = 0;
+	private boolean resort;
+	private final double[] sum = new double[3];
+	private final double[] sum2 = new double[3];
+	private final double[] variance = new double[3];
+
+	private HRigidBody[] pairs = new HRigidBody[128];
+	private int pairCount;
+
+	void add(HRigidBody body) {
+		if (size == entries.length) {
+			entries = Arrays.copyOf(entries, size * 2);
+		}
+		entries[size++] = new Entry(body);
+	}
+
+	void remove(HRigidBody body) {
+		for (int i = 0; i < size; i++) {
+			if (entries[i].body == body) {
+				System.arraycopy(entries, i + 1, entries, i, size - i - 1);
+				entries[--size] = null;
+				return;
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Atualiza as caixas envolventes e encontra os pares de corpos cujas
+	 * caixas se sobrepem. Deve ser chamado depois de
+	 * {@link HRigidBody#calculateInternals()}.
+	 *
+	 * @return a quantidade de pares, ver {@link #getPair(int, int)}.
+	 */
+	int findPairs() {
+		updateBounds();
+		chooseAxis();
+		sort();
+
+		pairCount = 0;
+		for (int i = 0; i < size; i++) {
+			Entry a = entries[i];
+			if (!a.active) {
+				continue;
+			}
+			double end = a.bounds[axis + 3];
+			for (int j = i + 1; j < size; j++) {
+				Entry b = entries[j];
+				if (b.bounds[axis] > end) {
+					break;
+				}
+				if (b.active && a.overlaps(b)) {
+					addPair(a.body, b.body);
+				}
+			}
+		}
+		return pairCount;
+	}
+
+	/**
+	 * @return a quantidade de pares da ltima chamada de {@link #findPairs()}.
+	 */
+	int getPairCount() {
+		return pairCount;
+	}
+
+	/**
+	 * @param pair ndice do par, menor que o retorno de {@link #findPairs()}.
+	 * @param which 0 ou 1.
+	 * @return um dos corpos do par.
+	 */
+	HRigidBody getPair(int pair, int which) {
+		return pairs[pair * 2 + which];
+	}
+
+	private void addPair(HRigidBody a, HRigidBody b) {
+		if (pairCount * 2 == pairs.length) {
+			pairs = Arrays.copyOf(pairs, pairs.length * 2);
+		}
+		pairs[pairCount * 2] = a;
+		pairs[pairCount * 2 + 1] = b;
+		pairCount++;
+	}
+
+	private void updateBounds() {
+		for (int i = 0; i < size; i++) {
+			entries[i].update();
+		}
+	}
+
+	private void chooseAxis() {
+		Arrays.fill(sum, 0);
+		Arrays.fill(sum2, 0);
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			Entry e = entries[i];
+			if (!e.active) {
+				continue;
+			}
+			for (int k = 0; k < 3; k++) {
+				double c = (e.bounds[k] + e.bounds[k + 3]) * 0.5;
+				sum[k] += c;
+				sum2[k] += c * c;
+			}
+			count++;
+		}
+		if (count < 2) {
+			return;
+		}
+		int best = axis;
+		for (int k = 0; k < 3; k++) {
+			variance[k] = sum2[k] - sum[k] * sum[k] / count;
+			if (variance[k] > variance[best]) {
+				best = k;
+			}
+		}
+		if (best != axis && variance[best] > variance[axis] * AXIS_HYSTERESIS) {
+			axis = best;
+			resort = true;
+		}
+	}
+
+	private void sort() {
+		if (resort) {
+			// troca de eixo: a ordem anterior no ajuda mais
+			Arrays.sort(entries, 0, size, new Comparator<Entry>() {
+
+				@Override
+				public int compare(Entry a, Entry b) {
+					return Double.compare(a.bounds[axis], b.bounds[axis]);
+				}
+			});
+			resort = false;
+			return;
+		}
+		// insero: quase ordenado desde o passo anterior
+		for (int i = 1; i < size; i++) {
+			Entry e = entries[i];
+			double key = e.bounds[axis];
+			int j = i - 1;
+			while (j >= 0 && entries[j].bounds[axis] > key) {
+				entries[j + 1] = entries[j];
+				j--;
+			}
+			entries[j + 1] = e;
+		}
+	}
+
+	/**
+	 * Caixa envolvente de um corpo. Corpos inativos (sem raio nem
+	 * <code>halfSize</code>) ficam no fim da ordem e no formam pares.
+	 */
+	private static final class Entry {
+
+		final HRigidBody body;
+		// mnimos x, y, z e mximos x, y, z
+		final double[] bounds = new double[6];
+		boolean active;
+
+		Entry(HRigidBody body) {
+			this.body = body;
+		}
+
+		void update() {
+			active = body.getBounds(bounds);
+			if (!active) {
+				Arrays.fill(bounds, Double.POSITIVE_INFINITY);
+			}
+		}
+
+		boolean overlaps(Entry other) {
+			for (int k = 0; k < 3; k++) {
+				if (bounds[k] > other.bounds[k + 3] || other.bounds[k] > bounds[k + 3]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+}
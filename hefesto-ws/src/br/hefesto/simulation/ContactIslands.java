@@ -0,0 +1,140 @@
+package br.hefesto.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.law123.collide.CollisionData;
+import br.law123.rigidbody.RigidBody;
+import br.law123.rigidbody.contact.Contact;
+
+/**
+ * Ilhas de contato de um passo: componentes conexos do grafo em que os corpos
+ * so vrtices e os contatos so arestas. </br>
+ * Contatos de ilhas diferentes no compartilham corpos, ento cada ilha pode
+ * ser resolvida de forma independente, inclusive em paralelo, com o mesmo
+ * resultado da resoluo sequencial. Dentro de uma ilha os contatos continuam
+ * separados pelo grupo ({@link CollisionData}) de origem, na ordem dos grupos
+ * e na ordem em que foram gerados. Contatos com o cenrio (sem segundo corpo)
+ * no ligam corpos. </br>
+ * A numerao das ilhas segue a ordem dos contatos, ento o resultado no
+ * depende de <code>hashCode</code> nem do agendamento das threads.
+ *
+ * @author teixeira
+ */
+final class ContactIslands {
+
+    private final Map<RigidBody, Integer> indexes = new IdentityHashMap<RigidBody, Integer>();
+    private int[] parent = new int[64];
+    private int[] island = new int[64];
+    private int bodyCount;
+
+    /**
+     * Separa os contatos em ilhas.
+     *
+     * @param groups contatos de cada grupo, na ordem de resoluo.
+     * @return as ilhas, na ordem do primeiro contato de cada uma.
+     */
+    List<Island> build(List<List<Contact>> groups) {
+        indexes.clear();
+        bodyCount = 0;
+
+        for (List<Contact> contacts : groups) {
+            for (Contact contact : contacts) {
+                RigidBody[] bodies = contact.getBody();
+                int one = bodies[0] == null ? -1 : indexOf(bodies[0]);
+                int two = bodies[1] == null ? -1 : indexOf(bodies[1]);
+                if (one >= 0 && two >= 0) {
+                    union(one, two);
+                }
+            }
+        }
+
+        Arrays.fill(island, 0, bodyCount, -1);
+        List<Island> result = new ArrayList<Island>();
+        for (int g = 0; g < groups.size(); g++) {
+            for (Contact contact : groups.get(g)) {
+                RigidBody[] bodies = contact.getBody();
+                RigidBody body = bodies[0] != null ? bodies[0] : bodies[1];
+                if (body == null) {
+                    continue;
+                }
+                int root = find(indexes.get(body));
+                if (island[root] < 0) {
+                    island[root] = result.size();
+                    result.add(new Island(groups.size()));
+                }
+                result.get(island[root]).add(g, contact);
+            }
+        }
+        return result;
+    }
+
+    private int indexOf(RigidBody body) {
+        Integer index = indexes.get(body);
+        if (index == null) {
+            index = bodyCount++;
+            if (index == parent.length) {
+                parent = Arrays.copyOf(parent, index * 2);
+                island = Arrays.copyOf(island, index * 2);
+            }
+            parent[index] = index;
+            indexes.put(body, index);
+        }
+        return index;
+    }
+
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private void union(int a, int b) {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra != rb) {
+            // a menor raiz vence, para a estrutura no depender da ordem de
+            // chegada dos pares
+            if (ra < rb) {
+                parent[rb] = ra;
+            } else {
+                parent[ra] = rb;
+            }
+        }
+    }
+
+    /**
+     * Contatos de uma ilha, separados por grupo.
+     */
+    static final class Island {
+
+        private final List<List<Contact>> groups;
+        private int size;
+
+        Island(int groupCount) {
+            groups = new ArrayList<List<Contact>>(groupCount);
+            for (int i = 0; i < groupCount; i++) {
+                groups.add(new ArrayList<Contact>());
+            }
+        }
+
+        void add(int group, Contact contact) {
+            groups.get(group).add(contact);
+            size++;
+        }
+
+        List<List<Contact>> getGroups() {
+            return groups;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+}
@@ -3,9 +3,9 @@ package br.hefesto.simulation;
 import br.law123.collide.CollisionPrimitive;
 import br.law123.collide.util.BoxCollisor;
 import br.law123.collide.util.SphereCollisor;
+import br.law123.core.Matrix4;
 import br.law123.core.Vector3;
 import br.law123.rigidbody.RigidBody;
-import br.law123.rigidbody.contact.Contact;
 
 /**
  * Representao um corpo rgido que pode colidir.
@@ -28,6 +28,20 @@ public class HRigidBody extends CollisionPrimitive implements BoxCollisor,
 
 	private boolean useWorldForces = false;
 
+	// filtro da fase larga: o par colide se a camada de cada um estiver na
+	// mscara do outro
+	private int collisionLayer = 1;
+	private int collisionMask = -1;
+
+	// verso da simulao na ltima alterao do corpo
+	private long changedAt = 0;
+
+	// adormecido no incio do ltimo passo, e a caixa envolvente de quando
+	// adormeceu; ver SleepingIslands
+	private boolean sleeping = false;
+	private final double[] sleepingBounds = new double[6];
+	private boolean hasSleepingBounds = false;
+
 	public HRigidBody(String id, PhysicSimulation owner) {
 		this.id = id;
 		this.owner = owner;
@@ -101,11 +115,106 @@ public class HRigidBody extends CollisionPrimitive implements BoxCollisor,
 		this.useWorldForces = useWorldForces;
 	}
 
-	@Override
-	public void bindContact(Contact contact) {
-		if (bindContactData) {
-			owner.bindContact(contact);
+	public int getCollisionLayer() {
+		return collisionLayer;
+	}
+
+	public void setCollisionLayer(int collisionLayer) {
+		this.collisionLayer = collisionLayer;
+	}
+
+	public int getCollisionMask() {
+		return collisionMask;
+	}
+
+	public void setCollisionMask(int collisionMask) {
+		this.collisionMask = collisionMask;
+	}
+
+	/**
+	 * @return se as camadas e mscaras permitem que os dois corpos colidam
+	 *         na fase larga.
+	 */
+	public boolean canCollideWith(HRigidBody other) {
+		return (collisionLayer & other.collisionMask) != 0 && (other.collisionLayer & collisionMask) != 0;
+	}
+
+	/**
+	 * @return se o corpo  integrado e est acordado. Pares em que nenhum
+	 *         dos corpos est ativo no passam pela deteco fina.
+	 */
+	boolean isActive() {
+		return !ignoreIntegration && getEngineBody().getAwake();
+	}
+
+	boolean isSleeping() {
+		return sleeping;
+	}
+
+	/**
+	 * Marca o corpo como adormecido, guardando a caixa envolvente de agora,
+	 * ou como acordado.
+	 */
+	void setSleeping(boolean sleeping) {
+		if (sleeping && !this.sleeping) {
+			hasSleepingBounds = getBounds(sleepingBounds);
 		}
+		this.sleeping = sleeping;
+	}
+
+	/**
+	 * @param out a caixa envolvente da ltima vez que o corpo adormeceu, como
+	 *        em {@link #getBounds(double[])}.
+	 * @return <code>false</code> se no h caixa.
+	 */
+	boolean getSleepingBounds(double[] out) {
+		if (!hasSleepingBounds) {
+			return false;
+		}
+		System.arraycopy(sleepingBounds, 0, out, 0, 6);
+		return true;
+	}
+
+	/**
+	 * Calcula a caixa alinhada aos eixos que envolve o corpo: pelo raio, se
+	 * for esfera, ou pelo <code>halfSize</code> e pela orientao, se for
+	 * caixa. Usa a transformao de {@link #calculateInternals()}.
+	 *
+	 * @param out mnimos x, y, z e mximos x, y, z.
+	 * @return <code>false</code> se o corpo no tem forma (nem raio nem
+	 *         <code>halfSize</code>) ou ainda no tem transformao.
+	 */
+	boolean getBounds(double[] out) {
+		Matrix4 transform = getTransform();
+		if (transform == null || (radius <= 0 && halfSize == null)) {
+			return false;
+		}
+		double[] m = transform.getData();
+		for (int k = 0; k < 3; k++) {
+			double extent;
+			if (radius > 0) {
+				extent = radius;
+			} else {
+				int row = k * 4;
+				extent = Math.abs(m[row]) * halfSize.getX() + Math.abs(m[row + 1]) * halfSize.getY() + Math.abs(m[row + 2]) * halfSize.getZ();
+			}
+			double centre = m[k * 4 + 3];
+			out[k] = centre - extent;
+			out[k + 3] = centre + extent;
+		}
+		return true;
+	}
+
+	/**
+	 * @return verso da simulao em que o corpo foi alterado pela ltima vez.
+	 * @see PhysicSimulation#markDirty(HRigidBody)
+	 */
+	public long getChangedAt() {
+		return changedAt;
+	}
+
+	void setChangedAt(long changedAt) {
+		this.changedAt = changedAt;
 	}
 
 	/**
@@ -0,0 +1,209 @@
+package br.hefesto.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.law123.collide.util.PlaneCollisor;
+import br.law123.core.Vector3;
+
+/**
+ * Fase fina da deteco de colises em lotes. </br>
+ * As colises so separadas por {@link CollisionType}, mantendo a ordem de
+ * entrada dentro de cada tipo, e cada lote  percorrido de uma vez pelo mesmo
+ * detector. Os lotes s so refeitos quando colises entram ou saem (ver
+ * {@link #invalidate()}), ento o tipo e os corpos de uma coliso devem ser
+ * definidos antes de adicion-la. </br>
+ * Os lotes de esferas ({@link CollisionType#SPHERE_AND_SPHERE} e
+ * {@link CollisionType#SPHERE_AND_HALFSPACE}) passam antes por um filtro. A
+ * cada passo o centro e o raio de cada esfera so copiados, uma vez por
+ * corpo, para vetores de <code>double</code> (um por coordenada), e os pares
+ * so testados sobre eles pelos ndices dos corpos, com as mesmas operaes
+ * do {@link br.law123.collide.CollisionDetector}: s so descartados pares
+ * que o detector tambm descartaria, alm dos pares sem corpo ativo (ver
+ * {@link SleepingIslands}). O filtro s l os corpos, e faixas dele
+ * podem rodar em paralelo; os contatos dos pares aprovados so gerados em
+ * seguida, na ordem do lote, e o resultado no depende do agendamento das
+ * threads.
+ *
+ * @author teixeira
+ */
+final class NarrowPhase {
+
+	private final Map<CollisionType, List<Collision>> batches = new EnumMap<CollisionType, List<Collision>>(CollisionType.class);
+	private boolean stale = true;
+
+	// esferas dos lotes de esferas, e seus centros e raios no passo
+	private final Map<HRigidBody, Integer> slots = new IdentityHashMap<HRigidBody, Integer>();
+	private HRigidBody[] spheres = new HRigidBody[0];
+	private int sphereCount;
+	private double[] x = new double[0];
+	private double[] y = new double[0];
+	private double[] z = new double[0];
+	private double[] radius = new double[0];
+	private boolean[] active = new boolean[0];
+
+	// esferas de cada par, na ordem dos lotes
+	private int[] pairOne = new int[0];
+	private int[] pairTwo = new int[0];
+	private boolean[] pairHit = new boolean[0];
+	private int[] planeOne = new int[0];
+	private boolean[] planeHit = new boolean[0];
+
+	NarrowPhase() {
+		for (CollisionType type : CollisionType.values()) {
+			batches.put(type, new ArrayList<Collision>());
+		}
+	}
+
+	/**
+	 * Refaz os lotes no prximo {@link #update(Collection)}.
+	 */
+	void invalidate() {
+		stale = true;
+	}
+
+	/**
+	 * Separa as colises por tipo, se alguma entrou ou saiu desde a ltima
+	 * vez.
+	 */
+	void update(Collection<Collision> collisions) {
+		if (!stale) {
+			return;
+		}
+		for (List<Collision> batch : batches.values()) {
+			batch.clear();
+		}
+		for (Collision col : collisions) {
+			if (col.getType() != null) {
+				batches.get(col.getType()).add(col);
+			}
+		}
+
+		slots.clear();
+		sphereCount = 0;
+		List<Collision> pairs = batches.get(CollisionType.SPHERE_AND_SPHERE);
+		pairOne = new int[pairs.size()];
+		pairTwo = new int[pairs.size()];
+		pairHit = new boolean[pairs.size()];
+		for (int i = 0; i < pairs.size(); i++) {
+			pairOne[i] = slotOf(pairs.get(i).getRb1());
+			pairTwo[i] = slotOf(pairs.get(i).getRb2());
+		}
+		List<Collision> planes = batches.get(CollisionType.SPHERE_AND_HALFSPACE);
+		planeOne = new int[planes.size()];
+		planeHit = new boolean[planes.size()];
+		for (int i = 0; i < planes.size(); i++) {
+			planeOne[i] = slotOf(planes.get(i).getRb1());
+		}
+		x = new double[sphereCount];
+		y = new double[sphereCount];
+		z = new double[sphereCount];
+		radius = new double[sphereCount];
+		active = new boolean[sphereCount];
+		stale = false;
+	}
+
+	private int slotOf(HRigidBody body) {
+		Integer slot = slots.get(body);
+		if (slot == null) {
+			if (sphereCount == spheres.length) {
+				spheres = Arrays.copyOf(spheres, Math.max(16, sphereCount * 2));
+			}
+			spheres[sphereCount] = body;
+			slot = sphereCount++;
+			slots.put(body, slot);
+		}
+		return slot;
+	}
+
+	/**
+	 * @return as colises do tipo, na ordem de entrada.
+	 */
+	List<Collision> getBatch(CollisionType type) {
+		return batches.get(type);
+	}
+
+	/**
+	 * @return se a coliso, do lote do tipo dado, deve ser testada neste
+	 *         passo. Uma coliso que mudou de tipo refaz os lotes.
+	 */
+	boolean accept(Collision col, CollisionType type) {
+		if (col.getType() != type) {
+			stale = true;
+			return false;
+		}
+		return col.isEnable() && col.getData().hasMoreContacts();
+	}
+
+	/**
+	 * @return a quantidade de esferas dos lotes de esferas, ver
+	 *         {@link #gatherSpheres(int, int)}.
+	 */
+	int getSphereCount() {
+		return sphereCount;
+	}
+
+	/**
+	 * Copia o centro, o raio e o estado (ver {@link HRigidBody#isActive()}) das
+	 * esferas da faixa <code>[from, to)</code>.
+	 * Deve ser chamado a cada passo, antes dos filtros, depois de
+	 * {@link HRigidBody#calculateInternals()}.
+	 */
+	void gatherSpheres(int from, int to) {
+		for (int i = from; i < to; i++) {
+			HRigidBody body = spheres[i];
+			double[] transform = body.getTransform().getData();
+			x[i] = transform[3];
+			y[i] = transform[7];
+			z[i] = transform[11];
+			radius[i] = body.getRadius();
+			active[i] = body.isActive();
+		}
+	}
+
+	/**
+	 * Filtra a faixa <code>[from, to)</code> do lote
+	 * {@link CollisionType#SPHERE_AND_SPHERE}, ver {@link #isHit(CollisionType, int)}.
+	 */
+	void filterSphereAndSphere(int from, int to) {
+		for (int i = from; i < to; i++) {
+			int one = pairOne[i];
+			int two = pairTwo[i];
+			double dx = x[one] - x[two];
+			double dy = y[one] - y[two];
+			double dz = z[one] - z[two];
+			double size = Math.sqrt(dx * dx + dy * dy + dz * dz);
+			pairHit[i] = (active[one] || active[two]) && !(size <= 0 || size >= radius[one] + radius[two]);
+		}
+	}
+
+	/**
+	 * Filtra a faixa <code>[from, to)</code> do lote
+	 * {@link CollisionType#SPHERE_AND_HALFSPACE}, ver {@link #isHit(CollisionType, int)}.
+	 */
+	void filterSphereAndHalfSpace(PlaneCollisor plane, int from, int to) {
+		Vector3 direction = plane.getDirection();
+		double dx = direction.getX();
+		double dy = direction.getY();
+		double dz = direction.getZ();
+		double offset = plane.getOffset();
+		for (int i = from; i < to; i++) {
+			int one = planeOne[i];
+			planeHit[i] = active[one] && !(dx * x[one] + dy * y[one] + dz * z[one] - radius[one] - offset >= 0);
+		}
+	}
+
+	/**
+	 * @return se o par de ndice dado do lote de esferas pode gerar contato;
+	 *         os demais certamente no geram, ou no tm corpo ativo.
+	 */
+	boolean isHit(CollisionType type, int index) {
+		return type == CollisionType.SPHERE_AND_SPHERE ? pairHit[index] : planeHit[index];
+	}
+
+}
@@ -5,23 +5,55 @@ import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import br.law123.collide.CollisionData;
 import br.law123.collide.CollisionDetector;
 import br.law123.collide.CollisionPlane;
+import br.law123.collide.ManifoldCache;
+import br.law123.core.Quaternion;
 import br.law123.core.Vector3;
 import br.law123.force.Force;
+import br.law123.rigidbody.RigidBody;
+import br.law123.rigidbody.RigidBodyStore;
 import br.law123.rigidbody.contact.Contact;
 import br.law123.rigidbody.contact.ContactResolver;
+import br.law123.rigidbody.contact.ImpulseSolver;
+import br.law123.rigidbody.contact.WarmStartCache;
 
 public class PhysicSimulation {
 
 	private final long id;
 
 	private final Map<String, HRigidBody> rigidBodys = new LinkedHashMap<String, HRigidBody>();
+	// corpo da engine -> corpo da simulao, para marcar os tocados nos contatos
+	private final Map<RigidBody, HRigidBody> owners = new IdentityHashMap<RigidBody, HRigidBody>();
+
+	// contador de alteraes, ver markDirty
+	private long version = 0;
+	private boolean dirtyTracking = false;
+
+	// integrao em lote (SoA), opcional
+	private RigidBodyStore bodyStore;
+
+	// passo paralelo: integrao por faixas de corpos e resoluo por ilhas
+	private static final int PARALLEL_MIN_BODIES = 512;
+	private static final int PARALLEL_MIN_CONTACTS = 64;
+	private static final int PARALLEL_MIN_CHUNK = 128;
+	private static final int PARALLEL_MIN_PAIRS = 1024;
+	private boolean parallel = Boolean.getBoolean("hefesto.simulation.parallel");
+	private final ContactIslands islands = new ContactIslands();
+	private final NarrowPhase narrowPhase = new NarrowPhase();
+	private final SleepingIslands sleepingIslands = new SleepingIslands();
 
 	private final Map<String, HForce> forces = new LinkedHashMap<String, HForce>();
 	private final Map<HRigidBody, List<HForce>> forcesByBody = new HashMap<HRigidBody, List<HForce>>();
@@ -31,14 +63,38 @@ public class PhysicSimulation {
 
 	private final Map<String, CollisionData> collisionDatas = new HashMap<String, CollisionData>();
 
+	// fase larga automtica, opcional (ver setBroadPhase)
+	private BroadPhase broadPhase;
+	private CollisionData broadPhaseData;
+
+	// variedades de contato persistentes, opcional (ver setPersistentManifolds)
+	private ManifoldCache manifolds;
+
+	// ndice das consultas espaciais, criado na primeira consulta
+	private SpatialIndex spatialIndex;
+	private boolean spatialIndexStale = true;
+
 	private final int maxContact = 256;
-	private final ContactResolver resolver = new ContactResolver(maxContact * 8);
+	// iteraes do ImpulseSolver: com o incio a quente poucas bastam
+	private static final int IMPULSE_ITERATIONS = 10;
+	private SolverType solverType;
+	private ContactResolver resolver;
+	// resolvedores das faixas de ilhas, reaproveitados entre os passos
+	private final Queue<ContactResolver> islandResolvers = new ConcurrentLinkedQueue<ContactResolver>();
+	// impulsos do passo anterior, s com SolverType.IMPULSE
+	private WarmStartCache warmStartCache;
 
 	// contacts from a integration step
 	private final List<Contact> contacts = new ArrayList<Contact>();
+	// contatos descartados por falta de espao desde a ltima leitura
+	private int contactOverflow;
 
 	public PhysicSimulation(long id) {
 		this.id = id;
+		setBodyStore(Boolean.getBoolean("hefesto.simulation.bodyStore"));
+		SolverType solver = SolverType.valueOfString(System.getProperty("hefesto.simulation.solver"));
+		setSolverType(solver != null ? solver : SolverType.SEQUENTIAL);
+		setPersistentManifolds(Boolean.getBoolean("hefesto.simulation.manifolds"));
 	}
 
 	public long getId() {
@@ -49,6 +105,170 @@ public class PhysicSimulation {
 		return rigidBodys;
 	}
 
+	/**
+	 * Com o rastreamento ligado, as sadas por passo trazem apenas os corpos
+	 * alterados desde a sada anterior, ver {@link #getChangedBodies(long)}.
+	 */
+	public boolean isDirtyTracking() {
+		return dirtyTracking;
+	}
+
+	public void setDirtyTracking(boolean dirtyTracking) {
+		this.dirtyTracking = dirtyTracking;
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * Liga ou desliga o passo paralelo, no {@link ForkJoinPool#commonPool()}.
+	 * </br>
+	 * A integrao  dividida em faixas de corpos, depois de aplicadas as
+	 * foras de todos eles, e os contatos so resolvidos por
+	 * {@link ContactIslands ilha}. O resultado  determinstico, mas pode
+	 * diferir do sequencial: o limite de iteraes de cada grupo  dividido
+	 * entre as ilhas, na proporo dos seus contatos, e quando ele  atingido
+	 * cada ilha gasta a sua parte, enquanto o sequencial gasta tudo nos piores
+	 * contatos do grupo. As varreduras do {@link SolverType#IMPULSE} tambm
+	 * param por ilha. Cenas pequenas continuam sequenciais.
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	public SolverType getSolverType() {
+		return solverType;
+	}
+
+	/**
+	 * Escolhe o resolvedor de contatos. Com {@link SolverType#IMPULSE} os
+	 * impulsos de cada contato so guardados entre os passos, pelo par de
+	 * corpos e pela feio que gerou o contato, e reaplicados no passo
+	 * seguinte; poucas iteraes bastam e contatos em repouso tremem menos.
+	 */
+	public void setSolverType(SolverType solverType) {
+		this.solverType = solverType;
+		warmStartCache = solverType == SolverType.IMPULSE ? new WarmStartCache() : null;
+		resolver = newResolver(0.01, 0.01);
+		islandResolvers.clear();
+	}
+
+	private ContactResolver newResolver(double velocityEpsilon, double positionEpsilon) {
+		if (warmStartCache != null) {
+			return new ImpulseSolver(IMPULSE_ITERATIONS, maxContact * 8, velocityEpsilon, positionEpsilon, warmStartCache);
+		}
+		return new ContactResolver(maxContact * 8, velocityEpsilon, positionEpsilon);
+	}
+
+	/**
+	 * Ajusta o resolvedor para a parte de uma ilha no grupo: o limite de
+	 * iteraes por contato  dividido na proporo dos contatos. As
+	 * varreduras do {@link ImpulseSolver} percorrem todos os contatos, ento
+	 * continuam inteiras.
+	 */
+	private void setIslandIterations(ContactResolver local, int share, int total) {
+		int position = (int) Math.max(1, ((long) maxContact * 8 * share + total - 1) / total);
+		local.setIterations(warmStartCache != null ? IMPULSE_ITERATIONS : position, position);
+	}
+
+	public boolean isPersistentManifolds() {
+		return manifolds != null;
+	}
+
+	/**
+	 * Liga ou desliga as variedades de contato persistentes nas colises
+	 * caixa-caixa e caixa-plano, inclusive as da fase larga, ver
+	 * {@link ManifoldCache}. Cada par guarda at quatro pontos entre os
+	 * passos, e a deteco fina  pulada enquanto um corpo quase no se
+	 * move em relao ao outro.
+	 */
+	public void setPersistentManifolds(boolean enabled) {
+		if (enabled != (manifolds != null)) {
+			manifolds = enabled ? new ManifoldCache() : null;
+		}
+	}
+
+	public boolean isBodyStore() {
+		return bodyStore != null;
+	}
+
+	/**
+	 * Liga ou desliga a integrao em lote dos corpos, em um
+	 * {@link RigidBodyStore}. Corpos com <code>ignoreIntegration</code> ficam
+	 * fora do lote.
+	 */
+	public void setBodyStore(boolean enabled) {
+		if (enabled == (bodyStore != null)) {
+			return;
+		}
+		if (enabled) {
+			bodyStore = new RigidBodyStore(Math.max(64, rigidBodys.size()));
+			for (HRigidBody body : rigidBodys.values()) {
+				attach(body);
+			}
+		} else {
+			for (HRigidBody body : rigidBodys.values()) {
+				bodyStore.remove(body.getEngineBody());
+			}
+			bodyStore = null;
+		}
+	}
+
+	private void attach(HRigidBody body) {
+		if (bodyStore != null && !body.isIgnoreIntegration()) {
+			bodyStore.add(body.getEngineBody());
+		}
+	}
+
+	/**
+	 * @return verso corrente, a da ltima alterao marcada.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Marca o corpo como alterado na prxima verso da simulao. Os corpos so
+	 * marcados quando integrados, quando movidos pela resoluo de contatos e
+	 * quando editados por comandos.
+	 * 
+	 * @param body corpo alterado.
+	 */
+	public void markDirty(HRigidBody body) {
+		body.setChangedAt(++version);
+		spatialIndexStale = true;
+	}
+
+	/**
+	 * Obtm os corpos alterados depois da verso informada.
+	 * 
+	 * @param since verso j conhecida pelo leitor, 0 para todos.
+	 * @return os corpos, na ordem de insero.
+	 */
+	public List<HRigidBody> getChangedBodies(long since) {
+		List<HRigidBody> result = new ArrayList<HRigidBody>();
+		for (HRigidBody body : rigidBodys.values()) {
+			if (body.getChangedAt() > since) {
+				result.add(body);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Quantidade de contatos que no couberam no limite dos seus grupos
+	 * ({@link CollisionData#getOverflow()}) desde a ltima leitura. Nesses
+	 * grupos apenas os contatos mais profundos foram resolvidos.
+	 *
+	 * @return a quantidade, zerada a cada leitura.
+	 */
+	public int getContactOverflow() {
+		int result = contactOverflow;
+		contactOverflow = 0;
+		return result;
+	}
+
 	public List<Contact> getContacts() {
 		List<Contact> result = new ArrayList<Contact>(contacts);
 		contacts.clear();
@@ -60,6 +280,12 @@ public class PhysicSimulation {
 			return false;
 		}
 		rigidBodys.put(body.getId(), body);
+		owners.put(body.getEngineBody(), body);
+		attach(body);
+		if (broadPhase != null) {
+			broadPhase.add(body);
+		}
+		markDirty(body);
 		return true;
 	}
 
@@ -71,13 +297,24 @@ public class PhysicSimulation {
 		HRigidBody body = rigidBodys.remove(id);
 
 		if (body != null) {
-			List<Collision> list = collisionByBody.get(body);
+			owners.remove(body.getEngineBody());
+			if (bodyStore != null) {
+				bodyStore.remove(body.getEngineBody());
+			}
+			if (broadPhase != null) {
+				broadPhase.remove(body);
+			}
+			if (spatialIndex != null) {
+				spatialIndex.remove(body);
+			}
+			List<Collision> list = collisionByBody.remove(body);
 
 			if (list != null) {
+				narrowPhase.invalidate();
 				for (Collision c : list) {
 					collisions.remove(c.getId());
+					unsetBodyCollision(c, c.getRb1() == body ? c.getRb2() : c.getRb1());
 				}
-				collisionByBody.remove(body);
 			}
 			return true;
 		}
@@ -131,6 +368,7 @@ public class PhysicSimulation {
 			return false;
 		}
 		collisions.put(collision.getId(), collision);
+		narrowPhase.invalidate();
 
 		setBodyCollision(collision, collision.getRb1());
 		if (collision.getRb2() != null) {
@@ -143,17 +381,132 @@ public class PhysicSimulation {
 		List<Collision> list = collisionByBody.get(rb);
 		if (list == null) {
 			list = new ArrayList<Collision>();
-			collisionByBody.put(collision.getRb1(), list);
+			collisionByBody.put(rb, list);
 		}
 		list.add(collision);
 	}
 
+	private void unsetBodyCollision(Collision collision, HRigidBody rb) {
+		List<Collision> list = collisionByBody.get(rb);
+		if (list != null) {
+			list.remove(collision);
+			if (list.isEmpty()) {
+				collisionByBody.remove(rb);
+			}
+		}
+	}
+
+	/**
+	 * @return se h uma {@link Collision} explcita, habilitada ou no, entre
+	 *         os dois corpos.
+	 */
+	private boolean hasCollision(HRigidBody a, HRigidBody b) {
+		List<Collision> list = collisionByBody.get(a);
+		if (list != null) {
+			for (Collision c : list) {
+				if (c.getRb1() == b || c.getRb2() == b) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	public Collision getCollision(String id) {
 		return collisions.get(id);
 	}
 
 	public boolean removeCollision(String id) {
-		return collisions.remove(id) != null;
+		Collision collision = collisions.remove(id);
+		if (collision == null) {
+			return false;
+		}
+		narrowPhase.invalidate();
+		unsetBodyCollision(collision, collision.getRb1());
+		if (collision.getRb2() != null) {
+			unsetBodyCollision(collision, collision.getRb2());
+		}
+		return true;
+	}
+
+	/**
+	 * Liga a fase larga automtica: a cada passo os pares de corpos cujas
+	 * caixas envolventes se sobrepem, e cujas camadas e mscaras permitem,
+	 * passam pela deteco fina com o tipo definido pelas formas (esfera ou
+	 * caixa), gerando contatos no <code>collisionData</code>. </br>
+	 * Dispensa registrar uma {@link Collision} por par. Pares que j tm uma
+	 * {@link Collision} explcita, inclusive desabilitada, ficam de fora, assim
+	 * como pares em que nenhum dos corpos est ativo (integrado e acordado, ver
+	 * {@link SleepingIslands}). As colises com o plano
+	 * continuam explcitas.
+	 *
+	 * @param collisionData grupo dos contatos gerados, ou <code>null</code>
+	 *        para desligar.
+	 */
+	public void setBroadPhase(CollisionData collisionData) {
+		if (collisionData == null) {
+			broadPhase = null;
+			broadPhaseData = null;
+			return;
+		}
+		if (!collisionDatas.containsKey(collisionData.getId())) {
+			collisionDatas.put(collisionData.getId(), collisionData);
+		}
+		if (broadPhase == null) {
+			broadPhase = new BroadPhase();
+			for (HRigidBody body : rigidBodys.values()) {
+				broadPhase.add(body);
+			}
+		}
+		broadPhaseData = collisionData;
+	}
+
+	public CollisionData getBroadPhase() {
+		return broadPhaseData;
+	}
+
+	/**
+	 * Lana um raio e encontra o corpo mais prximo que ele atinge.
+	 *
+	 * @param origin origem do raio.
+	 * @param direction direo do raio, no precisa estar normalizada.
+	 * @param maxDistance comprimento do raio.
+	 * @param mask s considera corpos cuja camada de coliso est na mscara.
+	 * @return o corpo atingido, ou <code>null</code>.
+	 */
+	public RaycastHit raycast(Vector3 origin, Vector3 direction, double maxDistance, int mask) {
+		double length = direction.magnitude();
+		if (length == 0) {
+			throw new IllegalArgumentException("Invalid ray direction: " + direction);
+		}
+		return getSpatialIndex().raycast(origin, direction.mult(1 / length), maxDistance, mask);
+	}
+
+	/**
+	 * @param mask s considera corpos cuja camada de coliso est na mscara.
+	 * @return os corpos que tocam a esfera.
+	 */
+	public List<HRigidBody> sphereOverlap(Vector3 centre, double radius, int mask) {
+		return getSpatialIndex().sphereOverlap(centre, radius, mask);
+	}
+
+	/**
+	 * @param mask s considera corpos cuja camada de coliso est na mscara.
+	 * @return os corpos que tocam a caixa orientada.
+	 */
+	public List<HRigidBody> boxOverlap(Vector3 centre, Vector3 halfSize, Quaternion orientation, int mask) {
+		return getSpatialIndex().boxOverlap(centre, halfSize, orientation, mask);
+	}
+
+	private SpatialIndex getSpatialIndex() {
+		if (spatialIndex == null) {
+			spatialIndex = new SpatialIndex();
+		}
+		if (spatialIndexStale) {
+			spatialIndex.refresh(rigidBodys.values());
+			spatialIndexStale = false;
+		}
+		return spatialIndex;
 	}
 
 	public boolean addCollisionData(CollisionData collisionData) {
@@ -168,14 +521,15 @@ public class PhysicSimulation {
 		return collisionDatas.get(id);
 	}
 	
-	private List<Long> forcas = new ArrayList<Long>();
-	private List<Long> integracoes = new ArrayList<Long>();
-	private List<Long> deteccoes = new ArrayList<Long>();
-	private List<Long> resolucoes = new ArrayList<Long>();
+	private final Tempos forcas = new Tempos();
+	private final Tempos integracoes = new Tempos();
+	private final Tempos deteccoes = new Tempos();
+	private final Tempos resolucoes = new Tempos();
 	
 	private int qtdIntegracoes = 0;
 
 	public void integrate(double duration) {
+		spatialIndexStale = true;
 
 		// Update the objects
 		integrateObjects(duration);
@@ -206,40 +560,146 @@ public class PhysicSimulation {
 		System.out.println("=================================================");*/
 	}
 
-	private BigDecimal getMedia(List<Long> list) {
-		BigDecimal media = BigDecimal.ZERO;
-		for (Long l : list) {
-			media = media.add(BigDecimal.valueOf(l));
-		}
+	private BigDecimal getMedia(Tempos tempos) {
+		BigDecimal media = BigDecimal.valueOf(tempos.total);
 		try {
-			return media.divide(BigDecimal.valueOf(list.size()), 5, RoundingMode.CEILING);
+			return media.divide(BigDecimal.valueOf(tempos.quantidade), 5, RoundingMode.CEILING);
 		} catch (ArithmeticException e) {
 			return BigDecimal.ZERO;
 		}
 	}
 
 	protected void integrateObjects(double duration) {
+		if (bodyStore != null) {
+			integrateStore(duration);
+			return;
+		}
+		if (parallel && rigidBodys.size() >= PARALLEL_MIN_BODIES) {
+			integrateParallel(duration);
+			return;
+		}
 		for (HRigidBody rb : rigidBodys.values()) {
 
 			long init = System.nanoTime();
-			Collection<HForce> forces = forcesByBody.get(rb);
-			if (rb.isUseWorldForces()) {
-				forces = this.forces.values();
-			}
-			if (forces != null) {
-				for (Force f : forces) {
-					f.updateForce(rb.getBody(), duration);
-				}
-			}
+			applyForces(rb, rb.getBody(), duration);
 			forcas.add(System.nanoTime() - init);
 			
 			init = System.nanoTime();
-			rb.getBody().integrate(duration);
+			RigidBody body = rb.getBody();
+			boolean awake = body.getAwake();
+			body.integrate(duration);
 			rb.calculateInternals();
+			if (awake && !rb.isIgnoreIntegration()) {
+				markDirty(rb);
+			}
 			integracoes.add(System.nanoTime() - init);
 		}
 	}
 
+	/**
+	 * Integrao com o {@link RigidBodyStore}: aplica as foras de todos os
+	 * corpos e depois integra os acordados de uma s vez.
+	 */
+	private void integrateStore(double duration) {
+		long init = System.nanoTime();
+		for (HRigidBody rb : rigidBodys.values()) {
+			if (rb.isIgnoreIntegration()) {
+				continue;
+			}
+			RigidBody body = rb.getEngineBody();
+			applyForces(rb, body, duration);
+			// foras acordam o corpo: s agora se sabe quem ser integrado
+			if (body.getAwake()) {
+				markDirty(rb);
+			}
+		}
+		forcas.add(System.nanoTime() - init);
+
+		init = System.nanoTime();
+		if (parallel && bodyStore.size() >= PARALLEL_MIN_BODIES) {
+			final double step = duration;
+			forEachRange(bodyStore.size(), new Range() {
+
+				@Override
+				public void run(int from, int to) {
+					bodyStore.integrate(from, to, step);
+				}
+			});
+			calculateInternalsParallel();
+		} else {
+			bodyStore.integrate(duration);
+			for (HRigidBody rb : rigidBodys.values()) {
+				rb.calculateInternals();
+			}
+		}
+		integracoes.add(System.nanoTime() - init);
+	}
+
+	/**
+	 * Integrao paralela sem o {@link RigidBodyStore}: aplica as foras de
+	 * todos os corpos e depois integra faixas de corpos em paralelo.
+	 */
+	private void integrateParallel(final double duration) {
+		long init = System.nanoTime();
+		final List<HRigidBody> bodies = new ArrayList<HRigidBody>(rigidBodys.values());
+		boolean[] awake = new boolean[bodies.size()];
+		for (int i = 0; i < awake.length; i++) {
+			HRigidBody rb = bodies.get(i);
+			if (!rb.isIgnoreIntegration()) {
+				RigidBody body = rb.getEngineBody();
+				applyForces(rb, body, duration);
+				awake[i] = body.getAwake();
+			}
+		}
+		forcas.add(System.nanoTime() - init);
+
+		init = System.nanoTime();
+		forEachRange(bodies.size(), new Range() {
+
+			@Override
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++) {
+					HRigidBody rb = bodies.get(i);
+					if (!rb.isIgnoreIntegration()) {
+						rb.getEngineBody().integrate(duration);
+					}
+					rb.calculateInternals();
+				}
+			}
+		});
+		for (int i = 0; i < awake.length; i++) {
+			if (awake[i]) {
+				markDirty(bodies.get(i));
+			}
+		}
+		integracoes.add(System.nanoTime() - init);
+	}
+
+	private void calculateInternalsParallel() {
+		final List<HRigidBody> bodies = new ArrayList<HRigidBody>(rigidBodys.values());
+		forEachRange(bodies.size(), new Range() {
+
+			@Override
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++) {
+					bodies.get(i).calculateInternals();
+				}
+			}
+		});
+	}
+
+	private void applyForces(HRigidBody rb, RigidBody body, double duration) {
+		Collection<HForce> forces = forcesByBody.get(rb);
+		if (rb.isUseWorldForces()) {
+			forces = this.forces.values();
+		}
+		if (forces != null) {
+			for (Force f : forces) {
+				f.updateForce(body, duration);
+			}
+		}
+	}
+
 	protected void generateContacts(double duration) {
 		// Create the ground plane data
 		CollisionPlane plane = new CollisionPlane();
@@ -247,55 +707,372 @@ public class PhysicSimulation {
 		plane.setOffset(0);
 
 		long init = System.nanoTime();
-		for (Collision col : collisions.values()) {
-			if (!col.getData().hasMoreContacts() || !col.isEnable()) {
-				continue;
+		sleepingIslands.wake(rigidBodys.values(), collisionByBody, broadPhase);
+		narrowPhase.update(collisions.values());
+		runRange(narrowPhase.getSphereCount(), new Range() {
+
+			@Override
+			public void run(int from, int to) {
+				narrowPhase.gatherSpheres(from, to);
 			}
-			switch (col.getType()) {
-			case BOX_AND_BOX:
-				CollisionDetector.boxAndBox(col.getRb1(), col.getRb2(),
-						col.getData());
-				break;
-			case BOX_AND_HALFSPACE:
-				CollisionDetector.boxAndHalfSpace(col.getRb1(), plane,
-						col.getData());
-				break;
-			case BOX_AND_POINT:
-				// CollisionDetector.boxAndPoint(col.getRb1(), col.getRb2(),
-				// col.getData());
-				break;
-			case BOX_AND_SPHERE:
+		});
+		for (CollisionType type : CollisionType.values()) {
+			List<Collision> batch = narrowPhase.getBatch(type);
+			if (!batch.isEmpty()) {
+				collideBatch(type, batch, plane);
+			}
+		}
+		if (broadPhase != null) {
+			collideBroadPhase();
+		}
+		if (manifolds != null) {
+			manifolds.endFrame();
+		}
+		deteccoes.add(System.nanoTime() - init);
+
+		init = System.nanoTime();
+		if (parallel) {
+			resolveParallel(duration);
+		} else {
+			for (CollisionData cd : collisionDatas.values()) {
+				List<Contact> contacts = cd.collectContacts();
+				resolver.resolveContacts(contacts, duration);
+				markTouched(contacts);
+			}
+			resetCollisionDatas();
+		}
+		resolucoes.add(System.nanoTime() - init);
+	}
+
+	/**
+	 * Deteco fina de um lote de colises do mesmo tipo, ver
+	 * {@link NarrowPhase}.
+	 */
+	private void collideBatch(CollisionType type, final List<Collision> batch, final CollisionPlane plane) {
+		switch (type) {
+		case BOX_AND_BOX:
+			for (Collision col : batch) {
+				if (!narrowPhase.accept(col, type) || isResting(col.getRb1(), col.getRb2())) {
+					continue;
+				}
+				if (manifolds != null) {
+					manifolds.boxAndBox(col.getRb1(), col.getRb2(), col.getData());
+				} else {
+					CollisionDetector.boxAndBox(col.getRb1(), col.getRb2(),
+							col.getData());
+				}
+			}
+			break;
+		case BOX_AND_HALFSPACE:
+			for (Collision col : batch) {
+				if (!narrowPhase.accept(col, type) || isResting(col.getRb1(), null)) {
+					continue;
+				}
+				if (manifolds != null) {
+					manifolds.boxAndHalfSpace(col.getRb1(), plane, col.getData());
+				} else {
+					CollisionDetector.boxAndHalfSpace(col.getRb1(), plane,
+							col.getData());
+				}
+			}
+			break;
+		case BOX_AND_POINT:
+			// CollisionDetector.boxAndPoint(col.getRb1(), col.getRb2(),
+			// col.getData());
+			break;
+		case BOX_AND_SPHERE:
+			for (Collision col : batch) {
+				if (!narrowPhase.accept(col, type) || isResting(col.getRb1(), col.getRb2())) {
+					continue;
+				}
 				CollisionDetector.boxAndSphere(col.getRb1(), col.getRb2(),
 						col.getData());
-				break;
-			case SPHERE_AND_HALFSPACE:
-				CollisionDetector.sphereAndHalfSpace(col.getRb1(), plane,
-						col.getData());
-				break;
-			case SPHERE_AND_SPHERE:
-				CollisionDetector.sphereAndSphere(col.getRb1(), col.getRb2(),
-						col.getData());
-				break;
-			case SPHERE_AND_TRUEPLANE:
+			}
+			break;
+		case SPHERE_AND_HALFSPACE:
+			runRange(batch.size(), new Range() {
+
+				@Override
+				public void run(int from, int to) {
+					narrowPhase.filterSphereAndHalfSpace(plane, from, to);
+				}
+			});
+			for (int i = 0; i < batch.size(); i++) {
+				Collision col = batch.get(i);
+				if (narrowPhase.isHit(type, i) && narrowPhase.accept(col, type)) {
+					CollisionDetector.sphereAndHalfSpace(col.getRb1(), plane,
+							col.getData());
+				}
+			}
+			break;
+		case SPHERE_AND_SPHERE:
+			runRange(batch.size(), new Range() {
+
+				@Override
+				public void run(int from, int to) {
+					narrowPhase.filterSphereAndSphere(from, to);
+				}
+			});
+			for (int i = 0; i < batch.size(); i++) {
+				Collision col = batch.get(i);
+				if (narrowPhase.isHit(type, i) && narrowPhase.accept(col, type)) {
+					CollisionDetector.sphereAndSphere(col.getRb1(), col.getRb2(),
+							col.getData());
+				}
+			}
+			break;
+		case SPHERE_AND_TRUEPLANE:
+			for (Collision col : batch) {
+				if (!narrowPhase.accept(col, type) || isResting(col.getRb1(), null)) {
+					continue;
+				}
 				CollisionDetector.sphereAndTruePlane(col.getRb1(), plane,
 						col.getData());
-				break;
-			default:
+			}
+			break;
+		default:
+			for (Collision col : batch) {
+				if (!narrowPhase.accept(col, type)) {
+					continue;
+				}
 				System.err.println("Unkown collision type: " + col.getType());
 			}
 		}
-		deteccoes.add(System.nanoTime() - init);
+	}
 
-		init = System.nanoTime();
+	/**
+	 * @return se nenhum dos corpos do par est ativo (acordado e integrado),
+	 *         caso em que o par no passa pela deteco fina. O segundo corpo
+	 *          <code>null</code> nas colises com o plano.
+	 * @see SleepingIslands
+	 */
+	private static boolean isResting(HRigidBody rb1, HRigidBody rb2) {
+		return !rb1.isActive() && (rb2 == null || !rb2.isActive());
+	}
+
+	/**
+	 * Executa <code>[0, size)</code> em faixas paralelas, se a simulao 
+	 * paralela e h itens suficientes, ou de uma vez.
+	 */
+	private void runRange(int size, Range range) {
+		if (parallel && size >= PARALLEL_MIN_PAIRS) {
+			forEachRange(size, range);
+		} else {
+			range.run(0, size);
+		}
+	}
+
+	/**
+	 * Deteco fina dos pares encontrados pela {@link BroadPhase}.
+	 */
+	private void collideBroadPhase() {
+		CollisionData data = broadPhaseData;
+		int count = broadPhase.findPairs();
+		for (int i = 0; i < count && data.hasMoreContacts(); i++) {
+			HRigidBody a = broadPhase.getPair(i, 0);
+			HRigidBody b = broadPhase.getPair(i, 1);
+			if (!a.canCollideWith(b) || isResting(a, b) || hasCollision(a, b)) {
+				continue;
+			}
+			boolean sphereA = a.getRadius() > 0;
+			boolean sphereB = b.getRadius() > 0;
+			if (sphereA && sphereB) {
+				CollisionDetector.sphereAndSphere(a, b, data);
+			} else if (!sphereA && !sphereB) {
+				if (manifolds != null) {
+					manifolds.boxAndBox(a, b, data);
+				} else {
+					CollisionDetector.boxAndBox(a, b, data);
+				}
+			} else if (sphereB) {
+				CollisionDetector.boxAndSphere(a, b, data);
+			} else {
+				CollisionDetector.boxAndSphere(b, a, data);
+			}
+		}
+	}
+
+	/**
+	 * Resolve os contatos de todos os grupos separados em
+	 * {@link ContactIslands ilhas}, com faixas de ilhas em paralelo. Cada
+	 * faixa toma um {@link ContactResolver} livre, reaproveitado entre os
+	 * passos; todos usam o mesmo {@link WarmStartCache}, j que as ilhas no
+	 * compartilham corpos.
+	 */
+	private void resolveParallel(final double duration) {
+		List<CollisionData> datas = new ArrayList<CollisionData>(collisionDatas.values());
+		List<List<Contact>> groups = new ArrayList<List<Contact>>(datas.size());
+		int total = 0;
+		for (CollisionData cd : datas) {
+			List<Contact> contacts = cd.collectContacts();
+			groups.add(contacts);
+			total += contacts.size();
+		}
+
+		final List<ContactIslands.Island> list = total < PARALLEL_MIN_CONTACTS ? null : islands.build(groups);
+		if (list == null || list.size() < 2) {
+			for (List<Contact> contacts : groups) {
+				resolver.resolveContacts(contacts, duration);
+			}
+		} else {
+			final List<List<Contact>> all = groups;
+			forEachRange(list.size(), 1, new Range() {
+
+				@Override
+				public void run(int from, int to) {
+					ContactResolver local = islandResolvers.poll();
+					if (local == null) {
+						local = newResolver(resolver.getVelocityEpsilon(), resolver.getPositionEpsilon());
+					}
+					try {
+						for (int i = from; i < to; i++) {
+							List<List<Contact>> parts = list.get(i).getGroups();
+							for (int g = 0; g < parts.size(); g++) {
+								List<Contact> contacts = parts.get(g);
+								if (contacts.isEmpty()) {
+									continue;
+								}
+								setIslandIterations(local, contacts.size(), all.get(g).size());
+								local.resolveContacts(contacts, duration);
+							}
+						}
+					} finally {
+						islandResolvers.offer(local);
+					}
+				}
+			});
+		}
+
+		for (int i = 0; i < datas.size(); i++) {
+			markTouched(groups.get(i));
+		}
+		resetCollisionDatas();
+	}
+
+	/**
+	 * Reinicia os grupos de contato para o prximo passo. Os contatos so
+	 * reaproveitados pelos {@link CollisionData}, ento os que precisam ser
+	 * enviados ao cliente so copiados antes. Cada grupo mantm o seu
+	 * limite de contatos.
+	 */
+	private void resetCollisionDatas() {
 		for (CollisionData cd : collisionDatas.values()) {
-			resolver.resolveContacts(cd.collectContacts(), duration);
-			cd.reset(maxContact);
+			bindContacts(cd.collectContacts());
+			contactOverflow += cd.getOverflow();
+			cd.reset();
 		}
-		resolucoes.add(System.nanoTime() - init);
+		if (warmStartCache != null) {
+			warmStartCache.endFrame();
+		}
+	}
+
+	private void forEachRange(int size, Range range) {
+		forEachRange(size, PARALLEL_MIN_CHUNK, range);
 	}
 
-	public boolean bindContact(Contact contact) {
-		return contacts.add(contact);
+	/**
+	 * Divide <code>[0, size)</code> em faixas e as executa no
+	 * {@link ForkJoinPool#commonPool()}, esperando todas terminarem.
+	 */
+	private static void forEachRange(int size, int minChunk, final Range range) {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int chunk = Math.max(minChunk, (size + pool.getParallelism() * 4 - 1) / (pool.getParallelism() * 4));
+		if (chunk >= size) {
+			range.run(0, size);
+			return;
+		}
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int from = 0; from < size; from += chunk) {
+			final int start = from;
+			final int end = Math.min(size, from + chunk);
+			tasks.add(new Callable<Void>() {
+
+				@Override
+				public Void call() {
+					range.run(start, end);
+					return null;
+				}
+			});
+		}
+		for (Future<Void> future : pool.invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+	}
+
+	private interface Range {
+
+		void run(int from, int to);
+	}
+
+	/**
+	 * Soma das medidas de uma fase do passo, sem guardar cada uma: a
+	 * integrao  chamada por corpo e no deve alocar.
+	 */
+	private static final class Tempos {
+
+		long total;
+		int quantidade;
+
+		void add(long nanos) {
+			total += nanos;
+			quantidade++;
+		}
+
+		void clear() {
+			total = 0;
+			quantidade = 0;
+		}
+	}
+
+	/**
+	 * Marca os corpos movidos pela resoluo: os acordados, e os adormecidos
+	 * empurrados para fora de uma penetrao.
+	 */
+	private void markTouched(List<Contact> contacts) {
+		double epsilon = resolver.getPositionEpsilon();
+		for (Contact contact : contacts) {
+			RigidBody[] bodies = contact.getBody();
+			for (int i = 0; i < bodies.length; i++) {
+				if (bodies[i] == null) {
+					continue;
+				}
+				HRigidBody owner = owners.get(bodies[i]);
+				if (owner != null && owner.getChangedAt() != version && (bodies[i].getAwake() || contact.getPenetration() > epsilon)) {
+					markDirty(owner);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copia para {@link #getContacts()} os contatos mantidos no grupo que
+	 * tocam um corpo com <code>bindContactData</code>. S os mantidos: os
+	 * detectores preenchem no lugar um contato que depois pode ser
+	 * descartado ou trocado, se o grupo passar do limite.
+	 */
+	private void bindContacts(List<Contact> kept) {
+		for (int i = 0; i < kept.size(); i++) {
+			Contact contact = kept.get(i);
+			RigidBody[] bodies = contact.getBody();
+			for (int j = 0; j < bodies.length; j++) {
+				if (bodies[j] == null) {
+					continue;
+				}
+				// corpos que no so integrados chegam como cpia
+				HRigidBody owner = owners.get(bodies[j].getOriginal());
+				if (owner != null && owner.isBindContactData()) {
+					contacts.add(new Contact(contact));
+					break;
+				}
+			}
+		}
 	}
 
 }
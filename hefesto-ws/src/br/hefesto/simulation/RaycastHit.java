@@ -0,0 +1,49 @@
+package br.hefesto.simulation;
+
+import br.law123.core.Vector3;
+
+/**
+ * Resultado de {@link PhysicSimulation#raycast(Vector3, Vector3, double, int)}:
+ * o corpo mais prximo atingido pelo raio.
+ *
+ * @author teixeira
+ */
+public final class RaycastHit {
+
+	private final HRigidBody body;
+	private final double distance;
+	private final Vector3 point;
+	private final Vector3 normal;
+
+	RaycastHit(HRigidBody body, double distance, Vector3 point, Vector3 normal) {
+		this.body = body;
+		this.distance = distance;
+		this.point = point;
+		this.normal = normal;
+	}
+
+	public HRigidBody getBody() {
+		return body;
+	}
+
+	/**
+	 * @return distncia da origem ao ponto atingido, zero se a origem est
+	 *         dentro do corpo.
+	 */
+	public double getDistance() {
+		return distance;
+	}
+
+	public Vector3 getPoint() {
+		return point;
+	}
+
+	/**
+	 * @return normal da superfcie no ponto atingido (oposta ao raio se a
+	 *         origem est dentro do corpo).
+	 */
+	public Vector3 getNormal() {
+		return normal;
+	}
+
+}
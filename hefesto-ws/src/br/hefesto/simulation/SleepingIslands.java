@@ -0,0 +1,118 @@
+package br.hefesto.simulation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Despertar dos corpos adormecidos por ilhas. </br>
+ * Pares em que nenhum corpo est ativo (ver {@link HRigidBody#isActive()})
+ * no passam pela deteco fina, ento os contatos de uma pilha adormecida
+ * deixam de existir e um corpo adormecido s acorda ao tocar um corpo
+ * acordado. Para que a pilha no fique flutuando quando um corpo dela acorda
+ * (empurrado ou por uma fora) e se afasta, a cada passo os corpos que
+ * acordaram desde o passo anterior acordam tambm os adormecidos prximos, e
+ * estes os seus: a ilha inteira acorda junto, antes da deteco. </br>
+ * So prximos os corpos ligados por uma {@link Collision} explcita, ou
+ * pelos pares da ltima varredura da {@link BroadPhase}, cujas caixas
+ * envolventes de quando adormeceram, alargadas por {@link #MARGIN}, se
+ * sobrepem: um corpo que acordou e j foi levado para longe ainda acorda os
+ * que se apoiavam nele. A busca s  feita quando algum corpo acorda; numa
+ * cena parada resta apenas conferir o estado de cada corpo.
+ *
+ * @author teixeira
+ */
+final class SleepingIslands {
+
+	// folga para considerar dois corpos em contato
+	static final double MARGIN = 0.05;
+
+	private final List<HRigidBody> queue = new ArrayList<HRigidBody>();
+	private final Map<HRigidBody, List<HRigidBody>> broadPairs = new IdentityHashMap<HRigidBody, List<HRigidBody>>();
+	private final double[] bounds = new double[6];
+	private final double[] otherBounds = new double[6];
+
+	/**
+	 * Acorda as ilhas dos corpos que acordaram desde a ltima chamada, e
+	 * guarda quais corpos esto adormecidos agora.
+	 *
+	 * @return a quantidade de corpos acordados pela ilha.
+	 */
+	int wake(Collection<HRigidBody> bodies, Map<HRigidBody, List<Collision>> collisionByBody, BroadPhase broadPhase) {
+		queue.clear();
+		for (HRigidBody body : bodies) {
+			boolean active = body.isActive();
+			if (active && body.isSleeping()) {
+				queue.add(body);
+			}
+			body.setSleeping(!active && !body.isIgnoreIntegration());
+		}
+		if (queue.isEmpty()) {
+			return 0;
+		}
+
+		if (broadPhase != null) {
+			for (int i = 0; i < broadPhase.getPairCount(); i++) {
+				link(broadPhase.getPair(i, 0), broadPhase.getPair(i, 1));
+				link(broadPhase.getPair(i, 1), broadPhase.getPair(i, 0));
+			}
+		}
+
+		int woken = 0;
+		for (int i = 0; i < queue.size(); i++) {
+			HRigidBody body = queue.get(i);
+			List<Collision> list = collisionByBody.get(body);
+			if (list != null) {
+				for (Collision c : list) {
+					woken += wakeNear(body, c.getRb1() == body ? c.getRb2() : c.getRb1());
+				}
+			}
+			List<HRigidBody> near = broadPairs.get(body);
+			if (near != null) {
+				for (HRigidBody other : near) {
+					woken += wakeNear(body, other);
+				}
+			}
+		}
+		broadPairs.clear();
+		return woken;
+	}
+
+	private void link(HRigidBody body, HRigidBody other) {
+		List<HRigidBody> list = broadPairs.get(body);
+		if (list == null) {
+			list = new ArrayList<HRigidBody>(4);
+			broadPairs.put(body, list);
+		}
+		list.add(other);
+	}
+
+	private int wakeNear(HRigidBody body, HRigidBody other) {
+		if (other == null || !other.isSleeping() || !isNear(body, other)) {
+			return 0;
+		}
+		other.getEngineBody().setAwake(true);
+		other.setSleeping(false);
+		queue.add(other);
+		return 1;
+	}
+
+	/**
+	 * @return se as caixas envolventes de quando os corpos adormeceram, com a
+	 *         folga, se sobrepem; corpos sem caixa so sempre prximos.
+	 */
+	private boolean isNear(HRigidBody body, HRigidBody other) {
+		if (!body.getSleepingBounds(bounds) || !other.getSleepingBounds(otherBounds)) {
+			return true;
+		}
+		for (int k = 0; k < 3; k++) {
+			if (bounds[k] - MARGIN > otherBounds[k + 3] || otherBounds[k] - MARGIN > bounds[k + 3]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
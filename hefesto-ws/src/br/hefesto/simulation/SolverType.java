@@ -0,0 +1,25 @@
+package br.hefesto.simulation;
+
+import br.law123.rigidbody.contact.ContactResolver;
+import br.law123.rigidbody.contact.ImpulseSolver;
+
+/**
+ * Resolvedores de contato disponveis para uma {@link PhysicSimulation}.
+ *
+ * @author teixeira
+ */
+public enum SolverType {
+
+	/** {@link ContactResolver}: resolve o pior contato primeiro, sem memria entre passos. */
+	SEQUENTIAL,
+	/** {@link ImpulseSolver}: impulsos acumulados, reaproveitados do passo anterior. */
+	IMPULSE;
+
+	public static SolverType valueOfString(String type) {
+		if (type == null) {
+			return null;
+		}
+		return valueOf(type.toUpperCase());
+	}
+
+}
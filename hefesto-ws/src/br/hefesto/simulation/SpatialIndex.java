@@ -0,0 +1,310 @@
+package br.hefesto.simulation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.law123.collide.DynamicAABBTree;
+import br.law123.core.Matrix4;
+import br.law123.core.Quaternion;
+import br.law123.core.Vector3;
+
+/**
+ * ndice espacial dos corpos para as consultas de
+ * {@link PhysicSimulation}: raio, sobreposio de esfera e de caixa. </br>
+ * Os corpos ficam numa {@link DynamicAABBTree}, que s se reorganiza quando
+ * um corpo sai da sua caixa folgada; a rvore descarta quase todos os
+ * corpos e os testes exatos (esfera ou caixa orientada) so feitos apenas
+ * nos que sobram. O ndice  atualizado antes da primeira consulta de cada
+ * passo.
+ *
+ * @author teixeira
+ */
+final class SpatialIndex {
+
+	private final DynamicAABBTree<HRigidBody> tree = new DynamicAABBTree<HRigidBody>();
+	private final Map<HRigidBody, Proxy> proxies = new IdentityHashMap<HRigidBody, Proxy>();
+	private final double[] bounds = new double[6];
+
+	void refresh(Collection<HRigidBody> bodies) {
+		for (HRigidBody body : bodies) {
+			Proxy proxy = proxies.get(body);
+			if (!body.getBounds(bounds)) {
+				if (proxy != null) {
+					remove(body);
+				}
+				continue;
+			}
+			double cx = (bounds[0] + bounds[3]) * 0.5;
+			double cy = (bounds[1] + bounds[4]) * 0.5;
+			double cz = (bounds[2] + bounds[5]) * 0.5;
+			if (proxy == null) {
+				proxy = new Proxy(tree.createProxy(bounds[0], bounds[1], bounds[2], bounds[3], bounds[4], bounds[5], body));
+				proxies.put(body, proxy);
+			} else {
+				tree.moveProxy(proxy.id, bounds[0], bounds[1], bounds[2], bounds[3], bounds[4], bounds[5], cx - proxy.x, cy - proxy.y, cz - proxy.z);
+			}
+			proxy.x = cx;
+			proxy.y = cy;
+			proxy.z = cz;
+		}
+	}
+
+	void remove(HRigidBody body) {
+		Proxy proxy = proxies.remove(body);
+		if (proxy != null) {
+			tree.destroyProxy(proxy.id);
+		}
+	}
+
+	/**
+	 * @param direction direo do raio, normalizada.
+	 */
+	RaycastHit raycast(final Vector3 origin, final Vector3 direction, double maxDistance, final int mask) {
+		final RaycastHit[] closest = new RaycastHit[1];
+		tree.raycast(origin.getX(), origin.getY(), origin.getZ(), direction.getX(), direction.getY(), direction.getZ(), maxDistance, new DynamicAABBTree.RayCallback<HRigidBody>() {
+
+			@Override
+			public double hit(int proxy, HRigidBody body, double maxDistance) {
+				if ((body.getCollisionLayer() & mask) == 0) {
+					return maxDistance;
+				}
+				RaycastHit hit = body.getRadius() > 0 ? raySphere(body, origin, direction, maxDistance) : rayBox(body, origin, direction, maxDistance);
+				if (hit == null) {
+					return maxDistance;
+				}
+				closest[0] = hit;
+				// distncia zero encerra a busca: nada fica mais perto
+				return hit.getDistance();
+			}
+		});
+		return closest[0];
+	}
+
+	List<HRigidBody> sphereOverlap(final Vector3 centre, final double radius, final int mask) {
+		final List<HRigidBody> result = new ArrayList<HRigidBody>();
+		tree.query(centre.getX() - radius, centre.getY() - radius, centre.getZ() - radius, centre.getX() + radius, centre.getY() + radius, centre.getZ() + radius, new DynamicAABBTree.QueryCallback<HRigidBody>() {
+
+			@Override
+			public boolean found(int proxy, HRigidBody body) {
+				if ((body.getCollisionLayer() & mask) != 0 && sphereOverlaps(body, centre, radius)) {
+					result.add(body);
+				}
+				return true;
+			}
+		});
+		return result;
+	}
+
+	List<HRigidBody> boxOverlap(Vector3 centre, final Vector3 halfSize, Quaternion orientation, final int mask) {
+		Matrix4 transform = new Matrix4();
+		transform.setOrientationAndPos(orientation, centre);
+		final double[] m = transform.getData();
+
+		double[] extent = new double[3];
+		for (int k = 0; k < 3; k++) {
+			int row = k * 4;
+			extent[k] = Math.abs(m[row]) * halfSize.getX() + Math.abs(m[row + 1]) * halfSize.getY() + Math.abs(m[row + 2]) * halfSize.getZ();
+		}
+		final List<HRigidBody> result = new ArrayList<HRigidBody>();
+		tree.query(m[3] - extent[0], m[7] - extent[1], m[11] - extent[2], m[3] + extent[0], m[7] + extent[1], m[11] + extent[2], new DynamicAABBTree.QueryCallback<HRigidBody>() {
+
+			@Override
+			public boolean found(int proxy, HRigidBody body) {
+				if ((body.getCollisionLayer() & mask) == 0) {
+					return true;
+				}
+				boolean overlaps;
+				if (body.getRadius() > 0) {
+					double[] b = body.getTransform().getData();
+					overlaps = sphereOverlapsBox(b[3], b[7], b[11], body.getRadius(), m, halfSize);
+				} else {
+					overlaps = boxesOverlap(body.getTransform().getData(), body.getHalfSize(), m, halfSize);
+				}
+				if (overlaps) {
+					result.add(body);
+				}
+				return true;
+			}
+		});
+		return result;
+	}
+
+	private static RaycastHit raySphere(HRigidBody body, Vector3 origin, Vector3 direction, double maxDistance) {
+		double[] m = body.getTransform().getData();
+		double ox = origin.getX() - m[3];
+		double oy = origin.getY() - m[7];
+		double oz = origin.getZ() - m[11];
+		double r = body.getRadius();
+
+		double b = ox * direction.getX() + oy * direction.getY() + oz * direction.getZ();
+		double c = ox * ox + oy * oy + oz * oz - r * r;
+		if (c <= 0) {
+			// origem dentro da esfera
+			return new RaycastHit(body, 0, new Vector3(origin), direction.mult(-1));
+		}
+		double discriminant = b * b - c;
+		if (b > 0 || discriminant < 0) {
+			return null;
+		}
+		double t = -b - Math.sqrt(discriminant);
+		if (t > maxDistance) {
+			return null;
+		}
+		Vector3 point = new Vector3(origin);
+		point.addScaledVector(direction, t);
+		Vector3 normal = new Vector3(ox + direction.getX() * t, oy + direction.getY() * t, oz + direction.getZ() * t);
+		normal.normalise();
+		return new RaycastHit(body, t, point, normal);
+	}
+
+	private static RaycastHit rayBox(HRigidBody body, Vector3 origin, Vector3 direction, double maxDistance) {
+		double[] m = body.getTransform().getData();
+		Vector3 halfSize = body.getHalfSize();
+		double px = origin.getX() - m[3];
+		double py = origin.getY() - m[7];
+		double pz = origin.getZ() - m[11];
+
+		double enter = 0;
+		double exit = maxDistance;
+		int enterAxis = -1;
+		double enterSign = 0;
+		for (int k = 0; k < 3; k++) {
+			// coordenadas locais: projeo nos eixos (colunas) da caixa
+			double o = m[k] * px + m[k + 4] * py + m[k + 8] * pz;
+			double d = m[k] * direction.getX() + m[k + 4] * direction.getY() + m[k + 8] * direction.getZ();
+			double h = halfSize.get(k);
+			if (d == 0) {
+				if (o < -h || o > h) {
+					return null;
+				}
+				continue;
+			}
+			double t1 = (-h - o) / d;
+			double t2 = (h - o) / d;
+			double sign = -1;
+			if (t1 > t2) {
+				double t = t1;
+				t1 = t2;
+				t2 = t;
+				sign = 1;
+			}
+			if (t1 > enter) {
+				enter = t1;
+				enterAxis = k;
+				enterSign = sign;
+			}
+			exit = Math.min(exit, t2);
+			if (enter > exit) {
+				return null;
+			}
+		}
+		Vector3 point = new Vector3(origin);
+		point.addScaledVector(direction, enter);
+		Vector3 normal;
+		if (enterAxis < 0) {
+			// origem dentro da caixa
+			normal = direction.mult(-1);
+		} else {
+			normal = new Vector3(m[enterAxis] * enterSign, m[enterAxis + 4] * enterSign, m[enterAxis + 8] * enterSign);
+		}
+		return new RaycastHit(body, enter, point, normal);
+	}
+
+	private static boolean sphereOverlaps(HRigidBody body, Vector3 centre, double radius) {
+		double[] m = body.getTransform().getData();
+		if (body.getRadius() > 0) {
+			double dx = centre.getX() - m[3];
+			double dy = centre.getY() - m[7];
+			double dz = centre.getZ() - m[11];
+			double r = radius + body.getRadius();
+			return dx * dx + dy * dy + dz * dz <= r * r;
+		}
+		return sphereOverlapsBox(centre.getX(), centre.getY(), centre.getZ(), radius, m, body.getHalfSize());
+	}
+
+	/**
+	 * Distncia da esfera ao ponto mais prximo da caixa, em coordenadas da
+	 * caixa.
+	 */
+	private static boolean sphereOverlapsBox(double sx, double sy, double sz, double radius, double[] m, Vector3 halfSize) {
+		double px = sx - m[3];
+		double py = sy - m[7];
+		double pz = sz - m[11];
+		double distance = 0;
+		for (int k = 0; k < 3; k++) {
+			double local = m[k] * px + m[k + 4] * py + m[k + 8] * pz;
+			double h = halfSize.get(k);
+			double excess = local < -h ? local + h : local > h ? local - h : 0;
+			distance += excess * excess;
+		}
+		return distance <= radius * radius;
+	}
+
+	/**
+	 * Teste de eixos separadores entre duas caixas orientadas: os trs eixos
+	 * de cada caixa e os nove produtos vetoriais entre eles.
+	 */
+	private static boolean boxesOverlap(double[] a, Vector3 ha, double[] b, Vector3 hb) {
+		// rotao de b no referencial de a, com folga para eixos quase
+		// paralelos
+		double[][] r = new double[3][3];
+		double[][] absR = new double[3][3];
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 3; j++) {
+				r[i][j] = a[i] * b[j] + a[i + 4] * b[j + 4] + a[i + 8] * b[j + 8];
+				absR[i][j] = Math.abs(r[i][j]) + 1e-9;
+			}
+		}
+		double dx = b[3] - a[3];
+		double dy = b[7] - a[7];
+		double dz = b[11] - a[11];
+		double[] t = new double[3];
+		for (int i = 0; i < 3; i++) {
+			t[i] = a[i] * dx + a[i + 4] * dy + a[i + 8] * dz;
+		}
+
+		for (int i = 0; i < 3; i++) {
+			double ra = ha.get(i);
+			double rb = hb.get(0) * absR[i][0] + hb.get(1) * absR[i][1] + hb.get(2) * absR[i][2];
+			if (Math.abs(t[i]) > ra + rb) {
+				return false;
+			}
+		}
+		for (int j = 0; j < 3; j++) {
+			double ra = ha.get(0) * absR[0][j] + ha.get(1) * absR[1][j] + ha.get(2) * absR[2][j];
+			double rb = hb.get(j);
+			if (Math.abs(t[0] * r[0][j] + t[1] * r[1][j] + t[2] * r[2][j]) > ra + rb) {
+				return false;
+			}
+		}
+		for (int i = 0; i < 3; i++) {
+			int i1 = (i + 1) % 3;
+			int i2 = (i + 2) % 3;
+			for (int j = 0; j < 3; j++) {
+				int j1 = (j + 1) % 3;
+				int j2 = (j + 2) % 3;
+				double ra = ha.get(i1) * absR[i2][j] + ha.get(i2) * absR[i1][j];
+				double rb = hb.get(j1) * absR[i][j2] + hb.get(j2) * absR[i][j1];
+				if (Math.abs(t[i2] * r[i1][j] - t[i1] * r[i2][j]) > ra + rb) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static final class Proxy {
+
+		final int id;
+		// centro da caixa na ltima atualizao, para prever o deslocamento
+		double x, y, z;
+
+		Proxy(int id) {
+			this.id = id;
+		}
+	}
+
+}
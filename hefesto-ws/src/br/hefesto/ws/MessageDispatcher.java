@@ -0,0 +1,63 @@
+package br.hefesto.ws;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Despacha as mensagens recebidas das sesses para as suas caixas de
+ * mensagens, drenadas pelos workers do {@link SimulationScheduler}. </br>
+ * Assim as threads de I/O do WebSocket apenas enfileiram, e as sesses so
+ * processadas em paralelo, mantendo a ordem dentro de cada sesso. </br>
+ * Com <code>hefesto.ws.dispatch=virtual</code> cada drenagem roda em uma
+ * thread virtual (Java 21 ou superior); os passos conduzidos pelo servidor
+ * continuam nos workers. Em JVMs sem threads virtuais o modo  ignorado.
+ *
+ * @author teixeira
+ */
+public final class MessageDispatcher {
+
+    /** Modo padro: workers do {@link SimulationScheduler}. */
+    public static final String POOL = "pool";
+    /** Uma thread virtual por drenagem da caixa de mensagens. */
+    public static final String VIRTUAL = "virtual";
+
+    private static final Executor VIRTUAL_EXECUTOR = VIRTUAL.equalsIgnoreCase(System.getProperty("hefesto.ws.dispatch", POOL)) ? newVirtualExecutor() : null;
+
+    private MessageDispatcher() {
+    }
+
+    static SessionMailbox newMailbox(SimulationProcessor processor) {
+        return new SessionMailbox(processor, getExecutor(), SessionMailbox.DEFAULT_CAPACITY);
+    }
+
+    static Executor getExecutor() {
+        if (VIRTUAL_EXECUTOR != null) {
+            return VIRTUAL_EXECUTOR;
+        }
+        return SimulationScheduler.get().getWorkers();
+    }
+
+    /**
+     * @return <code>true</code> se as mensagens so processadas em threads
+     *         virtuais.
+     */
+    public static boolean isVirtual() {
+        return VIRTUAL_EXECUTOR != null;
+    }
+
+    private static Executor newVirtualExecutor() {
+        try {
+            // por reflexo, o projeto ainda compila para Java 8
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            System.err.println("Virtual threads are not available in this JVM, using the simulation workers.");
+            return null;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,332 @@
+package br.hefesto.ws;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+/**
+ * Fila de sada limitada de uma sesso. </br>
+ * Apenas uma mensagem por vez fica em envio no container; as demais esperam
+ * aqui, e a prxima s  enviada quando a anterior  concluda. Assim um
+ * cliente lento acumula no mximo <code>capacity</code> mensagens. </br>
+ * Quando a fila enche, a {@link OverflowPolicy} decide o que  descartado.
+ * Somente quadros de estado (os enviados pelo passo da simulao e os quadros
+ * binrios) podem ser descartados; respostas de comandos nunca so, e se no
+ * houver quadro de estado para abrir espao a sesso  fechada.
+ *
+ * @author teixeira
+ */
+public final class OutboundQueue {
+
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("hefesto.ws.outboundCapacity", 64);
+    public static final OverflowPolicy DEFAULT_POLICY = OverflowPolicy.valueOf(System.getProperty("hefesto.ws.overflowPolicy", OverflowPolicy.COALESCE.name()).toUpperCase());
+
+    private final Session session;
+    private final int capacity;
+    private volatile OverflowPolicy policy;
+    private final Runnable stateDropped;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<Outbound> queue = new ArrayDeque<Outbound>();
+    private boolean sending = false;
+    private boolean closed = false;
+
+    private final SendHandler handler = new SendHandler() {
+
+        @Override
+        public void onResult(SendResult result) {
+            completed(result);
+        }
+    };
+    // mensagem em envio no container
+    private Outbound current;
+
+    // mtricas, escritas sob a trava
+    private int maxDepth;
+    private long sent;
+    private long failed;
+    private long dropped;
+    private long totalLatency;
+    private long maxLatency;
+
+    /**
+     * @param session sesso de destino.
+     * @param capacity mximo de mensagens aguardando envio.
+     * @param policy poltica de transbordo.
+     * @param stateDropped avisado, fora da trava, quando um quadro de estado 
+     *            descartado; pode ser nulo.
+     */
+    public OutboundQueue(Session session, int capacity, OverflowPolicy policy, Runnable stateDropped) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.session = session;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.stateDropped = stateDropped;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(OverflowPolicy policy) {
+        this.policy = policy;
+    }
+
+    public void sendText(String text, boolean state) {
+        offer(new Outbound(text, null, state));
+    }
+
+    public void sendBinary(ByteBuffer data, boolean state) {
+        offer(new Outbound(null, data, state));
+    }
+
+    private void offer(Outbound message) {
+        boolean drop = false;
+        boolean overflow = false;
+        Outbound next = null;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (queue.size() >= capacity) {
+                switch (policy) {
+                case COALESCE:
+                    drop = removeStates(Integer.MAX_VALUE) > 0;
+                    break;
+                case DROP:
+                    if (message.state) {
+                        dropped++;
+                        drop = true;
+                        message = null;
+                    } else {
+                        drop = removeStates(1) > 0;
+                    }
+                    break;
+                default:
+                    break;
+                }
+                overflow = message != null && queue.size() >= capacity;
+            }
+            if (message != null && !overflow) {
+                queue.add(message);
+                maxDepth = Math.max(maxDepth, queue.size());
+                if (!sending) {
+                    sending = true;
+                    next = queue.poll();
+                    current = next;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (drop && stateDropped != null) {
+            stateDropped.run();
+        }
+        if (overflow) {
+            close("Outbound queue overflow");
+        } else if (next != null) {
+            send(next);
+        }
+    }
+
+    /**
+     * Remove da fila at <code>max</code> quadros de estado, dos mais antigos
+     * para os mais novos. Deve ser chamado com a trava.
+     */
+    private int removeStates(int max) {
+        int removed = 0;
+        for (Iterator<Outbound> it = queue.iterator(); it.hasNext() && removed < max;) {
+            if (it.next().state) {
+                it.remove();
+                removed++;
+            }
+        }
+        dropped += removed;
+        return removed;
+    }
+
+    private void send(Outbound message) {
+        try {
+            if (message.text != null) {
+                session.getAsyncRemote().sendText(message.text, handler);
+            } else {
+                session.getAsyncRemote().sendBinary(message.binary, handler);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            lock.lock();
+            try {
+                failed++;
+                closed = true;
+                sending = false;
+                queue.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void completed(SendResult result) {
+        Outbound next;
+        lock.lock();
+        try {
+            long latency = System.nanoTime() - current.enqueued;
+            if (result.isOK()) {
+                sent++;
+                totalLatency += latency;
+                maxLatency = Math.max(maxLatency, latency);
+            } else {
+                failed++;
+            }
+            next = closed ? null : queue.poll();
+            current = next;
+            if (next == null) {
+                sending = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (next != null) {
+            send(next);
+        }
+    }
+
+    /**
+     * Descarta as mensagens pendentes e recusa as prximas, sem fechar a
+     * sesso; para quando ela j est sendo fechada.
+     */
+    public void discard() {
+        lock.lock();
+        try {
+            closed = true;
+            queue.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void close(String reason) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.clear();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            session.close(new CloseReason(CloseCodes.TRY_AGAIN_LATER, reason));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public int getDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public Statistics getStatistics() {
+        lock.lock();
+        try {
+            return new Statistics(queue.size(), maxDepth, sent, failed, dropped, sent == 0 ? 0 : totalLatency / sent, maxLatency);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Outbound {
+
+        final String text;
+        final ByteBuffer binary;
+        final boolean state;
+        final long enqueued = System.nanoTime();
+
+        Outbound(String text, ByteBuffer binary, boolean state) {
+            this.text = text;
+            this.binary = binary;
+            this.state = state;
+        }
+    }
+
+    /**
+     * Mtricas da fila: profundidade e latncia de envio, medida da entrada na
+     * fila at a concluso do envio.
+     */
+    public static final class Statistics {
+
+        private final int depth;
+        private final int maxDepth;
+        private final long sent;
+        private final long failed;
+        private final long dropped;
+        private final long averageLatency;
+        private final long maxLatency;
+
+        Statistics(int depth, int maxDepth, long sent, long failed, long dropped, long averageLatency, long maxLatency) {
+            this.depth = depth;
+            this.maxDepth = maxDepth;
+            this.sent = sent;
+            this.failed = failed;
+            this.dropped = dropped;
+            this.averageLatency = averageLatency;
+            this.maxLatency = maxLatency;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+
+        public long getAverageLatencyNanos() {
+            return averageLatency;
+        }
+
+        public long getMaxLatencyNanos() {
+            return maxLatency;
+        }
+
+        @Override
+        public String toString() {
+            return "depth=" + depth + " maxDepth=" + maxDepth + " sent=" + sent + " failed=" + failed + " dropped=" + dropped + " avgLatency=" + averageLatency + "ns maxLatency=" + maxLatency + "ns";
+        }
+    }
+
+}
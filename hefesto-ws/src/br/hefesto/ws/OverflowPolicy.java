@@ -0,0 +1,25 @@
+package br.hefesto.ws;
+
+/**
+ * O que fazer quando a fila de sada de uma sesso enche, ver
+ * {@link OutboundQueue}.
+ *
+ * @author teixeira
+ */
+public enum OverflowPolicy {
+
+    /** Descarta os quadros de estado pendentes e mantm apenas o mais novo. */
+    COALESCE,
+    /** Descarta o quadro de estado novo, mantendo os que j esto na fila. */
+    DROP,
+    /** Fecha a sesso. */
+    DISCONNECT;
+
+    public static OverflowPolicy valueOfString(String policy) {
+        if (policy == null) {
+            return null;
+        }
+        return valueOf(policy.toUpperCase());
+    }
+
+}
@@ -1,8 +1,5 @@
 package br.hefesto.ws;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import javax.websocket.Session;
 
 import org.json.JSONObject;
@@ -17,12 +14,15 @@ import br.hefesto.ws.processor.CommandType;
  */
 public class PhysicSimulationOrchestrator {
 
-    private static final Map<Session, SimulationProcessor> sessions = new HashMap<Session, SimulationProcessor>();
+    /** Propriedade da sesso observadora que guarda o id da simulao observada. */
+    public static final String OBSERVED_SIMULATION_ID = "hefesto.observedSimulationId";
+
+    private static final SimulationRegistry registry = new SimulationRegistry(Integer.getInteger("hefesto.registry.shards", 4 * Runtime.getRuntime().availableProcessors()));
 
     public static SimulationProcessor bindConnection(Session session) throws IllegalArgumentException {
-        SimulationProcessor processor = new SimulationProcessor(session, new PhysicSimulation(System.currentTimeMillis()));
+        SimulationProcessor processor = new SimulationProcessor(session, new PhysicSimulation(registry.nextId()));
 
-        sessions.put(session, processor);
+        registry.register(processor);
 
         JSONObject data = new JSONObject();
         data.put("id", processor.getSimulation().getId());
@@ -32,11 +32,61 @@ public class PhysicSimulationOrchestrator {
     }
 
     public static SimulationProcessor kill(Session session) {
-        return sessions.remove(session);
+        SimulationProcessor processor = registry.remove(session);
+        if (processor != null) {
+            // antes de parar o loop: um START_SIMULATION em execuo no
+            // consegue mais agendar outro
+            processor.close();
+            SimulationScheduler.get().stop(processor);
+            processor.getBroadcast().close();
+        }
+        return processor;
+    }
+
+    /**
+     * Inscreve a sesso como observadora, somente leitura, de uma simulao
+     * em execuo.
+     * 
+     * @param session sesso observadora.
+     * @param simulationId id da simulao observada.
+     * @return o processador da simulao observada.
+     * @throws IllegalArgumentException se a simulao no existe.
+     */
+    public static SimulationProcessor bindObserver(Session session, long simulationId) throws IllegalArgumentException {
+        SimulationProcessor processor = registry.get(simulationId);
+        if (processor == null) {
+            throw new IllegalArgumentException("Simulation not found: " + simulationId);
+        }
+        session.getUserProperties().put(OBSERVED_SIMULATION_ID, simulationId);
+        processor.getBroadcast().subscribe(session);
+        return processor;
+    }
+
+    public static SimulationProcessor unbindObserver(Session session) {
+        Object id = session.getUserProperties().remove(OBSERVED_SIMULATION_ID);
+        if (!(id instanceof Long)) {
+            return null;
+        }
+        SimulationProcessor processor = registry.get((Long) id);
+        if (processor != null) {
+            processor.getBroadcast().unsubscribe(session);
+        }
+        return processor;
+    }
+
+    public static SimulationProcessor find(long simulationId) {
+        return registry.get(simulationId);
+    }
+
+    public static SimulationRegistry getRegistry() {
+        return registry;
     }
 
     public static void processMessage(Session session, String message) {
-        sessions.get(session).processMessage(message);
+        SimulationProcessor processor = registry.get(session);
+        if (processor != null) {
+            processor.postMessage(message);
+        }
     }
 
 }
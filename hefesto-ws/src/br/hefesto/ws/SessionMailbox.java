@@ -0,0 +1,122 @@
+package br.hefesto.ws;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+
+/**
+ * Caixa de mensagens de uma sesso. </br>
+ * As mensagens so processadas na ordem de chegada, por no mximo um worker
+ * por vez; sesses diferentes so drenadas em paralelo. Para no monopolizar
+ * um worker, cada execuo processa um lote limitado e, se ainda houver
+ * mensagens, a caixa volta para o fim da fila do executor. </br>
+ * A caixa guarda no mximo <code>capacity</code> mensagens. Um cliente que
+ * envia mais rpido do que a sesso processa tem a sesso fechada, como na
+ * poltica {@link OverflowPolicy#DISCONNECT} da fila de sada.
+ *
+ * @author teixeira
+ */
+final class SessionMailbox implements Runnable {
+
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("hefesto.ws.inboundCapacity", 256);
+
+    private static final int BATCH_SIZE = 32;
+
+    private final SimulationProcessor processor;
+    private final Executor executor;
+    private final int capacity;
+
+    private final Queue<String> messages = new ConcurrentLinkedQueue<String>();
+    // tamanho de messages, que no tem size() em tempo constante
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean closed = false;
+
+    SessionMailbox(SimulationProcessor processor, Executor executor, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.processor = processor;
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param message mensagem recebida.
+     * @return <code>false</code> se a caixa est fechada ou cheia; se cheia, a
+     *         sesso  fechada.
+     */
+    boolean post(String message) {
+        if (closed) {
+            return false;
+        }
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            overflow();
+            return false;
+        }
+        messages.offer(message);
+        schedule();
+        return true;
+    }
+
+    private void overflow() {
+        close();
+        try {
+            processor.getSession().close(new CloseReason(CloseCodes.TRY_AGAIN_LATER, "Inbound mailbox overflow"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Descarta as mensagens pendentes e recusa as prximas; a mensagem em
+     * processamento, se houver, termina normalmente.
+     */
+    void close() {
+        closed = true;
+        messages.clear();
+        size.set(0);
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            String message;
+            for (int i = 0; i < BATCH_SIZE && !closed && (message = messages.poll()) != null; i++) {
+                size.decrementAndGet();
+                try {
+                    processor.processMessage(message);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            if (!closed && !messages.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+}
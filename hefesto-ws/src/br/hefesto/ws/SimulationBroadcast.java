@@ -0,0 +1,221 @@
+package br.hefesto.ws;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+import javax.websocket.Session;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import br.hefesto.simulation.HRigidBody;
+import br.hefesto.simulation.PhysicSimulation;
+import br.hefesto.ws.processor.CommandType;
+import br.hefesto.ws.processor.IntegrateCommand;
+import br.hefesto.ws.stream.BinaryStateEncoder;
+import br.hefesto.ws.stream.StateEncoding;
+
+/**
+ * Envio do estado de uma simulao para as sesses observadoras, que apenas
+ * assistem. </br>
+ * O estado de cada passo  codificado uma nica vez, no formato negociado pelo
+ * dono da simulao, e os mesmos bytes so enfileirados para todos os
+ * observadores. Como os observadores no confirmam quadros, a base dos deltas
+ * binrios avana a cada quadro. Um observador novo, ou um que teve um quadro
+ * descartado na sua fila, recebe no passo seguinte um quadro-chave (ou, em
+ * JSON com rastreamento de alteraes, todos os corpos) no lugar do delta; os
+ * demais seguem recebendo deltas. O quadro que entrou na fila junto com o
+ * descarte pode ser um delta sobre o quadro perdido, e o cliente o ignora pela
+ * sequncia da base.
+ *
+ * @author teixeira
+ */
+public final class SimulationBroadcast {
+
+    private final SimulationProcessor owner;
+    private final IntegrateCommand stateWriter = new IntegrateCommand();
+
+    private final List<Observer> observers = new CopyOnWriteArrayList<Observer>();
+
+    // usados apenas com a simulao travada
+    private BinaryStateEncoder encoder;
+    private long publishedVersion = 0;
+
+    SimulationBroadcast(SimulationProcessor owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Inscreve a sesso como observadora e envia, como resposta de
+     * {@link CommandType#NEW_SIMULATION} sem id, o id da simulao e o formato
+     * do estado.
+     *
+     * @param session sesso observadora.
+     */
+    void subscribe(Session session) {
+        Observer observer = new Observer(session);
+
+        JSONObject data = new JSONObject();
+        data.put("id", owner.getSimulation().getId());
+        data.put("observer", true);
+        data.put("stateEncoding", owner.getStateEncoding().name());
+        JSONObject master = new JSONObject();
+        master.put("id", -1);
+        master.put("type", CommandType.NEW_SIMULATION.getCommand());
+        master.put("data", data);
+        observer.outbound.sendText(master.toString(), false);
+
+        // o observador entra j pedindo o estado completo
+        observers.add(observer);
+    }
+
+    boolean unsubscribe(Session session) {
+        for (Observer observer : observers) {
+            if (observer.session == session) {
+                observer.outbound.discard();
+                return observers.remove(observer);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fecha as sesses observadoras, quando a simulao termina.
+     */
+    void close() {
+        for (Observer observer : observers) {
+            observer.outbound.discard();
+            try {
+                observer.session.close(new CloseReason(CloseCodes.GOING_AWAY, "Simulation finished"));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        observers.clear();
+    }
+
+    public int getObserverCount() {
+        return observers.size();
+    }
+
+    public boolean hasObservers() {
+        return !observers.isEmpty();
+    }
+
+    /**
+     * Codifica o estado corrente e o envia a todos os observadores. Deve ser
+     * chamado com a simulao travada.
+     *
+     * @param contacts contatos do passo, j lidos da simulao.
+     */
+    void publish(JSONArray contacts) {
+        if (observers.isEmpty()) {
+            return;
+        }
+        PhysicSimulation simulation = owner.getSimulation();
+
+        if (owner.getStateEncoding() == StateEncoding.BINARY) {
+            BinaryStateEncoder source = owner.getEncoder();
+            if (encoder == null || encoder.getPositionResolution() != source.getPositionResolution() || encoder.getKeyframeInterval() != source.getKeyframeInterval()) {
+                encoder = new BinaryStateEncoder(source.getPositionResolution(), source.getKeyframeInterval());
+            }
+            ByteBuffer frame = encoder.encode(simulation.getRigidBodys().values());
+            encoder.ack(encoder.getSequence());
+            ByteBuffer keyframe = null;
+            for (Observer observer : observers) {
+                if (observer.takeResync()) {
+                    if (keyframe == null) {
+                        keyframe = encoder.encodeKeyframe();
+                    }
+                    observer.outbound.sendBinary(keyframe.duplicate(), true);
+                } else {
+                    observer.outbound.sendBinary(frame.duplicate(), true);
+                }
+            }
+            if (contacts.length() > 0) {
+                JSONObject data = new JSONObject();
+                data.put("frame", encoder.getSequence());
+                data.put("_contacts", contacts);
+                sendText(data);
+            }
+            return;
+        }
+
+        if (!simulation.isDirtyTracking()) {
+            sendText(stateWriter.writeState(simulation.getRigidBodys().values(), contacts));
+            return;
+        }
+        Collection<HRigidBody> changed = simulation.getChangedBodies(publishedVersion);
+        publishedVersion = simulation.getVersion();
+        String delta = null;
+        String full = null;
+        for (Observer observer : observers) {
+            if (observer.takeResync()) {
+                if (full == null) {
+                    full = buildText(stateWriter.writeState(simulation.getChangedBodies(0), contacts));
+                }
+                observer.outbound.sendText(full, true);
+            } else {
+                if (delta == null) {
+                    delta = buildText(stateWriter.writeState(changed, contacts));
+                }
+                observer.outbound.sendText(delta, true);
+            }
+        }
+    }
+
+    private void sendText(JSONObject data) {
+        String text = buildText(data);
+        for (Observer observer : observers) {
+            observer.outbound.sendText(text, true);
+        }
+    }
+
+    private static String buildText(JSONObject data) {
+        JSONObject master = new JSONObject();
+        master.put("id", -1);
+        master.put("type", CommandType.INTEGRATE.getCommand());
+        master.put("data", data);
+        return master.toString();
+    }
+
+    private static final class Observer implements Runnable {
+
+        final Session session;
+        final OutboundQueue outbound;
+
+        // precisa do estado completo:  novo, ou perdeu um quadro na fila
+        private volatile boolean resync = true;
+
+        Observer(Session session) {
+            this.session = session;
+            this.outbound = new OutboundQueue(session, OutboundQueue.DEFAULT_CAPACITY, OutboundQueue.DEFAULT_POLICY, this);
+        }
+
+        /**
+         * Avisado pela fila quando um quadro de estado  descartado.
+         */
+        @Override
+        public void run() {
+            resync = true;
+        }
+
+        /**
+         * Consome o pedido de estado completo. Limpo antes do envio, para que
+         * um descarte causado pelo prprio envio valha para o prximo passo.
+         */
+        boolean takeResync() {
+            if (!resync) {
+                return false;
+            }
+            resync = false;
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package br.hefesto.ws;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loop de passo fixo de uma simulao conduzida pelo servidor. </br>
+ * A cada tick do relgio o tempo real decorrido  somado a um acumulador, e a
+ * simulao avana tantos passos de durao fixa quantos couberem nele. Um
+ * tick que chega enquanto o anterior ainda executa  ignorado; o tempo dele
+ * continua no acumulador.
+ *
+ * @author teixeira
+ */
+public final class SimulationLoop implements Runnable {
+
+    private final SimulationProcessor processor;
+    private final Executor workers;
+
+    private final int tickRate;
+    private final double stepSize;
+    private final long stepNanos;
+
+    private final AtomicBoolean queued = new AtomicBoolean();
+    private volatile boolean cancelled = false;
+    private ScheduledFuture<?> tick;
+
+    private long lastTime;
+    private long accumulator;
+
+    // escritos pelo worker da vez e lidos de qualquer thread
+    private final AtomicLong steps = new AtomicLong();
+    private final AtomicLong droppedSteps = new AtomicLong();
+
+    SimulationLoop(SimulationProcessor processor, int tickRate, Executor workers) {
+        this.processor = processor;
+        this.workers = workers;
+        this.tickRate = tickRate;
+        this.stepNanos = TimeUnit.SECONDS.toNanos(1) / tickRate;
+        this.stepSize = 1.0 / tickRate;
+        this.lastTime = System.nanoTime();
+    }
+
+    Runnable getTick() {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                if (!cancelled && queued.compareAndSet(false, true)) {
+                    workers.execute(SimulationLoop.this);
+                }
+            }
+        };
+    }
+
+    void setTick(ScheduledFuture<?> tick) {
+        this.tick = tick;
+    }
+
+    void cancel() {
+        cancelled = true;
+        if (tick != null) {
+            tick.cancel(false);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (cancelled) {
+                return;
+            }
+            long now = System.nanoTime();
+            accumulator += now - lastTime;
+            lastTime = now;
+
+            int count = 0;
+            while (accumulator >= stepNanos && count < SimulationScheduler.MAX_STEPS_PER_TICK) {
+                accumulator -= stepNanos;
+                count++;
+            }
+            if (accumulator >= stepNanos) {
+                // servidor atrasado: descarta o excedente em vez de entrar em espiral
+                droppedSteps.addAndGet(accumulator / stepNanos);
+                accumulator %= stepNanos;
+            }
+
+            if (count > 0) {
+                processor.step(count, stepSize);
+                steps.addAndGet(count);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            queued.set(false);
+        }
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public double getStepSize() {
+        return stepSize;
+    }
+
+    public long getSteps() {
+        return steps.get();
+    }
+
+    public long getDroppedSteps() {
+        return droppedSteps.get();
+    }
+
+}
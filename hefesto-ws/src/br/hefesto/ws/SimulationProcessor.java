@@ -1,67 +1,293 @@
 package br.hefesto.ws;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantLock;
+
 import javax.websocket.Session;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 import br.hefesto.simulation.PhysicSimulation;
 import br.hefesto.ws.processor.CommandProcessor;
+import br.hefesto.ws.processor.CommandRegistry;
 import br.hefesto.ws.processor.CommandType;
+import br.hefesto.ws.processor.IntegrateCommand;
+import br.hefesto.ws.processor.SessionCommandProcessor;
+import br.hefesto.ws.stream.BinaryStateEncoder;
+import br.hefesto.ws.stream.StateEncoding;
 
 public class SimulationProcessor {
 
     private final Session session;
     private final PhysicSimulation simulation;
 
+    private final IntegrateCommand stateWriter = new IntegrateCommand();
+
+    // serializa comandos e passos; no  um monitor, para no prender as
+    // threads virtuais s threads da plataforma
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final SessionMailbox mailbox;
+    private final OutboundQueue outbound;
+    private final SimulationBroadcast broadcast = new SimulationBroadcast(this);
+
+    private volatile StateEncoding stateEncoding = StateEncoding.JSON;
+    private volatile BinaryStateEncoder encoder;
+
+    // verso da simulao j enviada, com o rastreamento de alteraes
+    private long publishedVersion = 0;
+    // um quadro de estado foi descartado na fila de sada
+    private volatile boolean stateDropped = false;
+    // a sesso foi encerrada, ver close()
+    private volatile boolean closed = false;
+
     public SimulationProcessor(Session session, PhysicSimulation simulation) {
         this.session = session;
         this.simulation = simulation;
+        this.mailbox = MessageDispatcher.newMailbox(this);
+        this.outbound = new OutboundQueue(session, OutboundQueue.DEFAULT_CAPACITY, OutboundQueue.DEFAULT_POLICY, new Runnable() {
+
+            @Override
+            public void run() {
+                stateDropped = true;
+            }
+        });
     }
 
     public PhysicSimulation getSimulation() {
         return simulation;
     }
 
-    public void processMessage(String message) {
-        JSONObject object = new JSONObject(message);
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * Enfileira a mensagem na caixa da sesso; ela ser processada em ordem,
+     * fora da thread que a recebeu.
+     * 
+     * @param message mensagem recebida.
+     */
+    public void postMessage(String message) {
+        mailbox.post(message);
+    }
+
+    public int getPendingMessages() {
+        return mailbox.size();
+    }
 
-        Integer _id = object.getInt("id");
+    /**
+     * Encerra o processador quando a sesso  fechada: as mensagens pendentes
+     * e as que chegarem depois so descartadas, assim como as mensagens na
+     * fila de sada. Um comando j em execuo termina, mas no envia nada.
+     */
+    void close() {
+        closed = true;
+        mailbox.close();
+        outbound.discard();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public OutboundQueue getOutbound() {
+        return outbound;
+    }
+
+    public SimulationBroadcast getBroadcast() {
+        return broadcast;
+    }
 
-        String strType = object.getString("type");
-        CommandType cmd = CommandType.valueOf(strType);
+    public StateEncoding getStateEncoding() {
+        return stateEncoding;
+    }
+
+    public BinaryStateEncoder getEncoder() {
+        return encoder;
+    }
+
+    /**
+     * Define o formato em que o estado da simulao  enviado. Em
+     * {@link StateEncoding#BINARY} o codificador  obrigatrio.
+     * 
+     * @param stateEncoding formato.
+     * @param encoder codificador dos quadros binrios.
+     */
+    public void setStateEncoding(StateEncoding stateEncoding, BinaryStateEncoder encoder) {
+        if (stateEncoding == StateEncoding.BINARY && encoder == null) {
+            throw new IllegalArgumentException("Binary state encoding requires an encoder.");
+        }
+        this.encoder = encoder;
+        this.stateEncoding = stateEncoding;
+    }
 
+    /**
+     * Processa a mensagem e responde com o resultado do comando. Se o comando
+     * falhar, a resposta traz o mesmo id e o tipo, com o erro em
+     * <code>error</code> no lugar de <code>data</code>.
+     * 
+     * @param message mensagem recebida.
+     */
+    public void processMessage(String message) {
+        Integer _id = null;
+        String strType = null;
         try {
-        	CommandProcessor processor = cmd.getProcessor().newInstance();
-        	JSONObject data = processor.process(simulation, object.getJSONObject("data"));
-            //if (cmd == CommandType.INTEGRATE || cmd == CommandType.NEW_SIMULATION) {
-            	sendAckMessage(_id, cmd, data);
-            //}
+            JSONObject object = new JSONObject(message);
+            _id = object.getInt("id");
+            strType = object.getString("type");
+
+            CommandType cmd = CommandType.valueOfString(strType);
+            if (cmd == null) {
+                throw new IllegalArgumentException("Unknown command: " + strType);
+            }
+
+            // a resposta entra na fila ainda com a trava, para no passar
+            //  frente de um estado do passo, nem ficar atrs dele
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                JSONObject data = execute(cmd, object.getJSONObject("data"));
+                sendAckMessage(_id, cmd, data);
+            } finally {
+                lock.unlock();
+            }
         } catch (Exception e) {
             e.printStackTrace();
-            //pense nisso e tenha um bom dia
+            sendErrorMessage(_id, strType, e);
+        }
+    }
+
+    /**
+     * Executa um comando sobre esta simulao. Deve ser chamado com a
+     * simulao travada.
+     * 
+     * @param cmd tipo do comando.
+     * @param data dados do comando.
+     * @return a resposta do comando.
+     */
+    public JSONObject execute(CommandType cmd, JSONObject data) {
+        CommandProcessor processor = CommandRegistry.getProcessor(cmd);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            JSONObject result;
+            if (processor instanceof SessionCommandProcessor) {
+                result = ((SessionCommandProcessor) processor).process(this, data);
+            } else {
+                result = processor.process(simulation, data);
+            }
+            failed = false;
+            return result;
+        } finally {
+            CommandRegistry.record(cmd, System.nanoTime() - start, failed);
         }
     }
 
+    /**
+     * Avana a simulao conduzida pelo servidor e envia o estado resultante
+     * para a sesso, como uma resposta de {@link CommandType#INTEGRATE} sem id.
+     *
+     * @param steps quantidade de passos.
+     * @param duration durao de cada passo.
+     */
+    void step(int steps, double duration) {
+        lock.lock();
+        try {
+            for (int i = 0; i < steps; i++) {
+                simulation.integrate(duration);
+            }
+            JSONObject state = writeState();
+            // enfileirado com a trava, na ordem das respostas dos comandos
+            if (stateEncoding == StateEncoding.JSON || state.has("_contacts") || state.has("_contactOverflow")) {
+                sendMessage(buildMessage(-1, CommandType.INTEGRATE.getCommand(), state), true);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Escreve o estado corrente no formato negociado. Deve ser chamado com a
+     * simulao travada. </br>
+     * Em {@link StateEncoding#BINARY} o quadro  enviado aqui mesmo, como
+     * mensagem binria, e o retorno traz apenas a sequncia do quadro e os
+     * contatos do passo, se houver. </br>
+     * O mesmo estado  enviado aos observadores, ver {@link SimulationBroadcast}.
+     * </br>
+     * Se contatos foram descartados por exceder o limite dos seus grupos
+     * desde o ltimo estado, a quantidade vai em <code>_contactOverflow</code>.
+     * 
+     * @return o contedo da resposta do {@link CommandType#INTEGRATE}.
+     */
+    public JSONObject writeState() {
+        JSONArray contacts = stateWriter.writeContacts(simulation);
+        broadcast.publish(contacts);
+
+        JSONObject state = writeState(contacts);
+        int overflow = simulation.getContactOverflow();
+        if (overflow > 0) {
+            state.put("_contactOverflow", overflow);
+        }
+        return state;
+    }
+
+    private JSONObject writeState(JSONArray contacts) {
+        if (stateEncoding == StateEncoding.JSON) {
+            if (!simulation.isDirtyTracking()) {
+                return stateWriter.writeState(simulation.getRigidBodys().values(), contacts);
+            }
+            if (stateDropped) {
+                // o cliente perdeu corpos alterados: reenvia todos
+                stateDropped = false;
+                publishedVersion = 0;
+            }
+            JSONObject state = stateWriter.writeState(simulation.getChangedBodies(publishedVersion), contacts);
+            publishedVersion = simulation.getVersion();
+            return state;
+        }
+        ByteBuffer frame = encoder.encode(simulation.getRigidBodys().values());
+        // quadros perdidos no quebram os seguintes: o delta  sobre a base confirmada
+        outbound.sendBinary(frame, true);
+
+        JSONObject result = new JSONObject();
+        result.put("frame", encoder.getSequence());
+        if (contacts.length() > 0) {
+            result.put("_contacts", contacts);
+        }
+        return result;
+    }
+
     void sendAckMessage(Integer messageId, CommandType cmd, JSONObject data) {
+        sendMessage(buildMessage(messageId, cmd.getCommand(), data), false);
+    }
+
+    void sendErrorMessage(Integer messageId, String type, Exception error) {
+        JSONObject master = buildMessage(messageId == null ? -1 : messageId, type, null);
+        master.put("error", String.valueOf(error.getMessage()));
 
+        sendMessage(master, false);
+    }
+
+    private JSONObject buildMessage(Integer messageId, String type, JSONObject data) {
         JSONObject master = new JSONObject();
         master.put("id", messageId);
-        master.put("type", cmd.getCommand());
+        master.put("type", type);
         master.put("data", data);
-
-        // Adiciona essa nova conexo a lista de conexes
-        sendMessage(master);
+        return master;
     }
 
-	private void sendMessage(JSONObject master) {
-		synchronized (this) {
-			//System.out.println("Message sended: " + master);
-			try {
-				session.getAsyncRemote().sendText(master.toString());
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-		}
+	/**
+	 * Enfileira a mensagem na fila de sada da sesso.
+	 * 
+	 * @param master mensagem.
+	 * @param state se  um quadro de estado, que pode ser descartado.
+	 */
+	private void sendMessage(JSONObject master, boolean state) {
+		outbound.sendText(master.toString(), state);
 	}
 
 }
@@ -0,0 +1,250 @@
+package br.hefesto.ws;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.websocket.Session;
+
+/**
+ * Registro concorrente das simulaes em execuo, particionado por id da
+ * simulao. </br>
+ * Cada partio tem o seu prprio mapa e os seus contadores, de modo que
+ * registros, remoes e consultas de sesses diferentes raramente disputam a
+ * mesma partio. A consulta por sesso usa o id guardado nas propriedades da
+ * prpria sesso.
+ *
+ * @author teixeira
+ */
+public final class SimulationRegistry implements Iterable<SimulationProcessor> {
+
+    /** Propriedade da sesso que guarda o id da simulao. */
+    public static final String SIMULATION_ID = "hefesto.simulationId";
+
+    private final Shard[] shards;
+    private final int mask;
+
+    private final AtomicLong ids = new AtomicLong(System.currentTimeMillis());
+
+    public SimulationRegistry(int shardCount) {
+        int size = 1;
+        while (size < shardCount) {
+            size <<= 1;
+        }
+        this.shards = new Shard[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    /**
+     * Gera um id de simulao nico neste registro.
+     *
+     * @return o id.
+     */
+    public long nextId() {
+        return ids.incrementAndGet();
+    }
+
+    public void register(SimulationProcessor processor) {
+        long id = processor.getSimulation().getId();
+        Session session = processor.getSession();
+        if (session != null) {
+            session.getUserProperties().put(SIMULATION_ID, id);
+        }
+        shardFor(id).put(id, processor);
+    }
+
+    public SimulationProcessor get(long id) {
+        return shardFor(id).get(id);
+    }
+
+    public SimulationProcessor get(Session session) {
+        Long id = getId(session);
+        return id == null ? null : get(id);
+    }
+
+    public SimulationProcessor remove(long id) {
+        return shardFor(id).remove(id);
+    }
+
+    public SimulationProcessor remove(Session session) {
+        Long id = getId(session);
+        return id == null ? null : remove(id);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.processors.size();
+        }
+        return size;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Percorre as simulaes registradas, partio a partio. A iterao 
+     * fracamente consistente: no falha com registros concorrentes, mas pode ou
+     * no enxerg-los.
+     */
+    @Override
+    public Iterator<SimulationProcessor> iterator() {
+        return new Iterator<SimulationProcessor>() {
+
+            private int shard = 0;
+            private Iterator<SimulationProcessor> current = shards[0].processors.values().iterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (++shard >= shards.length) {
+                        return false;
+                    }
+                    current = shards[shard].processors.values().iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public SimulationProcessor next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Obtm uma fotografia dos contadores de cada partio.
+     *
+     * @return as estatsticas, na ordem das parties.
+     */
+    public List<ShardStatistics> getStatistics() {
+        List<ShardStatistics> result = new ArrayList<ShardStatistics>(shards.length);
+        for (Shard shard : shards) {
+            result.add(shard.statistics());
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private Long getId(Session session) {
+        Object id = session.getUserProperties().get(SIMULATION_ID);
+        return id instanceof Long ? (Long) id : null;
+    }
+
+    private Shard shardFor(long id) {
+        int h = (int) (id ^ (id >>> 32));
+        h ^= (h >>> 16);
+        return shards[h & mask];
+    }
+
+    private static final class Shard {
+
+        private final int index;
+        private final ConcurrentMap<Long, SimulationProcessor> processors = new ConcurrentHashMap<Long, SimulationProcessor>();
+
+        private final AtomicLong registered = new AtomicLong();
+        private final AtomicLong removed = new AtomicLong();
+        private final AtomicLong lookups = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+
+        Shard(int index) {
+            this.index = index;
+        }
+
+        void put(long id, SimulationProcessor processor) {
+            if (processors.putIfAbsent(id, processor) != null) {
+                throw new IllegalArgumentException("Simulation already registered: " + id);
+            }
+            registered.incrementAndGet();
+        }
+
+        SimulationProcessor get(long id) {
+            lookups.incrementAndGet();
+            SimulationProcessor processor = processors.get(id);
+            if (processor == null) {
+                misses.incrementAndGet();
+            }
+            return processor;
+        }
+
+        SimulationProcessor remove(long id) {
+            SimulationProcessor processor = processors.remove(id);
+            if (processor != null) {
+                removed.incrementAndGet();
+            }
+            return processor;
+        }
+
+        ShardStatistics statistics() {
+            return new ShardStatistics(index, processors.size(), registered.get(), removed.get(), lookups.get(), misses.get());
+        }
+    }
+
+    /**
+     * Estatsticas de uma partio do registro.
+     */
+    public static final class ShardStatistics {
+
+        private final int shard;
+        private final int size;
+        private final long registered;
+        private final long removed;
+        private final long lookups;
+        private final long misses;
+
+        ShardStatistics(int shard, int size, long registered, long removed, long lookups, long misses) {
+            this.shard = shard;
+            this.size = size;
+            this.registered = registered;
+            this.removed = removed;
+            this.lookups = lookups;
+            this.misses = misses;
+        }
+
+        public int getShard() {
+            return shard;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getRegistered() {
+            return registered;
+        }
+
+        public long getRemoved() {
+            return removed;
+        }
+
+        public long getLookups() {
+            return lookups;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        @Override
+        public String toString() {
+            return "shard " + shard + ": size=" + size + " registered=" + registered + " removed=" + removed + " lookups=" + lookups + " misses=" + misses;
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package br.hefesto.ws;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Agendador das simulaes conduzidas pelo servidor. </br>
+ * Cada simulao registrada  avanada em passos de durao fixa, na taxa
+ * informada, por um conjunto limitado de workers compartilhado por todas as
+ * sesses. O relgio apenas dispara os ticks; a integrao nunca roda na thread
+ * do relgio nem nas threads de I/O do WebSocket.
+ *
+ * @author teixeira
+ */
+public final class SimulationScheduler {
+
+    /** Taxa padro, em passos por segundo. */
+    public static final int DEFAULT_TICK_RATE = Integer.getInteger("hefesto.simulation.tickRate", 60);
+
+    /** Maior taxa aceita, em passos por segundo. */
+    public static final int MAX_TICK_RATE = 1000;
+
+    /**
+     * Quantidade mxima de passos executados em um nico tick. Quando o servidor
+     * atrasa mais do que isso, o tempo excedente  descartado.
+     */
+    public static final int MAX_STEPS_PER_TICK = Integer.getInteger("hefesto.simulation.maxStepsPerTick", 5);
+
+    private static final SimulationScheduler INSTANCE = new SimulationScheduler(Integer.getInteger("hefesto.simulation.workers", Runtime.getRuntime().availableProcessors()));
+
+    private final ScheduledExecutorService clock;
+    private final ExecutorService workers;
+
+    private final Map<SimulationProcessor, SimulationLoop> loops = new ConcurrentHashMap<SimulationProcessor, SimulationLoop>();
+
+    private SimulationScheduler(int workers) {
+        this.clock = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("hefesto-clock"));
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workers), new NamedThreadFactory("hefesto-worker"));
+    }
+
+    public static SimulationScheduler get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Inicia (ou reinicia com a nova taxa) a simulao conduzida pelo servidor.
+     *
+     * @param processor processador da sesso.
+     * @param tickRate passos por segundo.
+     * @return o loop agendado.
+     * @throws IllegalStateException se a sesso j foi encerrada.
+     */
+    public SimulationLoop start(SimulationProcessor processor, int tickRate) {
+        if (tickRate <= 0 || tickRate > MAX_TICK_RATE) {
+            throw new IllegalArgumentException("Invalid tick rate: " + tickRate);
+        }
+        if (processor.isClosed()) {
+            throw new IllegalStateException("Simulation session is closed.");
+        }
+        stop(processor);
+
+        SimulationLoop loop = new SimulationLoop(processor, tickRate, workers);
+        long period = TimeUnit.SECONDS.toNanos(1) / tickRate;
+        ScheduledFuture<?> tick = clock.scheduleAtFixedRate(loop.getTick(), period, period, TimeUnit.NANOSECONDS);
+        loop.setTick(tick);
+
+        loops.put(processor, loop);
+        // o kill marca o processador antes de parar o loop: se ele correu
+        // entre a verificao acima e o put, o loop  desfeito aqui
+        if (processor.isClosed()) {
+            stop(processor);
+            throw new IllegalStateException("Simulation session is closed.");
+        }
+        return loop;
+    }
+
+    /**
+     * Para a simulao conduzida pelo servidor, se houver.
+     *
+     * @param processor processador da sesso.
+     * @return <code>true</code> se havia um loop em execuo.
+     */
+    public boolean stop(SimulationProcessor processor) {
+        SimulationLoop loop = loops.remove(processor);
+        if (loop == null) {
+            return false;
+        }
+        loop.cancel();
+        return true;
+    }
+
+    /**
+     * Obtm os workers compartilhados, tambm usados para drenar as caixas de
+     * mensagens das sesses.
+     *
+     * @return os workers.
+     */
+    public ExecutorService getWorkers() {
+        return workers;
+    }
+
+    public SimulationLoop getLoop(SimulationProcessor processor) {
+        return loops.get(processor);
+    }
+
+    public int getRunningCount() {
+        return loops.size();
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+}
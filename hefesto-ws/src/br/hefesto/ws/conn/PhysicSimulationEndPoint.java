@@ -35,16 +35,7 @@ public final class PhysicSimulationEndPoint {
 
     @OnMessage
     public void onMessage(String message, Session session) {
-    	synchronized (this) {
-    		//System.out.println("Start process message: " + session);
-    		try {
-    			Thread.sleep(5);
-    		} catch (InterruptedException e) {
-    			e.printStackTrace();
-    		}
-    		PhysicSimulationOrchestrator.processMessage(session, message);
-    		//System.out.println("Message processed: " + message);
-		}
+        PhysicSimulationOrchestrator.processMessage(session, message);
     }
 
 }
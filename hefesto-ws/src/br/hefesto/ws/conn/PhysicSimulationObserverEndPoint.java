@@ -0,0 +1,53 @@
+package br.hefesto.ws.conn;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+import javax.websocket.OnClose;
+import javax.websocket.OnMessage;
+import javax.websocket.OnOpen;
+import javax.websocket.Session;
+import javax.websocket.server.ServerEndpoint;
+
+import br.hefesto.ws.PhysicSimulationOrchestrator;
+
+/**
+ * Representa a conexo WebSocket de um observador da simulao 3D. </br>
+ * O id da simulao observada vem no parmetro <code>simulation</code>; a
+ * conexo apenas recebe o estado, as mensagens enviadas por ela so ignoradas.
+ * 
+ * @author teixeira
+ */
+@ServerEndpoint(value = "/physics3DSimulationWS/observe")
+public final class PhysicSimulationObserverEndPoint {
+
+    @OnOpen
+    public void onOpen(Session session) {
+        try {
+            List<String> ids = session.getRequestParameterMap().get("simulation");
+            if (ids == null || ids.isEmpty()) {
+                throw new IllegalArgumentException("Missing simulation parameter.");
+            }
+            PhysicSimulationOrchestrator.bindObserver(session, Long.parseLong(ids.get(0)));
+        } catch (Exception e) {
+            try {
+                session.close(new CloseReason(CloseCodes.CANNOT_ACCEPT, String.valueOf(e.getMessage())));
+            } catch (IOException e1) {
+                e1.printStackTrace();
+            }
+        }
+    }
+
+    @OnClose
+    public void onClose(Session session) {
+        PhysicSimulationOrchestrator.unbindObserver(session);
+    }
+
+    @OnMessage
+    public void onMessage(String message, Session session) {
+        // somente leitura
+    }
+
+}
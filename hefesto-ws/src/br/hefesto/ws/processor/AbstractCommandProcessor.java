@@ -17,6 +17,23 @@ abstract class AbstractCommandProcessor implements CommandProcessor{
         return new Quaternion(obj.getDouble("_w"), obj.getDouble("_x"), obj.getDouble("_y"), obj.getDouble("_z"));
     }
 
+    protected JSONObject getJSONVector3(Vector3 v) {
+        JSONObject data = new JSONObject();
+        data.put("x", v.getX());
+        data.put("y", v.getY());
+        data.put("z", v.getZ());
+        return data;
+    }
+
+    protected JSONObject getJSONQuaternion(Quaternion q) {
+        JSONObject data = new JSONObject();
+        data.put("_w", q.getR());
+        data.put("_x", q.getI());
+        data.put("_y", q.getJ());
+        data.put("_z", q.getK());
+        return data;
+    }
+
     protected Matrix3 getMatrix3(JSONObject obj) {
         return new Matrix3(
         //
@@ -0,0 +1,14 @@
+package br.hefesto.ws.processor;
+
+import org.json.JSONObject;
+
+import br.hefesto.simulation.PhysicSimulation;
+
+abstract class AbstractSessionCommandProcessor extends AbstractCommandProcessor implements SessionCommandProcessor {
+
+    @Override
+    public JSONObject process(PhysicSimulation simulation, JSONObject data) {
+        throw new UnsupportedOperationException("Command requires the simulation session.");
+    }
+
+}
@@ -0,0 +1,35 @@
+package br.hefesto.ws.processor;
+
+import org.json.JSONObject;
+
+import br.hefesto.ws.SimulationProcessor;
+import br.hefesto.ws.stream.BinaryStateEncoder;
+
+/**
+ * Processador do comando {@link CommandType#ACK_FRAME}. </br>
+ * Confirma o recebimento de um quadro binrio, que passa a ser a base dos
+ * prximos deltas. Com <code>keyframe</code> verdadeiro o cliente pede um
+ * quadro-chave, por exemplo depois de perder a base.
+ * 
+ * @author teixeira
+ */
+public class AckFrameCommand extends AbstractSessionCommandProcessor {
+
+    @Override
+    public JSONObject process(SimulationProcessor processor, JSONObject data) {
+        BinaryStateEncoder encoder = processor.getEncoder();
+        if (encoder == null) {
+            throw new IllegalStateException("Simulation is not using the binary state encoding.");
+        }
+        if (data.optBoolean("keyframe", false)) {
+            encoder.requestKeyframe();
+        } else {
+            encoder.ack(data.getInt("frame"));
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("acked", encoder.getAcked());
+        return result;
+    }
+
+}
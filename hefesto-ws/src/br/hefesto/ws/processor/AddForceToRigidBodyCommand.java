@@ -16,6 +16,7 @@ public class AddForceToRigidBodyCommand extends AbstractCommandProcessor {
 
 		HRigidBody b = simulation.getRigidBody(body);
 		b.getBody().addForce(force);
+		simulation.markDirty(b);
 
 		JSONObject result = new JSONObject();
 		result.put("added", true);
@@ -0,0 +1,71 @@
+package br.hefesto.ws.processor;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import br.hefesto.ws.SimulationProcessor;
+
+/**
+ * Processador do comando {@link CommandType#BATCH}. </br>
+ * Executa em ordem os comandos de <code>commands</code>, cada um no formato
+ * <code>{type, data}</code>, e responde uma nica vez com a situao de cada
+ * item. A falha de um item no desfaz os anteriores; com
+ * <code>stopOnError</code> os seguintes so ignorados (SKIPPED), seno
+ * continuam sendo executados.
+ * 
+ * @author teixeira
+ */
+public class BatchCommand extends AbstractSessionCommandProcessor {
+
+    public static final String OK = "OK";
+    public static final String ERROR = "ERROR";
+    public static final String SKIPPED = "SKIPPED";
+
+    @Override
+    public JSONObject process(SimulationProcessor processor, JSONObject data) {
+        JSONArray commands = data.getJSONArray("commands");
+        boolean stopOnError = data.optBoolean("stopOnError", false);
+
+        JSONArray results = new JSONArray();
+        int failed = 0;
+        for (int i = 0; i < commands.length(); i++) {
+            JSONObject result = new JSONObject();
+            result.put("index", i);
+
+            if (stopOnError && failed > 0) {
+                result.put("status", SKIPPED);
+                results.put(result);
+                continue;
+            }
+            try {
+                JSONObject command = commands.getJSONObject(i);
+                CommandType cmd = CommandType.valueOfString(command.getString("type"));
+                if (cmd == null) {
+                    throw new IllegalArgumentException("Unknown command: " + command.getString("type"));
+                }
+                if (cmd == CommandType.BATCH) {
+                    throw new IllegalArgumentException("Nested BATCH is not supported.");
+                }
+                JSONObject commandData = command.optJSONObject("data");
+                if (commandData == null) {
+                    commandData = new JSONObject();
+                }
+                result.put("type", cmd.getCommand());
+                result.put("data", processor.execute(cmd, commandData));
+                result.put("status", OK);
+            } catch (Exception e) {
+                failed++;
+                result.put("status", ERROR);
+                result.put("error", String.valueOf(e.getMessage()));
+            }
+            results.put(result);
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("count", commands.length());
+        result.put("failed", failed);
+        result.put("results", results);
+        return result;
+    }
+
+}
@@ -5,6 +5,15 @@ import org.json.JSONObject;
 import br.hefesto.simulation.PhysicSimulation;
 import br.law123.collide.CollisionData;
 
+/**
+ * Processador do comando {@link CommandType#BIND_COLLISION_DATA}. </br>
+ * Com <code>broadPhase</code> o grupo passa a receber os contatos da fase
+ * larga automtica, ver {@link PhysicSimulation#setBroadPhase(CollisionData)}.
+ * <code>maxContacts</code>  o limite de contatos do grupo por passo; alm
+ * dele ficam os mais profundos, ver {@link CollisionData}.
+ * 
+ * @author teixeira
+ */
 public class BindCollisionDataCommand implements CommandProcessor {
 
     @Override
@@ -19,6 +28,9 @@ public class BindCollisionDataCommand implements CommandProcessor {
     	CollisionData cd = new CollisionData(id, friction, restitution, tolerance, maxContacts);
     	
         boolean added = simulation.addCollisionData(cd);
+        if (added && data.optBoolean("broadPhase", false)) {
+            simulation.setBroadPhase(cd);
+        }
 
         JSONObject result = new JSONObject();
         result.put("added", added);
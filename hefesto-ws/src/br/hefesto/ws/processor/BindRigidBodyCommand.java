@@ -13,12 +13,6 @@ public class BindRigidBodyCommand extends AbstractCommandProcessor {
 
     @Override
     public JSONObject process(PhysicSimulation simulation, JSONObject data) {
-    	try {
-			Thread.sleep(5);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
-    	
     	String id = data.getString("id");
 		HRigidBody hbody = new HRigidBody(id, simulation);
 		
@@ -46,6 +40,8 @@ public class BindRigidBodyCommand extends AbstractCommandProcessor {
         if (data.has("radius")) {
         	hbody.setRadius(data.getDouble("radius"));
         }
+        hbody.setCollisionLayer(data.optInt("collisionLayer", hbody.getCollisionLayer()));
+        hbody.setCollisionMask(data.optInt("collisionMask", hbody.getCollisionMask()));
         
         
         body.setAwake();
@@ -0,0 +1,34 @@
+package br.hefesto.ws.processor;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import br.hefesto.simulation.HRigidBody;
+import br.hefesto.simulation.PhysicSimulation;
+import br.law123.core.Quaternion;
+
+/**
+ * Processador do comando {@link CommandType#BOX_OVERLAP}. </br>
+ * Recebe <code>center</code>, <code>halfSize</code> e opcionalmente
+ * <code>orientation</code> e <code>mask</code>, e responde os ids dos corpos
+ * que tocam a caixa.
+ * 
+ * @author teixeira
+ */
+public class BoxOverlapCommand extends AbstractCommandProcessor {
+
+    @Override
+    public JSONObject process(PhysicSimulation simulation, JSONObject data) {
+        Quaternion orientation = data.has("orientation") ? getQuaternion(data.getJSONObject("orientation")) : new Quaternion(1, 0, 0, 0);
+
+        JSONArray bodies = new JSONArray();
+        for (HRigidBody body : simulation.boxOverlap(getVector3(data.getJSONObject("center")), getVector3(data.getJSONObject("halfSize")), orientation, data.optInt("mask", -1))) {
+            bodies.put(body.getId());
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("bodies", bodies);
+        return result;
+    }
+
+}
@@ -0,0 +1,131 @@
+package br.hefesto.ws.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Processadores dos comandos, criados uma nica vez e compartilhados por todas
+ * as sesses: os processadores no guardam estado. </br>
+ * Tambm acumula, por tipo de comando, a quantidade de execues, de falhas e
+ * o tempo gasto.
+ * 
+ * @author teixeira
+ */
+public final class CommandRegistry {
+
+    private static final Map<CommandType, CommandProcessor> PROCESSORS = new EnumMap<CommandType, CommandProcessor>(CommandType.class);
+
+    private static final int TYPES = CommandType.values().length;
+    private static final AtomicLongArray COUNTS = new AtomicLongArray(TYPES);
+    private static final AtomicLongArray ERRORS = new AtomicLongArray(TYPES);
+    private static final AtomicLongArray TOTAL_NANOS = new AtomicLongArray(TYPES);
+    private static final AtomicLongArray MAX_NANOS = new AtomicLongArray(TYPES);
+
+    static {
+        for (CommandType type : CommandType.values()) {
+            try {
+                PROCESSORS.put(type, type.getProcessor().newInstance());
+            } catch (Exception e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+
+    private CommandRegistry() {
+    }
+
+    public static CommandProcessor getProcessor(CommandType type) {
+        return PROCESSORS.get(type);
+    }
+
+    /**
+     * Registra uma execuo do comando.
+     * 
+     * @param type tipo do comando.
+     * @param nanos durao da execuo.
+     * @param failed se a execuo falhou.
+     */
+    public static void record(CommandType type, long nanos, boolean failed) {
+        int i = type.ordinal();
+        COUNTS.incrementAndGet(i);
+        if (failed) {
+            ERRORS.incrementAndGet(i);
+        }
+        TOTAL_NANOS.addAndGet(i, nanos);
+        long max;
+        while (nanos > (max = MAX_NANOS.get(i)) && !MAX_NANOS.compareAndSet(i, max, nanos)) {
+            // outra thread atualizou o mximo, tenta de novo
+        }
+    }
+
+    /**
+     * Obtm uma fotografia dos contadores dos comandos j executados.
+     * 
+     * @return as estatsticas, na ordem de {@link CommandType}.
+     */
+    public static List<CommandStatistics> getStatistics() {
+        List<CommandStatistics> result = new ArrayList<CommandStatistics>();
+        for (CommandType type : CommandType.values()) {
+            int i = type.ordinal();
+            long count = COUNTS.get(i);
+            if (count > 0) {
+                result.add(new CommandStatistics(type, count, ERRORS.get(i), TOTAL_NANOS.get(i), MAX_NANOS.get(i)));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Estatsticas de um tipo de comando.
+     */
+    public static final class CommandStatistics {
+
+        private final CommandType type;
+        private final long count;
+        private final long errors;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        CommandStatistics(CommandType type, long count, long errors, long totalNanos, long maxNanos) {
+            this.type = type;
+            this.count = count;
+            this.errors = errors;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public CommandType getType() {
+            return type;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getAverageNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        @Override
+        public String toString() {
+            return type + ": count=" + count + " errors=" + errors + " avg=" + getAverageNanos() + "ns max=" + maxNanos + "ns";
+        }
+    }
+
+}
@@ -1,5 +1,8 @@
 package br.hefesto.ws.processor;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum CommandType {
 
 	/** Gera um novo corpo rigido */
@@ -32,10 +35,34 @@ public enum CommandType {
 	/** Altera o status da collisao */
 	CHANGE_COLLISION_STATE("CHANGE_COLLISION_STATE", ChangeCollisionStateCommand.class),
 	
-	/** Integrate */
+	/** Integrate (modo legado, o cliente conduz os passos) */
 	INTEGRATE("INTEGRATE", IntegrateCommand.class),
+	/** Inicia os passos conduzidos pelo servidor */
+	START_SIMULATION("START_SIMULATION", StartSimulationCommand.class),
+	/** Para os passos conduzidos pelo servidor */
+	STOP_SIMULATION("STOP_SIMULATION", StopSimulationCommand.class),
+	/** Confirma um quadro binario de estado */
+	ACK_FRAME("ACK_FRAME", AckFrameCommand.class),
+	/** Executa uma lista de comandos, com uma unica resposta */
+	BATCH("BATCH", BatchCommand.class),
 	/** Obtem as informacoes de um corpo rigido */
-	GET_RIGID_BODY_DATA("GET_RIGID_BODY_DATA", GetRigidBodyDataCommand.class);
+	GET_RIGID_BODY_DATA("GET_RIGID_BODY_DATA", GetRigidBodyDataCommand.class),
+	/** Lanca um raio e retorna o corpo mais proximo atingido */
+	RAYCAST("RAYCAST", RaycastCommand.class),
+	/** Retorna os corpos que tocam uma esfera */
+	SPHERE_OVERLAP("SPHERE_OVERLAP", SphereOverlapCommand.class),
+	/** Retorna os corpos que tocam uma caixa */
+	BOX_OVERLAP("BOX_OVERLAP", BoxOverlapCommand.class),
+	/** Retorna as metricas dos comandos, do registro e das filas de saida */
+	GET_STATISTICS("GET_STATISTICS", GetStatisticsCommand.class);
+
+	private static final Map<String, CommandType> BY_COMMAND = new HashMap<String, CommandType>();
+
+	static {
+		for (CommandType c : values()) {
+			BY_COMMAND.put(c.getCommand(), c);
+		}
+	}
 
 	private String command;
 	private Class<? extends CommandProcessor> processor;
@@ -53,13 +80,8 @@ public enum CommandType {
 		return processor;
 	}
 
-	public CommandType valueOfString(String cmd) {
-		for (CommandType c : values()) {
-			if (c.getCommand().equals(cmd)) {
-				return c;
-			}
-		}
-		return null;
+	public static CommandType valueOfString(String cmd) {
+		return BY_COMMAND.get(cmd);
 	}
 
 }
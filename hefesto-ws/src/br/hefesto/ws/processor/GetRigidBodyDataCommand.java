@@ -8,15 +8,16 @@ import org.json.JSONObject;
 
 import br.hefesto.simulation.HRigidBody;
 import br.hefesto.simulation.PhysicSimulation;
-import br.law123.core.Quaternion;
-import br.law123.core.Vector3;
 
 /**
- * Processador do comando {@link CommandType#INTEGRATE}.
+ * Processador do comando {@link CommandType#GET_RIGID_BODY_DATA}. </br>
+ * Com o rastreamento de alteraes ligado, <code>all</code> traz apenas os
+ * corpos alterados depois da verso <code>since</code>; a resposta informa a
+ * verso corrente, a ser usada na prxima consulta.
  * 
  * @author teixeira
  */
-public class GetRigidBodyDataCommand implements CommandProcessor {
+public class GetRigidBodyDataCommand extends AbstractCommandProcessor {
 
     @Override
     public JSONObject process(PhysicSimulation simulation, JSONObject data) {
@@ -26,7 +27,11 @@ public class GetRigidBodyDataCommand implements CommandProcessor {
         List<HRigidBody> bodys = new ArrayList<HRigidBody>();
         if (body != null) {
 	        if ("all".equalsIgnoreCase(body)) {
-	        	bodys.addAll(simulation.getRigidBodys().values());
+	        	if (simulation.isDirtyTracking()) {
+	        		bodys.addAll(simulation.getChangedBodies(data.optLong("since", 0)));
+	        	} else {
+	        		bodys.addAll(simulation.getRigidBodys().values());
+	        	}
 	        } else {
 	        	bodys.add(simulation.getRigidBody(body));
 	        }
@@ -47,26 +52,9 @@ public class GetRigidBodyDataCommand implements CommandProcessor {
 	    }        
         JSONObject _result = new JSONObject();
         _result.put("bodys", datas);
+        _result.put("version", simulation.getVersion());
 
         return _result;
     }
 
-    private JSONObject getJSONVector3(Vector3 v) {
-        JSONObject data = new JSONObject();
-        data.put("x", v.getX());
-        data.put("y", v.getY());
-        data.put("z", v.getZ());
-        return data;
-    }
-
-    private JSONObject getJSONQuaternion(Quaternion q) {
-        JSONObject data = new JSONObject();
-        data.put("_w", q.getR());
-        data.put("_x", q.getI());
-        data.put("_y", q.getJ());
-        data.put("_z", q.getK());
-
-        return data;
-    }
-
 }
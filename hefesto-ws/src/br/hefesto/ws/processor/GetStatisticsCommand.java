@@ -0,0 +1,101 @@
+package br.hefesto.ws.processor;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import br.hefesto.ws.OutboundQueue;
+import br.hefesto.ws.PhysicSimulationOrchestrator;
+import br.hefesto.ws.SimulationProcessor;
+import br.hefesto.ws.SimulationRegistry;
+import br.hefesto.ws.SimulationRegistry.ShardStatistics;
+import br.hefesto.ws.processor.CommandRegistry.CommandStatistics;
+
+/**
+ * Processador do comando {@link CommandType#GET_STATISTICS}. </br>
+ * Responde com as mtricas do servidor: o tempo de cada tipo de comando
+ * (ver {@link CommandRegistry}), a ocupao das parties do
+ * {@link SimulationRegistry} e as filas de sada, a desta sesso em
+ * <code>outbound</code> e a soma de todas as sesses em
+ * <code>outboundTotal</code>. Tempos em nanossegundos.
+ *
+ * @author teixeira
+ */
+public class GetStatisticsCommand extends AbstractSessionCommandProcessor {
+
+    @Override
+    public JSONObject process(SimulationProcessor processor, JSONObject data) {
+        JSONArray commands = new JSONArray();
+        for (CommandStatistics statistics : CommandRegistry.getStatistics()) {
+            JSONObject command = new JSONObject();
+            command.put("type", statistics.getType().getCommand());
+            command.put("count", statistics.getCount());
+            command.put("errors", statistics.getErrors());
+            command.put("averageNanos", statistics.getAverageNanos());
+            command.put("maxNanos", statistics.getMaxNanos());
+            commands.put(command);
+        }
+
+        SimulationRegistry registry = PhysicSimulationOrchestrator.getRegistry();
+        JSONArray shards = new JSONArray();
+        for (ShardStatistics statistics : registry.getStatistics()) {
+            JSONObject shard = new JSONObject();
+            shard.put("shard", statistics.getShard());
+            shard.put("size", statistics.getSize());
+            shard.put("registered", statistics.getRegistered());
+            shard.put("removed", statistics.getRemoved());
+            shard.put("lookups", statistics.getLookups());
+            shard.put("misses", statistics.getMisses());
+            shards.put(shard);
+        }
+
+        // soma das filas de todas as sesses
+        int sessions = 0;
+        long depth = 0;
+        int maxDepth = 0;
+        long sent = 0;
+        long failed = 0;
+        long dropped = 0;
+        long totalLatency = 0;
+        long maxLatency = 0;
+        for (SimulationProcessor other : registry) {
+            OutboundQueue.Statistics statistics = other.getOutbound().getStatistics();
+            sessions++;
+            depth += statistics.getDepth();
+            maxDepth = Math.max(maxDepth, statistics.getMaxDepth());
+            sent += statistics.getSent();
+            failed += statistics.getFailed();
+            dropped += statistics.getDropped();
+            totalLatency += statistics.getAverageLatencyNanos() * statistics.getSent();
+            maxLatency = Math.max(maxLatency, statistics.getMaxLatencyNanos());
+        }
+        JSONObject total = new JSONObject();
+        total.put("sessions", sessions);
+        total.put("depth", depth);
+        total.put("maxDepth", maxDepth);
+        total.put("sent", sent);
+        total.put("failed", failed);
+        total.put("dropped", dropped);
+        total.put("averageLatencyNanos", sent == 0 ? 0 : totalLatency / sent);
+        total.put("maxLatencyNanos", maxLatency);
+
+        JSONObject result = new JSONObject();
+        result.put("commands", commands);
+        result.put("shards", shards);
+        result.put("outbound", toJSON(processor.getOutbound().getStatistics()));
+        result.put("outboundTotal", total);
+        return result;
+    }
+
+    private JSONObject toJSON(OutboundQueue.Statistics statistics) {
+        JSONObject result = new JSONObject();
+        result.put("depth", statistics.getDepth());
+        result.put("maxDepth", statistics.getMaxDepth());
+        result.put("sent", statistics.getSent());
+        result.put("failed", statistics.getFailed());
+        result.put("dropped", statistics.getDropped());
+        result.put("averageLatencyNanos", statistics.getAverageLatencyNanos());
+        result.put("maxLatencyNanos", statistics.getMaxLatencyNanos());
+        return result;
+    }
+
+}
@@ -1,40 +1,50 @@
 package br.hefesto.ws.processor;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import br.hefesto.simulation.HRigidBody;
 import br.hefesto.simulation.PhysicSimulation;
-import br.law123.core.Quaternion;
-import br.law123.core.Vector3;
+import br.hefesto.ws.SimulationProcessor;
 import br.law123.rigidbody.RigidBody;
 import br.law123.rigidbody.contact.Contact;
 
 /**
- * Processador do comando {@link CommandType#INTEGRATE}.
+ * Processador do comando {@link CommandType#INTEGRATE}. </br>
+ * O estado  escrito no formato negociado no
+ * {@link CommandType#NEW_SIMULATION}.
  * 
  * @author teixeira
  */
-public class IntegrateCommand implements CommandProcessor {
+public class IntegrateCommand extends AbstractSessionCommandProcessor {
 
     @Override
-    public JSONObject process(PhysicSimulation simulation, JSONObject data) {
+    public JSONObject process(SimulationProcessor processor, JSONObject data) {
         double duration = data.getDouble("duration");
-        simulation.integrate(duration);
+        processor.getSimulation().integrate(duration);
 
-        Map<String, HRigidBody> bodys = simulation.getRigidBodys();
+        return processor.writeState();
+    }
 
+    /**
+     * Escreve o estado dos corpos informados com contatos j lidos da
+     * simulao, ver {@link #writeContacts(PhysicSimulation)}.
+     * 
+     * @param bodys corpos a escrever.
+     * @param contacts contatos do ltimo passo.
+     * @return o estado dos corpos e os contatos.
+     */
+    public JSONObject writeState(Collection<HRigidBody> bodys, JSONArray contacts) {
         JSONArray array = new JSONArray();
 
-        for (Entry<String, HRigidBody> e : bodys.entrySet()) {
+        for (HRigidBody hbody : bodys) {
             JSONObject obj = new JSONObject();
-            obj.put("id", e.getKey());
+            obj.put("id", hbody.getId());
 
-            RigidBody body = e.getValue().getBody();
+            RigidBody body = hbody.getBody();
 			obj.put("position", getJSONVector3(body.getPosition()));
 
             //obj.put("_orientation", getJSONQuaternion(e.getValue().getBody().getOrientation()));
@@ -46,6 +56,21 @@ public class IntegrateCommand implements CommandProcessor {
             array.put(obj);
         }
 
+        JSONObject _result = new JSONObject();
+        _result.put("_rigidBodys", array);
+        _result.put("_contacts", contacts);
+
+        return _result;
+    }
+
+    /**
+     * Escreve os contatos gerados desde a ltima leitura, descartando-os da
+     * simulao.
+     * 
+     * @param simulation simulao.
+     * @return os contatos.
+     */
+    public JSONArray writeContacts(PhysicSimulation simulation) {
         List<Contact> contacts = simulation.getContacts();
         
         JSONArray conts = new JSONArray();
@@ -65,30 +90,7 @@ public class IntegrateCommand implements CommandProcessor {
         	
         	conts.put(cont);
         }
-        
-        JSONObject _result = new JSONObject();
-        _result.put("_rigidBodys", array);
-        _result.put("_contacts", conts);
-
-        return _result;
-    }
-
-    private JSONObject getJSONVector3(Vector3 v) {
-        JSONObject data = new JSONObject();
-        data.put("x", v.getX());
-        data.put("y", v.getY());
-        data.put("z", v.getZ());
-        return data;
-    }
-
-    private JSONObject getJSONQuaternion(Quaternion q) {
-        JSONObject data = new JSONObject();
-        data.put("_w", q.getR());
-        data.put("_x", q.getI());
-        data.put("_y", q.getJ());
-        data.put("_z", q.getK());
-
-        return data;
+        return conts;
     }
 
 }
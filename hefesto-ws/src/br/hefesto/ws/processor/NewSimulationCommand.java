@@ -2,14 +2,64 @@ package br.hefesto.ws.processor;
 
 import org.json.JSONObject;
 
-import br.hefesto.simulation.PhysicSimulation;
+import br.hefesto.simulation.SolverType;
+import br.hefesto.ws.OverflowPolicy;
+import br.hefesto.ws.SimulationProcessor;
+import br.hefesto.ws.stream.BinaryStateEncoder;
+import br.hefesto.ws.stream.StateEncoding;
+
+/**
+ * Processador do comando {@link CommandType#NEW_SIMULATION}. </br>
+ * Negocia o formato em que o estado  enviado (<code>stateEncoding</code>,
+ * JSON por padro). Em BINARY aceita tambm <code>positionResolution</code> e
+ * <code>keyframeInterval</code>, ver {@link BinaryStateEncoder}. Com
+ * <code>dirtyTracking</code> as respostas do {@link CommandType#INTEGRATE}
+ * trazem apenas os corpos alterados desde o envio anterior, e
+ * <code>overflowPolicy</code> escolhe a {@link OverflowPolicy} da fila de
+ * sada. <code>solver</code> escolhe o {@link SolverType} dos contatos e
+ * <code>persistentManifolds</code> liga as variedades de contato
+ * persistentes.
+ * 
+ * @author teixeira
+ */
+public class NewSimulationCommand extends AbstractSessionCommandProcessor {
 
-public class NewSimulationCommand implements CommandProcessor {
- 
     @Override
-    public JSONObject process(PhysicSimulation simulation, JSONObject data) {
-        // coco na ponte
-        return null;
+    public JSONObject process(SimulationProcessor processor, JSONObject data) {
+        StateEncoding encoding = StateEncoding.valueOfString(data.optString("stateEncoding", null));
+
+        BinaryStateEncoder encoder = null;
+        if (encoding == StateEncoding.BINARY) {
+            encoder = new BinaryStateEncoder( //
+                    data.optDouble("positionResolution", BinaryStateEncoder.DEFAULT_POSITION_RESOLUTION), //
+                    data.optInt("keyframeInterval", BinaryStateEncoder.DEFAULT_KEYFRAME_INTERVAL));
+        }
+        processor.setStateEncoding(encoding, encoder);
+        processor.getSimulation().setDirtyTracking(data.optBoolean("dirtyTracking", false));
+        OverflowPolicy policy = OverflowPolicy.valueOfString(data.optString("overflowPolicy", null));
+        if (policy != null) {
+            processor.getOutbound().setPolicy(policy);
+        }
+        SolverType solver = SolverType.valueOfString(data.optString("solver", null));
+        if (solver != null) {
+            processor.getSimulation().setSolverType(solver);
+        }
+        if (data.has("persistentManifolds")) {
+            processor.getSimulation().setPersistentManifolds(data.getBoolean("persistentManifolds"));
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("id", processor.getSimulation().getId());
+        result.put("stateEncoding", encoding.name());
+        result.put("dirtyTracking", processor.getSimulation().isDirtyTracking());
+        result.put("overflowPolicy", processor.getOutbound().getPolicy().name());
+        result.put("solver", processor.getSimulation().getSolverType().name());
+        result.put("persistentManifolds", processor.getSimulation().isPersistentManifolds());
+        if (encoder != null) {
+            result.put("positionResolution", encoder.getPositionResolution());
+            result.put("keyframeInterval", encoder.getKeyframeInterval());
+        }
+        return result;
     }
 
 }
@@ -0,0 +1,38 @@
+package br.hefesto.ws.processor;
+
+import org.json.JSONObject;
+
+import br.hefesto.simulation.PhysicSimulation;
+import br.hefesto.simulation.RaycastHit;
+
+/**
+ * Processador do comando {@link CommandType#RAYCAST}. </br>
+ * Recebe <code>origin</code> e <code>direction</code>, e opcionalmente
+ * <code>maxDistance</code> e <code>mask</code> (camadas de coliso
+ * consideradas). A resposta traz <code>hit</code> e, quando h, o corpo mais
+ * prximo com a distncia, o ponto e a normal.
+ * 
+ * @author teixeira
+ */
+public class RaycastCommand extends AbstractCommandProcessor {
+
+    @Override
+    public JSONObject process(PhysicSimulation simulation, JSONObject data) {
+        RaycastHit hit = simulation.raycast( //
+                getVector3(data.getJSONObject("origin")), //
+                getVector3(data.getJSONObject("direction")), //
+                data.optDouble("maxDistance", Double.MAX_VALUE), //
+                data.optInt("mask", -1));
+
+        JSONObject result = new JSONObject();
+        result.put("hit", hit != null);
+        if (hit != null) {
+            result.put("body", hit.getBody().getId());
+            result.put("distance", hit.getDistance());
+            result.put("point", getJSONVector3(hit.getPoint()));
+            result.put("normal", getJSONVector3(hit.getNormal()));
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,23 @@
+package br.hefesto.ws.processor;
+
+import org.json.JSONObject;
+
+import br.hefesto.ws.SimulationProcessor;
+
+/**
+ * Processador de comando que atua sobre a sesso da simulao, e no apenas
+ * sobre a simulao.
+ * 
+ * @author teixeira
+ */
+public interface SessionCommandProcessor extends CommandProcessor {
+
+    /**
+     * Processa um comando.
+     * 
+     * @param processor processador da sesso para a qual o comando  destinado.
+     * @param data dados.
+     */
+    JSONObject process(SimulationProcessor processor, JSONObject data);
+
+}
@@ -0,0 +1,30 @@
+package br.hefesto.ws.processor;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import br.hefesto.simulation.HRigidBody;
+import br.hefesto.simulation.PhysicSimulation;
+
+/**
+ * Processador do comando {@link CommandType#SPHERE_OVERLAP}. </br>
+ * Recebe <code>center</code>, <code>radius</code> e opcionalmente
+ * <code>mask</code>, e responde os ids dos corpos que tocam a esfera.
+ * 
+ * @author teixeira
+ */
+public class SphereOverlapCommand extends AbstractCommandProcessor {
+
+    @Override
+    public JSONObject process(PhysicSimulation simulation, JSONObject data) {
+        JSONArray bodies = new JSONArray();
+        for (HRigidBody body : simulation.sphereOverlap(getVector3(data.getJSONObject("center")), data.getDouble("radius"), data.optInt("mask", -1))) {
+            bodies.put(body.getId());
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("bodies", bodies);
+        return result;
+    }
+
+}
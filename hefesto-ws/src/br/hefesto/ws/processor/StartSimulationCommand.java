@@ -0,0 +1,33 @@
+package br.hefesto.ws.processor;
+
+import org.json.JSONObject;
+
+import br.hefesto.ws.SimulationLoop;
+import br.hefesto.ws.SimulationProcessor;
+import br.hefesto.ws.SimulationScheduler;
+
+/**
+ * Processador do comando {@link CommandType#START_SIMULATION}. </br>
+ * Passa a simulao para o modo conduzido pelo servidor: os passos so dados
+ * na taxa informada e o estado  enviado como resposta de
+ * {@link CommandType#INTEGRATE} com id -1.
+ * 
+ * @author teixeira
+ */
+public class StartSimulationCommand extends AbstractSessionCommandProcessor {
+
+    @Override
+    public JSONObject process(SimulationProcessor processor, JSONObject data) {
+        int tickRate = data.optInt("tickRate", SimulationScheduler.DEFAULT_TICK_RATE);
+
+        SimulationLoop loop = SimulationScheduler.get().start(processor, tickRate);
+
+        JSONObject result = new JSONObject();
+        result.put("running", true);
+        result.put("tickRate", loop.getTickRate());
+        result.put("stepSize", loop.getStepSize());
+
+        return result;
+    }
+
+}
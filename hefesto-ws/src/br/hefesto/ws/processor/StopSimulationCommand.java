@@ -0,0 +1,28 @@
+package br.hefesto.ws.processor;
+
+import org.json.JSONObject;
+
+import br.hefesto.ws.SimulationProcessor;
+import br.hefesto.ws.SimulationScheduler;
+
+/**
+ * Processador do comando {@link CommandType#STOP_SIMULATION}. </br>
+ * Volta a simulao para o modo em que o cliente conduz os passos com
+ * {@link CommandType#INTEGRATE}.
+ * 
+ * @author teixeira
+ */
+public class StopSimulationCommand extends AbstractSessionCommandProcessor {
+
+    @Override
+    public JSONObject process(SimulationProcessor processor, JSONObject data) {
+        boolean stopped = SimulationScheduler.get().stop(processor);
+
+        JSONObject result = new JSONObject();
+        result.put("running", false);
+        result.put("stopped", stopped);
+
+        return result;
+    }
+
+}
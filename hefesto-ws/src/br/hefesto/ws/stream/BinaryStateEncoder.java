@@ -0,0 +1,431 @@
+package br.hefesto.ws.stream;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import br.hefesto.simulation.HRigidBody;
+import br.law123.core.Quaternion;
+import br.law123.core.Vector3;
+import br.law123.rigidbody.RigidBody;
+
+/**
+ * Codifica o estado dos corpos em quadros binrios, enviados como mensagens
+ * binrias do WebSocket. </br>
+ * Posies so quantizadas em inteiros de 32 bits na resoluo negociada, e
+ * orientaes com a tcnica dos "trs menores": o ndice da maior componente
+ * do quaternion e as outras trs em 16 bits. Cada quadro traz apenas os corpos
+ * cujo estado quantizado mudou em relao ao ltimo quadro confirmado pelo
+ * cliente (ACK_FRAME); quadros-chave com todos os corpos so enviados
+ * periodicamente, ou quando no h base confirmada disponvel. </br>
+ * </br>
+ * Formato (big-endian):
+ *
+ * <pre>
+ * byte   'H'
+ * byte   verso (1)
+ * byte   flags (bit 0: quadro-chave)
+ * int    sequncia do quadro
+ * int    sequncia da base do delta (-1 em quadros-chave)
+ * float  resoluo das posies
+ * ushort n; n x { ushort ndice, ushort tamanho, bytes UTF-8 do id }   novos ndices
+ * ushort n; n x { ushort ndice }                                      corpos removidos
+ * ushort n; n x { ushort ndice, int x, int y, int z,
+ *                 byte maior componente (0=w,1=x,2=y,3=z), short a, short b, short c }
+ * </pre>
+ *
+ * O cliente aplica o quadro sobre a cpia que guardou do quadro base; em
+ * quadros-chave ele descarta o que tinha. As trs componentes so as restantes
+ * na ordem w, x, y, z, divididas por 32767 * sqrt(2); a maior  recomposta por
+ * sqrt(1 - a - b - c) e  sempre positiva.
+ *
+ * @author teixeira
+ */
+public final class BinaryStateEncoder {
+
+    public static final byte MAGIC = 'H';
+    public static final byte VERSION = 1;
+    public static final byte FLAG_KEYFRAME = 1;
+
+    public static final double DEFAULT_POSITION_RESOLUTION = 0.001;
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 120;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int MAX_BODIES = 0xFFFF;
+    private static final int HISTORY = 32;
+    private static final int STRIDE = 7;
+    private static final double QUATERNION_SCALE = 32767 * Math.sqrt(2);
+
+    private static final int HEADER_SIZE = 1 + 1 + 1 + 4 + 4 + 4 + 2 + 2 + 2;
+    private static final int BODY_SIZE = 2 + 12 + 1 + 6;
+
+    private final double positionResolution;
+    private final int keyframeInterval;
+
+    private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+    private byte[][] names = new byte[64][];
+    private int nextIndex = 0;
+
+    private final Snapshot[] history = new Snapshot[HISTORY];
+    private int sequence = -1;
+    private int acked = -1;
+    private int lastKeyframe = -1;
+    private boolean keyframeRequested = false;
+
+    private final IntList added = new IntList();
+    private final IntList removed = new IntList();
+    private final IntList changed = new IntList();
+
+    public BinaryStateEncoder() {
+        this(DEFAULT_POSITION_RESOLUTION, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    public BinaryStateEncoder(double positionResolution, int keyframeInterval) {
+        if (positionResolution <= 0) {
+            throw new IllegalArgumentException("Invalid position resolution: " + positionResolution);
+        }
+        if (keyframeInterval <= 0) {
+            throw new IllegalArgumentException("Invalid keyframe interval: " + keyframeInterval);
+        }
+        this.positionResolution = positionResolution;
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    public double getPositionResolution() {
+        return positionResolution;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * Registra a confirmao do cliente: o quadro passa a ser a base dos
+     * prximos deltas, se ainda estiver no histrico.
+     *
+     * @param frame sequncia confirmada.
+     */
+    public synchronized void ack(int frame) {
+        if (frame > acked && frame <= sequence) {
+            acked = frame;
+        }
+    }
+
+    /**
+     * Fora o prximo quadro a ser um quadro-chave.
+     */
+    public synchronized void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
+    /**
+     * Codifica o estado corrente dos corpos em um novo quadro.
+     *
+     * @param bodies corpos da simulao.
+     * @return o quadro, pronto para envio.
+     */
+    public synchronized ByteBuffer encode(Collection<HRigidBody> bodies) {
+        if (bodies.size() > MAX_BODIES) {
+            throw new IllegalStateException("Too many bodies for the binary encoding: " + bodies.size());
+        }
+        int frame = ++sequence;
+
+        Snapshot current = capture(frame, bodies);
+        if (current == null) {
+            // ndices esgotados: recomea o dicionrio com um quadro-chave
+            resetDictionary();
+            current = capture(frame, bodies);
+        }
+
+        Snapshot base = getBase(frame);
+        boolean keyframe = base == null || keyframeRequested || frame - lastKeyframe >= keyframeInterval;
+        if (keyframe) {
+            base = null;
+            lastKeyframe = frame;
+            keyframeRequested = false;
+        }
+        return write(current, base);
+    }
+
+    /**
+     * Codifica de novo o ltimo quadro, como quadro-chave e com a mesma
+     * sequncia, para quem no tem a base do delta. No muda a base dos
+     * prximos quadros.
+     *
+     * @return o quadro-chave, ou <code>null</code> se nenhum quadro foi
+     *         codificado ainda.
+     */
+    public synchronized ByteBuffer encodeKeyframe() {
+        Snapshot current = sequence < 0 ? null : history[sequence % HISTORY];
+        if (current == null || current.frame != sequence) {
+            return null;
+        }
+        return write(current, null);
+    }
+
+    /**
+     * Escreve o quadro: um delta sobre a base, ou um quadro-chave se ela for
+     * nula.
+     */
+    private ByteBuffer write(Snapshot current, Snapshot base) {
+        int frame = current.frame;
+        boolean keyframe = base == null;
+
+        added.clear();
+        removed.clear();
+        changed.clear();
+
+        int size = HEADER_SIZE;
+        for (int index = 0; index < current.capacity; index++) {
+            if (!current.present[index]) {
+                if (base != null && base.isPresent(index)) {
+                    removed.add(index);
+                    size += 2;
+                }
+                continue;
+            }
+            boolean known = base != null && base.isPresent(index);
+            if (!known) {
+                added.add(index);
+                size += 4 + names[index].length;
+            }
+            if (!known || !current.sameAs(base, index)) {
+                changed.add(index);
+                size += BODY_SIZE;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(MAGIC);
+        buffer.put(VERSION);
+        buffer.put(keyframe ? FLAG_KEYFRAME : 0);
+        buffer.putInt(frame);
+        buffer.putInt(keyframe ? -1 : base.frame);
+        buffer.putFloat((float) positionResolution);
+
+        buffer.putShort((short) added.size);
+        for (int i = 0; i < added.size; i++) {
+            int index = added.data[i];
+            buffer.putShort((short) index);
+            buffer.putShort((short) names[index].length);
+            buffer.put(names[index]);
+        }
+
+        buffer.putShort((short) removed.size);
+        for (int i = 0; i < removed.size; i++) {
+            buffer.putShort((short) removed.data[i]);
+        }
+
+        buffer.putShort((short) changed.size);
+        for (int i = 0; i < changed.size; i++) {
+            int index = changed.data[i];
+            int offset = index * STRIDE;
+            buffer.putShort((short) index);
+            buffer.putInt(current.data[offset]);
+            buffer.putInt(current.data[offset + 1]);
+            buffer.putInt(current.data[offset + 2]);
+            buffer.put((byte) current.data[offset + 3]);
+            buffer.putShort((short) current.data[offset + 4]);
+            buffer.putShort((short) current.data[offset + 5]);
+            buffer.putShort((short) current.data[offset + 6]);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public synchronized int getSequence() {
+        return sequence;
+    }
+
+    public synchronized int getAcked() {
+        return acked;
+    }
+
+    private Snapshot getBase(int frame) {
+        if (acked < 0 || frame - acked >= HISTORY) {
+            return null;
+        }
+        Snapshot base = history[acked % HISTORY];
+        return base != null && base.frame == acked ? base : null;
+    }
+
+    private Snapshot capture(int frame, Collection<HRigidBody> bodies) {
+        int slot = frame % HISTORY;
+        Snapshot snapshot = history[slot];
+        if (snapshot == null) {
+            snapshot = new Snapshot();
+            history[slot] = snapshot;
+        }
+        snapshot.reset(frame, nextIndex + bodies.size());
+
+        for (HRigidBody hbody : bodies) {
+            int index = indexOf(hbody.getId());
+            if (index < 0) {
+                return null;
+            }
+            snapshot.ensureCapacity(index + 1);
+            snapshot.present[index] = true;
+
+            RigidBody body = hbody.getBody();
+            int offset = index * STRIDE;
+
+            Vector3 position = body.getPosition();
+            snapshot.data[offset] = quantize(position.getX());
+            snapshot.data[offset + 1] = quantize(position.getY());
+            snapshot.data[offset + 2] = quantize(position.getZ());
+
+            Quaternion q = body.getOrientation();
+            quantize(q, snapshot.data, offset + 3);
+        }
+        snapshot.ensureCapacity(nextIndex);
+        return snapshot;
+    }
+
+    private int quantize(double value) {
+        double q = Math.rint(value / positionResolution);
+        if (q > Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        if (q < Integer.MIN_VALUE) {
+            return Integer.MIN_VALUE;
+        }
+        return (int) q;
+    }
+
+    private static void quantize(Quaternion q, int[] data, int offset) {
+        double w = q.getR();
+        double x = q.getI();
+        double y = q.getJ();
+        double z = q.getK();
+
+        int largest = 0;
+        double max = Math.abs(w);
+        if (Math.abs(x) > max) {
+            largest = 1;
+            max = Math.abs(x);
+        }
+        if (Math.abs(y) > max) {
+            largest = 2;
+            max = Math.abs(y);
+        }
+        if (Math.abs(z) > max) {
+            largest = 3;
+        }
+
+        // q e -q representam a mesma rotao: a maior componente fica positiva
+        double sign = (largest == 0 ? w : largest == 1 ? x : largest == 2 ? y : z) < 0 ? -1 : 1;
+
+        data[offset] = largest;
+        int out = offset + 1;
+        if (largest != 0) {
+            data[out++] = quantizeComponent(w * sign);
+        }
+        if (largest != 1) {
+            data[out++] = quantizeComponent(x * sign);
+        }
+        if (largest != 2) {
+            data[out++] = quantizeComponent(y * sign);
+        }
+        if (largest != 3) {
+            data[out++] = quantizeComponent(z * sign);
+        }
+    }
+
+    private static int quantizeComponent(double value) {
+        long q = Math.round(value * QUATERNION_SCALE);
+        return (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, q));
+    }
+
+    private int indexOf(String id) {
+        Integer index = indexes.get(id);
+        if (index == null) {
+            if (nextIndex == MAX_BODIES) {
+                return -1;
+            }
+            index = nextIndex++;
+            indexes.put(id, index);
+            if (index >= names.length) {
+                names = Arrays.copyOf(names, Math.max(index + 1, names.length * 2));
+            }
+            names[index] = id.getBytes(UTF8);
+        }
+        return index;
+    }
+
+    private void resetDictionary() {
+        indexes.clear();
+        nextIndex = 0;
+        Arrays.fill(history, null);
+        acked = -1;
+        keyframeRequested = true;
+    }
+
+    /**
+     * Estado quantizado de um quadro j enviado.
+     */
+    private static final class Snapshot {
+
+        int frame;
+        int capacity;
+        int[] data = new int[0];
+        boolean[] present = new boolean[0];
+
+        void reset(int frame, int expected) {
+            this.frame = frame;
+            this.capacity = 0;
+            if (expected > present.length) {
+                present = new boolean[expected];
+                data = new int[expected * STRIDE];
+            } else {
+                Arrays.fill(present, false);
+            }
+        }
+
+        void ensureCapacity(int size) {
+            if (size > present.length) {
+                int length = Math.max(size, present.length * 2);
+                present = Arrays.copyOf(present, length);
+                data = Arrays.copyOf(data, length * STRIDE);
+            }
+            if (size > capacity) {
+                capacity = size;
+            }
+        }
+
+        boolean isPresent(int index) {
+            return index < capacity && present[index];
+        }
+
+        boolean sameAs(Snapshot other, int index) {
+            int offset = index * STRIDE;
+            for (int i = offset; i < offset + STRIDE; i++) {
+                if (data[i] != other.data[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class IntList {
+
+        int[] data = new int[64];
+        int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+}
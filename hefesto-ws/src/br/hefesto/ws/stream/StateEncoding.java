@@ -0,0 +1,22 @@
+package br.hefesto.ws.stream;
+
+/**
+ * Formatos suportados para o envio do estado da simulao.
+ *
+ * @author teixeira
+ */
+public enum StateEncoding {
+
+	/** Objeto JSON por corpo, enviado como mensagem texto (padro). */
+	JSON,
+	/** Quadros binrios quantizados e com delta, ver {@link BinaryStateEncoder}. */
+	BINARY;
+
+	public static StateEncoding valueOfString(String encoding) {
+		if (encoding == null) {
+			return JSON;
+		}
+		return valueOf(encoding.toUpperCase());
+	}
+
+}
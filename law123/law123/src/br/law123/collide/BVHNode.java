@@ -4,6 +4,15 @@ import java.util.Arrays;
 
 import br.law123.rigidbody.RigidBody;
 
+/**
+ * A node of Cyclone's bounding volume hierarchy: a recursive tree of
+ * bounding volumes, built by insertion only, with no rebalancing and no
+ * refit of moving bodies.
+ *
+ * @deprecated use {@link DynamicAABBTree}, which keeps fat boxes for moving
+ *             objects, stays balanced and does not allocate per insert.
+ */
+@Deprecated
 public class BVHNode<T extends Bounding> {
 
     /**
@@ -156,7 +165,7 @@ public class BVHNode<T extends Bounding> {
         }
         if (children[1] != null) {
             children[1].parent = null;
-            children[0].destroy();
+            children[1].destroy();
         }
     }
 
@@ -234,8 +243,9 @@ public class BVHNode<T extends Bounding> {
         }
     }
 
+    @SuppressWarnings("unchecked")
     private T buildBounding(T v1, T v2) {
-        throw new UnsupportedOperationException();
+        return (T) v1.enclose(v2);
     }
 
 }
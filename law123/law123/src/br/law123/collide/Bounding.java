@@ -25,4 +25,10 @@ public abstract class Bounding {
      */
     abstract double getSize();
 
+    /**
+     * Creates a new bounding volume enclosing this one and the given
+     * one, of the same type.
+     */
+    abstract Bounding enclose(Bounding other);
+
 }
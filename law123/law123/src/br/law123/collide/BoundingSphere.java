@@ -50,7 +50,7 @@ public class BoundingSphere extends Bounding {
             // The new centre is based on one's centre, moved towards
             // two's centre by an ammount proportional to the spheres'
             // radii.
-            centre = one.centre;
+            centre = new Vector3(one.centre);
             if (distance > 0) {
                 centre.sumToMe(centreOffset.mult((radius - one.radius) / distance));
             }
@@ -86,6 +86,11 @@ public class BoundingSphere extends Bounding {
         return newSphere.radius * newSphere.radius - radius * radius;
     }
 
+    @Override
+    public BoundingSphere enclose(Bounding other) {
+        return new BoundingSphere(this, other);
+    }
+
     /**
      * Returns the volume of this bounding volume. This is used
      * to calculate how to recurse into the bounding volume tree.
@@ -0,0 +1,138 @@
+package br.law123.collide;
+
+import br.law123.collide.util.BoxCollisor;
+import br.law123.core.Vector3;
+
+/**
+ * Separating axis test between two boxes, as made by
+ * {@link CollisionDetector#boxAndBox} through
+ * {@link CollideUtils#tryAxis}, but over the transform data and
+ * half-sizes read once into doubles, so the fifteen axes are tested
+ * without building vectors or boxing the best axis and penetration.
+ *
+ * The arithmetic is the same, operation by operation, as in
+ * {@link CollideUtils#penetrationOnAxis} and {@link Vector3#normalise()},
+ * so the results are bit-identical.
+ *
+ * An instance holds the result of the last test. Each
+ * {@link CollisionData} keeps one, so testing a pair allocates nothing.
+ */
+final class BoxBoxSat {
+
+    // transforms of the two boxes
+    private double[] a;
+    private double[] b;
+
+    private double oneX, oneY, oneZ;
+    private double twoX, twoY, twoZ;
+
+    // vector between the centres
+    private double toCentreX, toCentreY, toCentreZ;
+
+    private int bestCase;
+    private double penetration;
+    private int bestSingleAxis;
+
+    /**
+     * Tests the fifteen axes of the pair.
+     *
+     * @return false if one of them separates the boxes.
+     */
+    <B extends CollisionPrimitive & BoxCollisor> boolean test(B one, B two) {
+        a = one.getTransform().getData();
+        b = two.getTransform().getData();
+        Vector3 half = one.getHalfSize();
+        oneX = half.getX();
+        oneY = half.getY();
+        oneZ = half.getZ();
+        half = two.getHalfSize();
+        twoX = half.getX();
+        twoY = half.getY();
+        twoZ = half.getZ();
+
+        toCentreX = b[3] - a[3];
+        toCentreY = b[7] - a[7];
+        toCentreZ = b[11] - a[11];
+
+        bestCase = 0xffffff;
+        penetration = Double.MAX_VALUE;
+
+        // The face axes first: most separated pairs are rejected by them.
+        for (int i = 0; i < 3; i++) {
+            if (!tryAxis(a[i], a[i + 4], a[i + 8], i)) return false;
+        }
+        for (int i = 0; i < 3; i++) {
+            if (!tryAxis(b[i], b[i + 4], b[i + 8], 3 + i)) return false;
+        }
+
+        // Kept in case the edges turn out to be almost parallel.
+        bestSingleAxis = bestCase;
+
+        for (int i = 0; i < 3; i++) {
+            double ox = a[i];
+            double oy = a[i + 4];
+            double oz = a[i + 8];
+            for (int j = 0; j < 3; j++) {
+                double tx = b[j];
+                double ty = b[j + 4];
+                double tz = b[j + 8];
+                if (!tryAxis(oy * tz - oz * ty, oz * tx - ox * tz, ox * ty - oy * tx, 6 + i * 3 + j)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the axis case (0 to 14, as in boxAndBox) with the smallest
+     *         penetration.
+     */
+    int getBestCase() {
+        return bestCase;
+    }
+
+    double getPenetration() {
+        return penetration;
+    }
+
+    /**
+     * @return the best of the face axes (0 to 5).
+     */
+    int getBestSingleAxis() {
+        return bestSingleAxis;
+    }
+
+    private boolean tryAxis(double x, double y, double z, int index) {
+        // Don't check almost parallel axes
+        if (x * x + y * y + z * z < 0.0001) return true;
+
+        double l = Math.sqrt(x * x + y * y + z * z);
+        if (l > 0) {
+            double s = 1 / l;
+            x *= s;
+            y *= s;
+            z *= s;
+        }
+
+        double oneProject = project(a, oneX, oneY, oneZ, x, y, z);
+        double twoProject = project(b, twoX, twoY, twoZ, x, y, z);
+        double distance = Math.abs(toCentreX * x + toCentreY * y + toCentreZ * z);
+
+        double result = oneProject + twoProject - distance;
+        if (result < 0) return false;
+        if (result < penetration) {
+            penetration = result;
+            bestCase = index;
+        }
+        return true;
+    }
+
+    /**
+     * Half-size of the box projected onto the axis, as
+     * {@link CollideUtils#transformToAxis}.
+     */
+    private static double project(double[] transform, double x, double y, double z, double axisX, double axisY, double axisZ) {
+        return x * Math.abs(axisX * transform[0] + axisY * transform[4] + axisZ * transform[8]) //
+               + y * Math.abs(axisX * transform[1] + axisY * transform[5] + axisZ * transform[9]) //
+               + z * Math.abs(axisX * transform[2] + axisY * transform[6] + axisZ * transform[10]);
+    }
+}
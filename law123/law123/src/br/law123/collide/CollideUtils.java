@@ -1,15 +1,25 @@
 package br.law123.collide;
 
 import br.law123.collide.util.BoxCollisor;
+import br.law123.core.Matrix4;
 import br.law123.core.Vector3;
 import br.law123.rigidbody.contact.Contact;
 
 public class CollideUtils {
 
     public static <B extends CollisionPrimitive & BoxCollisor> double transformToAxis(B box, Vector3 axis) {
-        return box.getHalfSize().getX() * Math.abs(axis.mult(box.getAxis(0))) //
-               + box.getHalfSize().getY() * Math.abs(axis.mult(box.getAxis(1))) //
-               + box.getHalfSize().getZ() * Math.abs(axis.mult(box.getAxis(2)));
+        Matrix4 transform = box.getTransform();
+        return box.getHalfSize().getX() * Math.abs(axisProduct(transform, 0, axis)) //
+               + box.getHalfSize().getY() * Math.abs(axisProduct(transform, 1, axis)) //
+               + box.getHalfSize().getZ() * Math.abs(axisProduct(transform, 2, axis));
+    }
+
+    /**
+     * Scalar product of the given vector with one axis of the
+     * transform, without building the axis vector.
+     */
+    private static double axisProduct(Matrix4 transform, int index, Vector3 vector) {
+        return vector.getX() * transform.getData(index) + vector.getY() * transform.getData(index + 4) + vector.getZ() * transform.getData(index + 8);
     }
 
     /**
@@ -84,20 +94,40 @@ public class CollideUtils {
         // Work out which vertex of box two we're colliding with.
         // Using toCentre doesn't work!
         Vector3 vertex = new Vector3(two.getHalfSize());
-        if (two.getAxis(0).mult(normal) < 0) vertex.setX(-vertex.getX());
-        if (two.getAxis(1).mult(normal) < 0) vertex.setY(-vertex.getY());
-        if (two.getAxis(2).mult(normal) < 0) vertex.setZ(-vertex.getZ());
+        int vertexIndex = 0;
+        if (two.getAxis(0).mult(normal) < 0) {
+            vertex.setX(-vertex.getX());
+            vertexIndex |= 1;
+        }
+        if (two.getAxis(1).mult(normal) < 0) {
+            vertex.setY(-vertex.getY());
+            vertexIndex |= 2;
+        }
+        if (two.getAxis(2).mult(normal) < 0) {
+            vertex.setZ(-vertex.getZ());
+            vertexIndex |= 4;
+        }
 
         // Create the contact data
-        Contact contact = new Contact();
+        Contact contact = data.addContact();
 
         contact.setContactNormal(normal);
         contact.setPenetration(pen);
         contact.setContactPoint(two.getTransform().mult(vertex));
         contact.setBodyData(one.getBody(), two.getBody(), data.getFriction(), data.getRestitution());
+        contact.setFeature(boxFeature(best, vertexIndex));
         return contact;
     }
 
+    /**
+     * Builds the feature id of a box-box contact from the separating
+     * axis case (0 to 14, as in boxAndBox) and, for a vertex on a face,
+     * the vertex of the other box (one bit per negated half-size).
+     */
+    static int boxFeature(int axisCase, int vertexIndex) {
+        return axisCase * 8 + vertexIndex;
+    }
+
     static Vector3 contactPoint(Vector3 pOne, Vector3 dOne, double oneSize, Vector3 pTwo, Vector3 dTwo, double twoSize,
 
     // If this is true, and the contact point is outside
@@ -1,22 +1,67 @@
 package br.law123.collide;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
 import br.law123.rigidbody.contact.Contact;
 
+/**
+ * Holds the contacts generated for a group of collisions, and the
+ * material data used to create them.
+ * 
+ * The contacts live in a pool owned by this object: each step the
+ * detectors take the next pooled contact and fill it in place, and
+ * {@link #reset(int)} rewinds the pool without discarding it. Once the
+ * pool has grown to the number of contacts a scene generates, no
+ * contact is allocated any more. The contacts returned by
+ * {@link #collectContacts()} are therefore only valid until the next
+ * reset.
+ * 
+ * The number of contacts kept per step is bounded by maxContacts. Once
+ * the budget is full, every new contact competes with the shallowest
+ * one kept (a min-heap on penetration depth), so the deepest contacts
+ * survive regardless of the order the collisions are tested in. The
+ * contacts left out are counted, see {@link #getOverflow()}.
+ */
 public class CollisionData {
 
     private final String id;
 
-    private List<Contact> contacts = new ArrayList<Contact>();
+    private Contact[] contacts = new Contact[16];
+    private int contactCount = 0;
+    private final List<Contact> view = new AbstractList<Contact>() {
+
+        @Override
+        public Contact get(int index) {
+            if (index >= contactCount) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + contactCount);
+            }
+            return contacts[index];
+        }
+
+        @Override
+        public int size() {
+            return contactCount;
+        }
+    };
 
     private final double friction;
     private final double restitution;
     private final double tolerance;
 
     private int maxContacts;
-    private int apllyedContacts = 0;
+
+    // Contacts left out of the budget since the last reset.
+    private int overflow;
+    // Min-heap of pool slots by penetration, built on the first overflow.
+    private int[] heap = new int[0];
+    private boolean heapBuilt;
+    // The slot past the budget holds a contact not yet compared.
+    private boolean pending;
+
+    // Reused by every box-box test made into this data.
+    private final BoxBoxSat boxBoxSat = new BoxBoxSat();
 
     public CollisionData(double friction, double restitution, double tolerance, int maxContacts) {
         this("default", friction, restitution, tolerance, maxContacts);
@@ -34,10 +79,15 @@ public class CollisionData {
         return id;
     }
 
+    /**
+     * Returns the contacts generated since the last reset, in the
+     * order they were generated. The list is a view over the pool: it
+     * is reused between steps and its contacts are overwritten once
+     * the data is reset.
+     */
     public List<Contact> collectContacts() {
-        List<Contact> a = this.contacts;
-        this.contacts = new ArrayList<Contact>();
-        return a;
+        settle();
+        return view;
     }
 
     public double getFriction() {
@@ -52,18 +102,136 @@ public class CollisionData {
         return tolerance;
     }
 
+    /**
+     * Checks if contacts can still be generated. Contacts over the
+     * budget are still accepted, and kept if they are deeper than the
+     * ones already there, so this is only false for a zero budget.
+     */
     public boolean hasMoreContacts() {
-        return apllyedContacts < maxContacts;
+        return maxContacts > 0;
+    }
+
+    public int getMaxContacts() {
+        return maxContacts;
+    }
+
+    /**
+     * Returns the number of contacts generated since the last reset
+     * that did not fit in the budget. Either they or shallower contacts
+     * they replaced were discarded.
+     */
+    public int getOverflow() {
+        settle();
+        return overflow;
+    }
+
+    /**
+     * Returns the number of contacts kept so far. Until the budget is
+     * full, contacts added after this call take the slots from this
+     * index on.
+     */
+    int size() {
+        settle();
+        return contactCount;
+    }
+
+    /**
+     * Returns the separating axis test used by
+     * {@link CollisionDetector#boxAndBox} for the pairs added to this
+     * data. Like the contact pool, it is not to be shared by threads.
+     */
+    BoxBoxSat getBoxBoxSat() {
+        return boxBoxSat;
+    }
+
+    /**
+     * Takes the next contact from the pool, growing it if needed. The
+     * contact keeps whatever it held in a previous step, so the caller
+     * must set its normal, point, penetration and body data.
+     * 
+     * When the budget is full the contact returned is a spare one,
+     * compared against the kept contacts once it has been filled, on the
+     * next call.
+     */
+    Contact addContact() {
+        settle();
+        if (contactCount == contacts.length) {
+            contacts = Arrays.copyOf(contacts, contactCount * 2);
+        }
+        Contact contact = contacts[contactCount];
+        if (contact == null) {
+            contact = new Contact();
+            contacts[contactCount] = contact;
+        }
+        if (contactCount < maxContacts) {
+            contactCount++;
+        } else {
+            pending = true;
+        }
+        return contact;
+    }
+
+    /**
+     * Swaps the spare contact in, in place of the shallowest kept
+     * contact, if it is deeper.
+     */
+    private void settle() {
+        if (!pending) return;
+        pending = false;
+        overflow++;
+        if (contactCount == 0) return;
+
+        if (!heapBuilt) buildHeap();
+        Contact candidate = contacts[contactCount];
+        int slot = heap[0];
+        if (candidate.getPenetration() > contacts[slot].getPenetration()) {
+            contacts[contactCount] = contacts[slot];
+            contacts[slot] = candidate;
+            siftDown(0);
+        }
+    }
+
+    private void buildHeap() {
+        if (heap.length < contactCount) {
+            heap = new int[contacts.length];
+        }
+        for (int i = 0; i < contactCount; i++) {
+            heap[i] = i;
+        }
+        for (int i = contactCount / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+        heapBuilt = true;
+    }
+
+    private void siftDown(int i) {
+        int slot = heap[i];
+        double key = contacts[slot].getPenetration();
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= contactCount) break;
+            if (child + 1 < contactCount && contacts[heap[child + 1]].getPenetration() < contacts[heap[child]].getPenetration()) {
+                child++;
+            }
+            if (contacts[heap[child]].getPenetration() >= key) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = slot;
     }
 
-    void addContact(Contact c) {
-        contacts.add(c);
-        this.apllyedContacts++;
+    /**
+     * Clears the contacts for a new step, keeping the budget.
+     */
+    public void reset() {
+        reset(maxContacts);
     }
 
     public void reset(int maxContact) {
         this.maxContacts = maxContact;
-        this.contacts = new ArrayList<Contact>();
-        this.apllyedContacts = 0;
+        this.contactCount = 0;
+        this.overflow = 0;
+        this.heapBuilt = false;
+        this.pending = false;
     }
 }
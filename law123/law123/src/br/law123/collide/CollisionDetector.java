@@ -32,13 +32,12 @@ public class CollisionDetector {
         if (ballDistance >= 0) return 0;
 
         // Create the contact - it has a normal in the plane direction.
-        Contact contact = new Contact();
+        Contact contact = data.addContact();
         contact.setContactNormal(plane.getDirection());
         contact.setPenetration(-ballDistance);
         contact.setContactPoint(position.sub(plane.getDirection().mult(ballDistance + sphere.getRadius())));
         contact.setBodyData(sphere.getBody(), null, data.getFriction(), data.getRestitution());
-
-        data.addContact(contact);
+        contact.setFeature(0);
         sphere.bindContact(contact);
         return 1;
     }
@@ -68,13 +67,12 @@ public class CollisionDetector {
         penetration += sphere.getRadius();
 
         // Create the contact - it has a normal in the plane direction.
-        Contact contact = new Contact();
+        Contact contact = data.addContact();
         contact.setContactNormal(normal);
         contact.setPenetration(penetration);
         contact.setContactPoint(position.sub(plane.getDirection().mult(centreDistance)));
         contact.setBodyData(sphere.getBody(), null, data.getFriction(), data.getRestitution());
-
-        data.addContact(contact);
+        contact.setFeature(0);
         sphere.bindContact(contact);
         return 1;
     }
@@ -100,13 +98,12 @@ public class CollisionDetector {
         // size to hand.
         Vector3 normal = midline.mult(1.0 / size);
 
-        Contact contact = new Contact();
+        Contact contact = data.addContact();
         contact.setContactNormal(normal);
         contact.setContactPoint(positionOne.sum(midline.mult(0.5)));
         contact.setPenetration(one.getRadius() + two.getRadius() - size);
         contact.setBodyData(one.getBody(), two.getBody(), data.getFriction(), data.getRestitution());
-
-        data.addContact(contact);
+        contact.setFeature(0);
         one.bindContact(contact);
         return 1;
     }
@@ -130,12 +127,13 @@ public class CollisionDetector {
         // or on an edge, it will be reported as four or two contact points.
 
         int contactsUsed = 0;
+        Vector3 vertexPos = new Vector3();
         for (int i = 0; i < 8; i++) {
 
             // Calculate the position of each vertex
-            Vector3 vertexPos = new Vector3(mults[i][0], mults[i][1], mults[i][2]);
+            vertexPos.set(mults[i][0], mults[i][1], mults[i][2]);
             vertexPos.componentProductUpdate(box.getHalfSize());
-            vertexPos = box.getTransform().transform(vertexPos);
+            box.getTransform().transform(vertexPos, vertexPos);
 
             // Calculate the distance from the plane
             double vertexDistance = vertexPos.mult(plane.getDirection());
@@ -147,19 +145,17 @@ public class CollisionDetector {
                 // The contact point is halfway between the vertex and the
                 // plane - we multiply the direction by half the separation
                 // distance and add the vertex location.
-                Contact contact = new Contact();
+                Contact contact = data.addContact();
 
-                contact.setContactPoint(new Vector3(plane.getDirection()));
+                contact.setContactPoint(plane.getDirection());
                 contact.getContactPoint().multToMe(vertexDistance - plane.getOffset());
                 contact.getContactPoint().sumToMe(vertexPos);
-                contact.setContactNormal(new Vector3(plane.getDirection()));
+                contact.setContactNormal(plane.getDirection());
                 contact.setPenetration(plane.getOffset() - vertexDistance);
 
                 // Write the appropriate data
                 contact.setBodyData(box.getBody(), null, data.getFriction(), data.getRestitution());
-
-                // Move onto the next contact
-                data.addContact(contact);
+                contact.setFeature(i);
 
                 box.bindContact(contact);
                 contactsUsed++;
@@ -174,61 +170,57 @@ public class CollisionDetector {
         //if (!IntersectionTests::boxAndBox(one, two)) return 0;
 
         // Find the vector between the two centres
-        Vector3 toCentre = two.getAxis(3).sub(one.getAxis(3));
-
-        // We start assuming there is no contact
-        NumberReference pen = new NumberReference(Double.MAX_VALUE);
-        NumberReference best = new NumberReference(0xffffff);
+        Vector3 toCentre = two.getAxis(3);
+        Vector3 axis = new Vector3();
+        one.getAxis(3, axis);
+        toCentre.subToMe(axis);
 
         // Now we check each axes, returning if it gives us
         // a separating axis, and keeping track of the axis with
         // the smallest penetration otherwise.
-        if (//
-        (!CollideUtils.tryAxis(one, two, one.getAxis(0), toCentre, 0, pen, best)) || (!CollideUtils.tryAxis(one, two, one.getAxis(1), toCentre, 1, pen, best)) || (!CollideUtils.tryAxis(one, two, one.getAxis(2), toCentre, 2, pen, best)) ||
-
-        (!CollideUtils.tryAxis(one, two, two.getAxis(0), toCentre, 3, pen, best)) || (!CollideUtils.tryAxis(one, two, two.getAxis(1), toCentre, 4, pen, best)) || (!CollideUtils.tryAxis(one, two, two.getAxis(2), toCentre, 5, pen, best))) {
+        BoxBoxSat sat = data.getBoxBoxSat();
+        if (!sat.test(one, two)) {
             return 0;
         }
+        int best = sat.getBestCase();
+        double pen = sat.getPenetration();
 
         // Store the best axis-major, in case we run into almost
         // parallel edge collisions later
-        int bestSingleAxis = (Integer) best.get();
-
-        if (//
-        (!CollideUtils.tryAxis(one, two, one.getAxis(0).rest(two.getAxis(0)), toCentre, 6, pen, best)) || (!CollideUtils.tryAxis(one, two, one.getAxis(0).rest(two.getAxis(1)), toCentre, 7, pen, best)) || (!CollideUtils.tryAxis(one, two, one.getAxis(0).rest(two.getAxis(2)), toCentre, 8, pen, best)) || (!CollideUtils.tryAxis(one, two, one.getAxis(1).rest(two.getAxis(0)), toCentre, 9, pen, best)) || (!CollideUtils.tryAxis(one, two, one.getAxis(1).rest(two.getAxis(1)), toCentre, 10, pen, best)) || (!CollideUtils.tryAxis(one, two, one.getAxis(1).rest(two.getAxis(2)), toCentre, 11, pen, best)) || (!CollideUtils.tryAxis(one, two, one.getAxis(2).rest(two.getAxis(0)), toCentre, 12, pen, best)) || (!CollideUtils.tryAxis(one, two, one.getAxis(2).rest(two.getAxis(1)), toCentre, 13, pen, best)) || (!CollideUtils.tryAxis(one, two, one.getAxis(2).rest(two.getAxis(2)), toCentre, 14, pen, best))) {
-            return 0;
-        }
+        int bestSingleAxis = sat.getBestSingleAxis();
 
         // Make sure we've got a result.
-        assert (((Integer) best.get()) != 0xffffff);
+        assert (best != 0xffffff);
 
         // We now know there's a collision, and we know which
         // of the axes gave the smallest penetration. We now
         // can deal with it in different ways depending on
         // the case.
-        if (((Integer) best.get()) < 3) {
+        if (best < 3) {
             // We've got a vertex of box two on a face of box one.
-            Contact contact = CollideUtils.fillPointFaceBoxBox(one, two, toCentre, data, (Integer) best.get(), (Double) pen.get());
-            data.addContact(contact);
+            Contact contact = CollideUtils.fillPointFaceBoxBox(one, two, toCentre, data, best, pen);
             one.bindContact(contact);
             return 1;
-        } else if (((Integer) best.get()) < 6) {
+        } else if (best < 6) {
             // We've got a vertex of box one on a face of box two.
             // We use the same algorithm as above, but swap around
             // one and two (and therefore also the vector between their
             // centres).
-            Contact contact = CollideUtils.fillPointFaceBoxBox(two, one, toCentre.mult(-1.0f), data, ((Integer) best.get()) - 3, (Double) pen.get());
-            data.addContact(contact);
+            Contact contact = CollideUtils.fillPointFaceBoxBox(two, one, toCentre.mult(-1.0f), data, best - 3, pen);
+            // The faces of box two are the axis cases 3 to 5.
+            contact.setFeature(CollideUtils.boxFeature(3, contact.getFeature()));
             one.bindContact(contact);
             return 1;
         } else {
             // We've got an edge-edge contact. Find out which axes
-            best.set((Integer) best.get() - 6);
-            int oneAxisIndex = ((Integer) best.get()) / 3;
-            int twoAxisIndex = ((Integer) best.get()) % 3;
-            Vector3 oneAxis = one.getAxis(oneAxisIndex);
-            Vector3 twoAxis = two.getAxis(twoAxisIndex);
-            Vector3 axis = oneAxis.rest(twoAxis);
+            best -= 6;
+            Vector3 oneAxis = new Vector3();
+            Vector3 twoAxis = new Vector3();
+            int oneAxisIndex = best / 3;
+            int twoAxisIndex = best % 3;
+            one.getAxis(oneAxisIndex, oneAxis);
+            two.getAxis(twoAxisIndex, twoAxis);
+            oneAxis.vectorProduct(twoAxis, axis);
             axis.normalise();
 
             // The axis should point from box one to box two.
@@ -261,13 +253,13 @@ public class CollisionDetector {
             Vector3 vertex = CollideUtils.contactPoint(ptOnOneEdge, oneAxis, one.getHalfSize().get(oneAxisIndex), ptOnTwoEdge, twoAxis, two.getHalfSize().get(twoAxisIndex), bestSingleAxis > 2);
 
             // We can fill the contact.
-            Contact contact = new Contact();
+            Contact contact = data.addContact();
 
-            contact.setPenetration((Double) pen.get());
+            contact.setPenetration(pen);
             contact.setContactNormal(axis);
             contact.setContactPoint(vertex);
             contact.setBodyData(one.getBody(), two.getBody(), data.getFriction(), data.getRestitution());
-            data.addContact(contact);
+            contact.setFeature(CollideUtils.boxFeature(best + 6, 0));
             one.bindContact(contact);
             return 1;
         }
@@ -300,7 +292,7 @@ public class CollisionDetector {
         }
 
         // Compile the contact
-        Contact contact = new Contact();
+        Contact contact = data.addContact();
         contact.setContactNormal(normal);
         contact.setContactPoint(point);
         contact.setPenetration(min_depth);
@@ -309,8 +301,7 @@ public class CollisionDetector {
         // belongs to, so we just use NULL. Where this is called
         // this value can be left, or filled in.
         contact.setBodyData(box.getBody(), null, data.getFriction(), data.getRestitution());
-
-        data.addContact(contact);
+        contact.setFeature(0);
         box.bindContact(contact);
         return 1;
     }
@@ -351,14 +342,13 @@ public class CollisionDetector {
         // Compile the contact
         Vector3 closestPtWorld = box.getTransform().transform(closestPt);
 
-        Contact contact = new Contact();
+        Contact contact = data.addContact();
         contact.setContactNormal(closestPtWorld.sub(centre));
         contact.getContactNormal().normalise();
         contact.setContactPoint(closestPtWorld);
         contact.setPenetration(sphere.getRadius() - Math.sqrt(dist));
         contact.setBodyData(box.getBody(), sphere.getBody(), data.getFriction(), data.getRestitution());
-
-        data.addContact(contact);
+        contact.setFeature(0);
         box.bindContact(contact);
         return true;
     }
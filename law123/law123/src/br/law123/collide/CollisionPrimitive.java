@@ -35,11 +35,23 @@ public class CollisionPrimitive implements ContactListener {
         return body;
     }
 
+    /**
+     * Returns the body set with {@link #setBody}, even where a subclass
+     * hands out copies of it from {@link #getBody()}. Use it to identify
+     * the body; contacts still take the one from {@link #getBody()}.
+     */
+    public final RigidBody getEngineBody() {
+        return body;
+    }
+
     /**
      * Calculates the internals for the primitive.
      */
     public void calculateInternals() {
-        transform = body.getTransform().mult(offset);
+        if (transform == null) {
+            transform = new Matrix4();
+        }
+        body.getTransform().mult(offset, transform);
     }
 
     /**
@@ -50,6 +62,14 @@ public class CollisionPrimitive implements ContactListener {
         return transform.getAxisVector(index);
     }
 
+    /**
+     * Writes one of the axis vectors of the transform for this
+     * primitive into the destination.
+     */
+    public void getAxis(int index, Vector3 out) {
+        transform.getAxisVector(index, out);
+    }
+
     /**
      * Returns the resultant transform of the primitive, calculated from
      * the combined offset of the primitive and the transform
@@ -0,0 +1,596 @@
+package br.law123.collide;
+
+import java.util.Arrays;
+
+/**
+ * A dynamic bounding volume hierarchy of axis-aligned boxes, for the broad
+ * phase and for spatial queries over objects that move every frame.
+ * <p>
+ * Each object is a proxy: a leaf holding a fat box, which is the tight box
+ * of the object grown by a margin and by its predicted displacement. Small
+ * movements stay inside the fat box and do not touch the tree. When an
+ * object escapes it, the leaf is removed and inserted again, and only the
+ * boxes of its ancestors are refitted on the way up. Inserting picks the
+ * sibling by the surface area heuristic, and every node on the refit path
+ * is rebalanced by rotations (as in an AVL tree), so the height stays
+ * logarithmic whatever the insertion order.
+ * <p>
+ * Nodes live in int-indexed arrays with a free list, instead of linked
+ * objects. A proxy id is the index of its leaf, and stays valid until the
+ * proxy is destroyed. Once the pool has grown, creating, moving and
+ * destroying proxies and running queries do not allocate.
+ * <p>
+ * The tree is not thread-safe: queries share one traversal stack.
+ *
+ * @param <T> type of the data attached to each proxy.
+ */
+public class DynamicAABBTree<T> {
+
+    public static final int NULL_NODE = -1;
+
+    /**
+     * The default margin added to each side of the tight box.
+     */
+    public static final double DEFAULT_MARGIN = 0.1;
+
+    /**
+     * How many displacements ahead the fat box is stretched in
+     * the direction of the movement.
+     */
+    private static final double DISPLACEMENT_MULTIPLIER = 2;
+
+    /**
+     * Receives the proxies whose fat boxes overlap a query box.
+     */
+    public interface QueryCallback<T> {
+
+        /**
+         * @return <code>false</code> to stop the query.
+         */
+        boolean found(int proxy, T data);
+    }
+
+    /**
+     * Receives the proxies whose fat boxes are crossed by a ray.
+     */
+    public interface RayCallback<T> {
+
+        /**
+         * Tests the ray against the object itself.
+         *
+         * @param maxDistance the current length of the ray.
+         * @return the new length of the ray: the distance of the hit,
+         *         to keep only closer objects, the same maxDistance to
+         *         ignore this object, or 0 to stop the query.
+         */
+        double hit(int proxy, T data, double maxDistance);
+    }
+
+    /**
+     * Receives each pair of proxies whose fat boxes overlap.
+     */
+    public interface PairCallback<T> {
+
+        void pair(int proxyA, T a, int proxyB, T b);
+    }
+
+    private final double margin;
+
+    // node pool: 6 bounds per node (min x, y, z, max x, y, z)
+    private double[] bounds;
+    private int[] parent;
+    private int[] child1;
+    private int[] child2;
+    private int[] height;
+    private Object[] userData;
+    private int capacity;
+
+    private int root = NULL_NODE;
+    private int freeList = NULL_NODE;
+    private int nodeCount;
+    private int proxyCount;
+
+    private int[] stack = new int[64];
+
+    public DynamicAABBTree() {
+        this(DEFAULT_MARGIN, 16);
+    }
+
+    public DynamicAABBTree(double margin, int capacity) {
+        this.margin = margin;
+        this.capacity = 0;
+        bounds = new double[0];
+        parent = new int[0];
+        child1 = new int[0];
+        child2 = new int[0];
+        height = new int[0];
+        userData = new Object[0];
+        grow(Math.max(capacity, 2));
+    }
+
+    /**
+     * Creates a proxy for an object with the given tight box.
+     *
+     * @return the proxy id.
+     */
+    public int createProxy(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, T data) {
+        int proxy = allocateNode();
+        int b = proxy * 6;
+        bounds[b] = minX - margin;
+        bounds[b + 1] = minY - margin;
+        bounds[b + 2] = minZ - margin;
+        bounds[b + 3] = maxX + margin;
+        bounds[b + 4] = maxY + margin;
+        bounds[b + 5] = maxZ + margin;
+        userData[proxy] = data;
+        height[proxy] = 0;
+        insertLeaf(proxy);
+        proxyCount++;
+        return proxy;
+    }
+
+    /**
+     * Removes the proxy from the tree.
+     */
+    public void destroyProxy(int proxy) {
+        checkProxy(proxy);
+        removeLeaf(proxy);
+        freeNode(proxy);
+        proxyCount--;
+    }
+
+    /**
+     * Updates the tight box of the object. Nothing changes while the
+     * box is inside the proxy's fat box; otherwise the leaf is
+     * reinserted with a new fat box, stretched along the displacement
+     * of the object since the last step.
+     *
+     * @return <code>true</code> if the leaf was reinserted.
+     */
+    public boolean moveProxy(int proxy, double minX, double minY, double minZ, double maxX, double maxY, double maxZ, double dx, double dy, double dz) {
+        checkProxy(proxy);
+        int b = proxy * 6;
+        if (bounds[b] <= minX && bounds[b + 1] <= minY && bounds[b + 2] <= minZ && maxX <= bounds[b + 3] && maxY <= bounds[b + 4] && maxZ <= bounds[b + 5]) {
+            return false;
+        }
+        removeLeaf(proxy);
+
+        dx *= DISPLACEMENT_MULTIPLIER;
+        dy *= DISPLACEMENT_MULTIPLIER;
+        dz *= DISPLACEMENT_MULTIPLIER;
+        bounds[b] = minX - margin + Math.min(dx, 0);
+        bounds[b + 1] = minY - margin + Math.min(dy, 0);
+        bounds[b + 2] = minZ - margin + Math.min(dz, 0);
+        bounds[b + 3] = maxX + margin + Math.max(dx, 0);
+        bounds[b + 4] = maxY + margin + Math.max(dy, 0);
+        bounds[b + 5] = maxZ + margin + Math.max(dz, 0);
+
+        insertLeaf(proxy);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getUserData(int proxy) {
+        checkProxy(proxy);
+        return (T) userData[proxy];
+    }
+
+    /**
+     * Copies the fat box of the proxy (min x, y, z, max x, y, z).
+     */
+    public void getFatBounds(int proxy, double[] out) {
+        checkProxy(proxy);
+        System.arraycopy(bounds, proxy * 6, out, 0, 6);
+    }
+
+    public int getProxyCount() {
+        return proxyCount;
+    }
+
+    /**
+     * @return the height of the tree, 0 for a single leaf and -1 when
+     *         empty.
+     */
+    public int getHeight() {
+        return root == NULL_NODE ? -1 : height[root];
+    }
+
+    /**
+     * Reports every proxy whose fat box overlaps the given box.
+     */
+    @SuppressWarnings("unchecked")
+    public void query(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, QueryCallback<T> callback) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * 6;
+            if (bounds[b] > maxX || bounds[b + 1] > maxY || bounds[b + 2] > maxZ || minX > bounds[b + 3] || minY > bounds[b + 4] || minZ > bounds[b + 5]) {
+                continue;
+            }
+            if (height[node] == 0) {
+                if (!callback.found(node, (T) userData[node])) {
+                    return;
+                }
+            } else {
+                top = push(top, child1[node], child2[node]);
+            }
+        }
+    }
+
+    /**
+     * Casts a ray from the origin along the direction (which does not
+     * need to be normalised; distances are in multiples of it), and
+     * reports the proxies whose fat boxes it crosses, in no particular
+     * order. The callback can shorten the ray to prune farther objects.
+     */
+    @SuppressWarnings("unchecked")
+    public void raycast(double ox, double oy, double oz, double dx, double dy, double dz, double maxDistance, RayCallback<T> callback) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            if (!rayOverlaps(node, ox, oy, oz, dx, dy, dz, maxDistance)) {
+                continue;
+            }
+            if (height[node] == 0) {
+                double value = callback.hit(node, (T) userData[node], maxDistance);
+                if (value <= 0) {
+                    return;
+                }
+                maxDistance = Math.min(maxDistance, value);
+            } else {
+                top = push(top, child1[node], child2[node]);
+            }
+        }
+    }
+
+    /**
+     * Reports every pair of proxies whose fat boxes overlap, once per
+     * pair. Each leaf is queried against the tree, so the cost is
+     * proportional to n log n plus the number of pairs.
+     */
+    @SuppressWarnings("unchecked")
+    public void queryPairs(PairCallback<T> callback) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        for (int leaf = 0; leaf < capacity; leaf++) {
+            if (height[leaf] != 0) {
+                continue;
+            }
+            int l = leaf * 6;
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                int node = stack[--top];
+                int b = node * 6;
+                if (bounds[b] > bounds[l + 3] || bounds[b + 1] > bounds[l + 4] || bounds[b + 2] > bounds[l + 5] || bounds[l] > bounds[b + 3] || bounds[l + 1] > bounds[b + 4] || bounds[l + 2] > bounds[b + 5]) {
+                    continue;
+                }
+                if (height[node] == 0) {
+                    // each pair is reported by its lower leaf
+                    if (node > leaf) {
+                        callback.pair(leaf, (T) userData[leaf], node, (T) userData[node]);
+                    }
+                } else {
+                    top = push(top, child1[node], child2[node]);
+                }
+            }
+        }
+    }
+
+    private int push(int top, int a, int b) {
+        if (top + 2 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = a;
+        stack[top++] = b;
+        return top;
+    }
+
+    private boolean rayOverlaps(int node, double ox, double oy, double oz, double dx, double dy, double dz, double maxDistance) {
+        int b = node * 6;
+        double enter = 0;
+        double exit = maxDistance;
+        for (int k = 0; k < 3; k++) {
+            double o = k == 0 ? ox : k == 1 ? oy : oz;
+            double d = k == 0 ? dx : k == 1 ? dy : dz;
+            double min = bounds[b + k];
+            double max = bounds[b + k + 3];
+            if (d == 0) {
+                if (o < min || o > max) {
+                    return false;
+                }
+                continue;
+            }
+            double inverse = 1 / d;
+            double t1 = (min - o) * inverse;
+            double t2 = (max - o) * inverse;
+            if (t1 > t2) {
+                double t = t1;
+                t1 = t2;
+                t2 = t;
+            }
+            enter = Math.max(enter, t1);
+            exit = Math.min(exit, t2);
+            if (enter > exit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL_NODE) {
+            root = leaf;
+            parent[root] = NULL_NODE;
+            return;
+        }
+
+        // Find the best sibling by the surface area heuristic: the cost
+        // of a new parent here against the cost of going down.
+        int index = root;
+        while (height[index] > 0) {
+            int c1 = child1[index];
+            int c2 = child2[index];
+
+            double area = area(index);
+            double combinedArea = combinedArea(index, leaf);
+
+            // Cost of creating a new parent for this node and the leaf
+            double cost = 2 * combinedArea;
+
+            // Minimum cost of pushing the leaf further down the tree
+            double inheritance = 2 * (combinedArea - area);
+            double cost1 = descendCost(c1, leaf) + inheritance;
+            double cost2 = descendCost(c2, leaf) + inheritance;
+
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? c1 : c2;
+        }
+        int sibling = index;
+
+        // Create a new parent for the sibling and the leaf
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        userData[newParent] = null;
+        union(sibling, leaf, newParent);
+        height[newParent] = height[sibling] + 1;
+
+        if (oldParent != NULL_NODE) {
+            if (child1[oldParent] == sibling) {
+                child1[oldParent] = newParent;
+            } else {
+                child2[oldParent] = newParent;
+            }
+        } else {
+            root = newParent;
+        }
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        refit(parent[leaf]);
+    }
+
+    private double descendCost(int child, int leaf) {
+        double combined = combinedArea(child, leaf);
+        if (height[child] == 0) {
+            return combined;
+        }
+        return combined - area(child);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL_NODE;
+            return;
+        }
+        int oldParent = parent[leaf];
+        int grandParent = parent[oldParent];
+        int sibling = child1[oldParent] == leaf ? child2[oldParent] : child1[oldParent];
+
+        if (grandParent != NULL_NODE) {
+            // Connect the sibling to the grand parent and refit the
+            // ancestors
+            if (child1[grandParent] == oldParent) {
+                child1[grandParent] = sibling;
+            } else {
+                child2[grandParent] = sibling;
+            }
+            parent[sibling] = grandParent;
+            freeNode(oldParent);
+            refit(grandParent);
+        } else {
+            root = sibling;
+            parent[sibling] = NULL_NODE;
+            freeNode(oldParent);
+        }
+    }
+
+    /**
+     * Walks from the node up to the root, balancing each node and
+     * recalculating its box and height from its children.
+     */
+    private void refit(int index) {
+        while (index != NULL_NODE) {
+            index = balance(index);
+
+            int c1 = child1[index];
+            int c2 = child2[index];
+            height[index] = 1 + Math.max(height[c1], height[c2]);
+            union(c1, c2, index);
+
+            index = parent[index];
+        }
+    }
+
+    /**
+     * Performs a left or right rotation if the node is imbalanced.
+     *
+     * @return the new root of the subtree.
+     */
+    private int balance(int a) {
+        if (height[a] < 2) {
+            return a;
+        }
+        int b = child1[a];
+        int c = child2[a];
+        int balance = height[c] - height[b];
+
+        // Rotate C up
+        if (balance > 1) {
+            int f = child1[c];
+            int g = child2[c];
+
+            child1[c] = a;
+            parent[c] = parent[a];
+            parent[a] = c;
+            replaceChild(parent[c], a, c);
+
+            if (height[f] > height[g]) {
+                child2[c] = f;
+                child2[a] = g;
+                parent[g] = a;
+                union(b, g, a);
+                union(a, f, c);
+                height[a] = 1 + Math.max(height[b], height[g]);
+                height[c] = 1 + Math.max(height[a], height[f]);
+            } else {
+                child2[c] = g;
+                child2[a] = f;
+                parent[f] = a;
+                union(b, f, a);
+                union(a, g, c);
+                height[a] = 1 + Math.max(height[b], height[f]);
+                height[c] = 1 + Math.max(height[a], height[g]);
+            }
+            return c;
+        }
+
+        // Rotate B up
+        if (balance < -1) {
+            int d = child1[b];
+            int e = child2[b];
+
+            child1[b] = a;
+            parent[b] = parent[a];
+            parent[a] = b;
+            replaceChild(parent[b], a, b);
+
+            if (height[d] > height[e]) {
+                child2[b] = d;
+                child1[a] = e;
+                parent[e] = a;
+                union(c, e, a);
+                union(a, d, b);
+                height[a] = 1 + Math.max(height[c], height[e]);
+                height[b] = 1 + Math.max(height[a], height[d]);
+            } else {
+                child2[b] = e;
+                child1[a] = d;
+                parent[d] = a;
+                union(c, d, a);
+                union(a, e, b);
+                height[a] = 1 + Math.max(height[c], height[d]);
+                height[b] = 1 + Math.max(height[a], height[e]);
+            }
+            return b;
+        }
+        return a;
+    }
+
+    private void replaceChild(int node, int oldChild, int newChild) {
+        if (node == NULL_NODE) {
+            root = newChild;
+        } else if (child1[node] == oldChild) {
+            child1[node] = newChild;
+        } else {
+            child2[node] = newChild;
+        }
+    }
+
+    private void union(int one, int two, int out) {
+        int a = one * 6;
+        int b = two * 6;
+        int o = out * 6;
+        for (int k = 0; k < 3; k++) {
+            bounds[o + k] = Math.min(bounds[a + k], bounds[b + k]);
+            bounds[o + k + 3] = Math.max(bounds[a + k + 3], bounds[b + k + 3]);
+        }
+    }
+
+    private double area(int node) {
+        int b = node * 6;
+        double x = bounds[b + 3] - bounds[b];
+        double y = bounds[b + 4] - bounds[b + 1];
+        double z = bounds[b + 5] - bounds[b + 2];
+        return 2 * (x * y + y * z + z * x);
+    }
+
+    private double combinedArea(int one, int two) {
+        int a = one * 6;
+        int b = two * 6;
+        double x = Math.max(bounds[a + 3], bounds[b + 3]) - Math.min(bounds[a], bounds[b]);
+        double y = Math.max(bounds[a + 4], bounds[b + 4]) - Math.min(bounds[a + 1], bounds[b + 1]);
+        double z = Math.max(bounds[a + 5], bounds[b + 5]) - Math.min(bounds[a + 2], bounds[b + 2]);
+        return 2 * (x * y + y * z + z * x);
+    }
+
+    private int allocateNode() {
+        if (freeList == NULL_NODE) {
+            grow(capacity * 2);
+        }
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = NULL_NODE;
+        child1[node] = NULL_NODE;
+        child2[node] = NULL_NODE;
+        height[node] = 0;
+        nodeCount++;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        parent[node] = freeList;
+        height[node] = -1;
+        userData[node] = null;
+        freeList = node;
+        nodeCount--;
+    }
+
+    private void grow(int newCapacity) {
+        bounds = Arrays.copyOf(bounds, newCapacity * 6);
+        parent = Arrays.copyOf(parent, newCapacity);
+        child1 = Arrays.copyOf(child1, newCapacity);
+        child2 = Arrays.copyOf(child2, newCapacity);
+        height = Arrays.copyOf(height, newCapacity);
+        userData = Arrays.copyOf(userData, newCapacity);
+
+        // thread the new nodes into the free list
+        for (int i = newCapacity - 1; i >= capacity; i--) {
+            parent[i] = freeList;
+            height[i] = -1;
+            freeList = i;
+        }
+        capacity = newCapacity;
+    }
+
+    private void checkProxy(int proxy) {
+        if (proxy < 0 || proxy >= capacity || height[proxy] != 0) {
+            throw new IllegalArgumentException("Invalid proxy: " + proxy);
+        }
+    }
+
+}
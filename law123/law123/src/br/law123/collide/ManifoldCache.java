@@ -0,0 +1,483 @@
+package br.law123.collide;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import br.law123.collide.util.BoxCollisor;
+import br.law123.collide.util.PlaneCollisor;
+import br.law123.core.Matrix4;
+import br.law123.core.Vector3;
+import br.law123.rigidbody.RigidBody;
+import br.law123.rigidbody.contact.Contact;
+
+/**
+ * Keeps the contacts of each pair of bodies from one step to the next,
+ * as a manifold of up to four points per pair.
+ *
+ * Each point is anchored to the two bodies, so it can be refreshed in
+ * place when they move: its penetration is measured again along its
+ * normal, and it is dropped once the bodies separate or slide apart by
+ * more than the breaking threshold. A box-box test finds one contact per
+ * step; the manifold adds the points found in the previous steps, so a
+ * resting box is held by several points. Points keep the feature id of
+ * the contact that created them, so a warm-started solver finds them
+ * again.
+ *
+ * While the transform of one body relative to the other stays within
+ * the linear and angular thresholds of the one they had when the pair
+ * was last tested, the test is skipped and the refreshed points are
+ * used instead. The thresholds therefore bound the penetration a skipped
+ * step can miss.
+ *
+ * The pair is identified by the bodies bound to its primitives (see
+ * {@link CollisionPrimitive#getEngineBody()}); contacts against the scenery
+ * assume a single, fixed plane per body. {@link #endFrame()} must be
+ * called once per step, to drop the pairs that were not tested.
+ */
+public class ManifoldCache {
+
+    public static final int MAX_POINTS = 4;
+
+    private final Map<Key, Manifold> manifolds = new HashMap<Key, Manifold>();
+    private final Key probe = new Key();
+
+    private double breakingThreshold = 0.02;
+    private double linearThreshold = 0.01;
+    private double angularThreshold = 0.02;
+
+    private int skipped;
+
+    // Scratch values, so a refreshed step does not allocate.
+    private final double[] transform = new double[12];
+    private final Vector3 pointOne = new Vector3();
+    private final Vector3 pointTwo = new Vector3();
+    private final Vector3 separation = new Vector3();
+
+    public double getBreakingThreshold() {
+        return breakingThreshold;
+    }
+
+    /**
+     * @param breakingThreshold distance the two anchors of a point may
+     *        separate, or slide apart, before the point is dropped.
+     */
+    public void setBreakingThreshold(double breakingThreshold) {
+        this.breakingThreshold = breakingThreshold;
+    }
+
+    /**
+     * @param linearThreshold relative movement, in distance, under which
+     *        the narrow phase is skipped.
+     * @param angularThreshold relative rotation, as the largest change in
+     *        a rotation matrix entry, under which it is skipped.
+     */
+    public void setSkipThresholds(double linearThreshold, double angularThreshold) {
+        this.linearThreshold = linearThreshold;
+        this.angularThreshold = angularThreshold;
+    }
+
+    /**
+     * Returns the number of pair tests skipped since the last call.
+     */
+    public int getSkipped() {
+        int result = skipped;
+        skipped = 0;
+        return result;
+    }
+
+    public int size() {
+        return manifolds.size();
+    }
+
+    /**
+     * Generates the contacts of two boxes, as
+     * {@link CollisionDetector#boxAndBox}, plus the points kept from the
+     * previous steps.
+     */
+    public <B extends CollisionPrimitive & BoxCollisor> int boxAndBox(B one, B two, CollisionData data) {
+        Manifold manifold = get(one.getEngineBody(), two.getEngineBody());
+        relativeTransform(one.getTransform(), two.getTransform(), transform);
+        if (manifold.canSkip(transform, linearThreshold, angularThreshold)) {
+            skipped++;
+            return emit(manifold, one, two, data, false);
+        }
+
+        int start = data.size();
+        int overflow = data.getOverflow();
+        CollisionDetector.boxAndBox(one, two, data);
+        int end = data.size();
+        if (!merge(manifold, one, two, data, start, end, overflow)) {
+            return end - start;
+        }
+        for (int i = start; i < end; i++) {
+            completeFace(manifold, one, two, data.collectContacts().get(i));
+        }
+        return (end - start) + emit(manifold, one, two, data, true);
+    }
+
+    /**
+     * Generates the contacts of a box and a half-space, as
+     * {@link CollisionDetector#boxAndHalfSpace}, plus the points kept
+     * from the previous steps.
+     */
+    public <B extends CollisionPrimitive & BoxCollisor, P extends PlaneCollisor> int boxAndHalfSpace(B box, P plane, CollisionData data) {
+        if (!data.hasMoreContacts()) return 0;
+
+        Manifold manifold = get(box.getEngineBody(), null);
+        relativeTransform(box.getTransform(), null, transform);
+        if (manifold.canSkip(transform, linearThreshold, angularThreshold)) {
+            skipped++;
+            return emit(manifold, box, null, data, false);
+        }
+
+        int start = data.size();
+        int overflow = data.getOverflow();
+        CollisionDetector.boxAndHalfSpace(box, plane, data);
+        int end = data.size();
+        if (!merge(manifold, box, null, data, start, end, overflow)) {
+            return end - start;
+        }
+        return (end - start) + emit(manifold, box, null, data, true);
+    }
+
+    /**
+     * Drops the pairs that were not tested since the last call.
+     */
+    public void endFrame() {
+        for (Iterator<Manifold> it = manifolds.values().iterator(); it.hasNext();) {
+            Manifold manifold = it.next();
+            if (!manifold.visited) {
+                it.remove();
+            } else {
+                manifold.visited = false;
+            }
+        }
+    }
+
+    public void clear() {
+        manifolds.clear();
+    }
+
+    private Manifold get(RigidBody one, RigidBody two) {
+        Manifold manifold = manifolds.get(probe.set(one, two));
+        if (manifold == null) {
+            manifold = new Manifold();
+            manifolds.put(new Key().set(one, two), manifold);
+        }
+        manifold.visited = true;
+        return manifold;
+    }
+
+    /**
+     * Merges the contacts the detector has just added to the data, in
+     * [start, end), into the manifold. The second primitive is null for
+     * the scenery.
+     * 
+     * @return false if there is nothing else to add for the pair.
+     */
+    private boolean merge(Manifold manifold, CollisionPrimitive one, CollisionPrimitive twoPrimitive, CollisionData data, int start, int end, int overflow) {
+        Matrix4 two = twoPrimitive == null ? null : twoPrimitive.getTransform();
+        System.arraycopy(transform, 0, manifold.transform, 0, 12);
+        manifold.tested = true;
+
+        // The new contacts are only known to be in [start, end) while
+        // the data has room; otherwise start again next step.
+        if (data.getOverflow() != overflow) {
+            manifold.count = 0;
+            manifold.tested = false;
+            return false;
+        }
+
+        // The detector is the judge of whether the pair touches at all.
+        if (end == start) {
+            manifold.count = 0;
+            return false;
+        }
+
+        manifold.refresh(one.getTransform(), two, breakingThreshold, pointOne, pointTwo, separation);
+        manifold.age();
+        for (int i = 0; i < manifold.count; i++) {
+            manifold.points[i].inData = false;
+        }
+        for (int i = start; i < end; i++) {
+            Contact contact = data.collectContacts().get(i);
+            // A vertex of box one on a face of box two (axis cases 3 to 5)
+            // comes with the bodies swapped; keep every contact of the
+            // pair in one order. The bodies may be copies made for this
+            // contact, so they can't tell the order themselves.
+            int axisCase = contact.getFeature() / 8;
+            if (two != null && axisCase >= 3 && axisCase < 6) {
+                RigidBody[] bodies = contact.getBody();
+                contact.getContactNormal().multToMe(-1);
+                contact.setBodyData(bodies[1], bodies[0], contact.getFriction(), contact.getRestitution());
+            }
+            manifold.add(contact.getContactNormal(), contact.getContactPoint(), contact.getPenetration(), contact.getFeature(), one.getTransform(), two, breakingThreshold, pointOne).inData = true;
+        }
+        return true;
+    }
+
+    /**
+     * The box-box test reports a single vertex when a vertex lies on a
+     * face, even if a whole face of the other box rests on it. This adds
+     * the other vertices of that box that are inside the face, with the
+     * feature ids the test would give them.
+     */
+    private <B extends CollisionPrimitive & BoxCollisor> void completeFace(Manifold manifold, B one, B two, Contact contact) {
+        int axisCase = contact.getFeature() / 8;
+        if (axisCase >= 6) return;
+
+        B reference = axisCase < 3 ? one : two;
+        B incident = axisCase < 3 ? two : one;
+        int axis = axisCase % 3;
+        Vector3 normal = contact.getContactNormal();
+        Vector3 halfSize = reference.getHalfSize();
+
+        // The normal points towards box one; find the face of the
+        // reference box that looks at the incident one.
+        reference.getAxis(axis, pointOne);
+        double side = pointOne.scalarProduct(normal) > 0 ? 1 : -1;
+        if (reference == one) side = -side;
+
+        for (int i = 0; i < 8; i++) {
+            int feature = CollideUtils.boxFeature(axisCase, i);
+            if (feature == contact.getFeature()) continue;
+
+            Vector3 vertex = pointTwo;
+            vertex.set(CollisionDetector.mults[i][0], CollisionDetector.mults[i][1], CollisionDetector.mults[i][2]);
+            vertex.componentProductUpdate(incident.getHalfSize());
+            incident.getTransform().transform(vertex, vertex);
+            reference.getTransform().transformInverse(vertex, separation);
+
+            double depth = halfSize.get(axis) - side * separation.get(axis);
+            if (depth < 0 || depth > 2 * halfSize.get(axis)) continue;
+            int u = (axis + 1) % 3;
+            int v = (axis + 2) % 3;
+            // (boxes of the same size put the vertices right on the edges)
+            if (Math.abs(separation.get(u)) > halfSize.get(u) + breakingThreshold || Math.abs(separation.get(v)) > halfSize.get(v) + breakingThreshold) continue;
+
+            manifold.add(normal, vertex, depth, feature, one.getTransform(), two.getTransform(), breakingThreshold, pointOne).inData = false;
+        }
+    }
+
+    /**
+     * Adds the touching points of the manifold to the data, skipping
+     * the ones the detector has already added. The second primitive is
+     * null for the scenery.
+     */
+    private int emit(Manifold manifold, CollisionPrimitive one, CollisionPrimitive two, CollisionData data, boolean olderOnly) {
+        if (!olderOnly) {
+            manifold.refresh(one.getTransform(), two == null ? null : two.getTransform(), breakingThreshold, pointOne, pointTwo, separation);
+        }
+        // taken once per call, as the detector does for each contact
+        RigidBody oneBody = null;
+        RigidBody twoBody = null;
+        int emitted = 0;
+        for (int i = 0; i < manifold.count; i++) {
+            Point point = manifold.points[i];
+            if ((olderOnly && point.inData) || point.penetration < 0) {
+                continue;
+            }
+            if (emitted == 0) {
+                oneBody = one.getBody();
+                twoBody = two == null ? null : two.getBody();
+            }
+            Contact contact = data.addContact();
+            contact.setContactNormal(point.normal);
+            contact.setContactPoint(point.world);
+            contact.setPenetration(point.penetration);
+            contact.setBodyData(oneBody, twoBody, data.getFriction(), data.getRestitution());
+            contact.setFeature(point.feature);
+            one.bindContact(contact);
+            emitted++;
+        }
+        return emitted;
+    }
+
+    /**
+     * Writes the transform of one relative to two (or to the world, if
+     * two is null): the rotation in the first nine entries, row by row,
+     * and the position in the last three.
+     */
+    private static void relativeTransform(Matrix4 one, Matrix4 two, double[] out) {
+        double[] a = one.getData();
+        if (two == null) {
+            for (int r = 0; r < 3; r++) {
+                out[r * 3] = a[r * 4];
+                out[r * 3 + 1] = a[r * 4 + 1];
+                out[r * 3 + 2] = a[r * 4 + 2];
+                out[9 + r] = a[r * 4 + 3];
+            }
+            return;
+        }
+        double[] b = two.getData();
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 3; c++) {
+                out[r * 3 + c] = b[r] * a[c] + b[r + 4] * a[c + 4] + b[r + 8] * a[c + 8];
+            }
+            out[9 + r] = b[r] * (a[3] - b[3]) + b[r + 4] * (a[7] - b[7]) + b[r + 8] * (a[11] - b[11]);
+        }
+    }
+
+    private static final class Manifold {
+
+        final Point[] points = new Point[MAX_POINTS];
+        // takes the contacts that don't fit
+        final Point spare = new Point();
+        int count;
+        // relative transform at the last test
+        final double[] transform = new double[12];
+        boolean tested;
+        boolean visited;
+
+        boolean canSkip(double[] current, double linearThreshold, double angularThreshold) {
+            if (!tested) return false;
+            for (int i = 0; i < 9; i++) {
+                if (Math.abs(current[i] - transform[i]) > angularThreshold) return false;
+            }
+            double dx = current[9] - transform[9];
+            double dy = current[10] - transform[10];
+            double dz = current[11] - transform[11];
+            return dx * dx + dy * dy + dz * dz <= linearThreshold * linearThreshold;
+        }
+
+        /**
+         * Moves the points with the bodies, measuring their penetration
+         * again and dropping the ones that broke.
+         */
+        void refresh(Matrix4 one, Matrix4 two, double breakingThreshold, Vector3 pointOne, Vector3 pointTwo, Vector3 separation) {
+            for (int i = count - 1; i >= 0; i--) {
+                Point point = points[i];
+                one.transform(point.localOne, pointOne);
+                if (two != null) {
+                    two.transform(point.localTwo, pointTwo);
+                } else {
+                    pointTwo.set(point.localTwo);
+                }
+                pointTwo.sub(pointOne, separation);
+                double penetration = separation.scalarProduct(point.normal);
+                separation.addScaledVector(point.normal, -penetration);
+                if (penetration < -breakingThreshold || separation.squareMagnitude() > breakingThreshold * breakingThreshold) {
+                    remove(i);
+                    continue;
+                }
+                point.world.set(pointOne);
+                point.penetration = penetration;
+            }
+        }
+
+        /**
+         * Adds a contact generated for the pair this step, replacing the
+         * point with the same feature, or one close enough to it. When
+         * the manifold is full the shallowest point not generated this
+         * step makes room.
+         * 
+         * @return the point, or a scratch one if there was no room.
+         */
+        Point add(Vector3 normal, Vector3 contactPoint, double penetration, int feature, Matrix4 one, Matrix4 two, double breakingThreshold, Vector3 scratch) {
+            int slot = -1;
+            double nearest = breakingThreshold * breakingThreshold;
+            for (int i = 0; i < count; i++) {
+                if (points[i].feature == feature) {
+                    slot = i;
+                    break;
+                }
+                points[i].world.sub(contactPoint, scratch);
+                double distance = scratch.squareMagnitude();
+                if (distance < nearest) {
+                    nearest = distance;
+                    slot = i;
+                }
+            }
+            if (slot < 0 && count < MAX_POINTS) {
+                if (points[count] == null) {
+                    points[count] = new Point();
+                }
+                slot = count++;
+            }
+            if (slot < 0) {
+                for (int i = 0; i < count; i++) {
+                    if (!points[i].fresh && (slot < 0 || points[i].penetration < points[slot].penetration)) {
+                        slot = i;
+                    }
+                }
+                if (slot < 0) return spare;
+            }
+            Point point = points[slot];
+            point.set(normal, contactPoint, penetration, feature, one, two);
+            return point;
+        }
+
+        /**
+         * Clears the marks of the points generated in the last step.
+         */
+        void age() {
+            for (int i = 0; i < count; i++) {
+                points[i].fresh = false;
+            }
+        }
+
+        private void remove(int index) {
+            Point removed = points[index];
+            points[index] = points[--count];
+            points[count] = removed;
+        }
+    }
+
+    private static final class Point {
+
+        // contact point on body one, and the point it should reach on
+        // body two (in the world, for the scenery), in body coordinates
+        final Vector3 localOne = new Vector3();
+        final Vector3 localTwo = new Vector3();
+        final Vector3 normal = new Vector3();
+        final Vector3 world = new Vector3();
+        double penetration;
+        int feature;
+        // generated in the current step
+        boolean fresh;
+        // already in the collision data, as added by the detector
+        boolean inData;
+
+        void set(Vector3 normal, Vector3 contactPoint, double penetration, int feature, Matrix4 one, Matrix4 two) {
+            this.normal.set(normal);
+            this.world.set(contactPoint);
+            this.penetration = penetration;
+            this.feature = feature;
+            fresh = true;
+
+            one.transformInverse(world, localOne);
+            localTwo.set(world);
+            localTwo.addScaledVector(normal, penetration);
+            if (two != null) {
+                two.transformInverse(localTwo, localTwo);
+            }
+        }
+    }
+
+    private static final class Key {
+
+        private RigidBody one;
+        private RigidBody two;
+        private int hash;
+
+        Key set(RigidBody one, RigidBody two) {
+            this.one = one;
+            this.two = two;
+            hash = System.identityHashCode(one) * 31 + System.identityHashCode(two);
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return one == other.one && two == other.two;
+        }
+    }
+}
@@ -67,6 +67,13 @@ public class Matrix3 {
         data[8] = m.getData(8);
     }
 
+    /**
+     * Copies the given matrix into this one.
+     */
+    public void set(Matrix3 m) {
+        System.arraycopy(m.data, 0, data, 0, 9);
+    }
+
     /**
      * Sets the matrix to be a diagonal matrix with the given
      * values along the leading diagonal.
@@ -146,6 +153,17 @@ public class Matrix3 {
         return new Vector3(vector.getX() * data[0] + vector.getY() * data[1] + vector.getZ() * data[2], vector.getX() * data[3] + vector.getY() * data[4] + vector.getZ() * data[5], vector.getX() * data[6] + vector.getY() * data[7] + vector.getZ() * data[8]);
     }
 
+    /**
+     * Transform the given vector by this matrix, writing the result
+     * to the destination vector, which may be the given one.
+     * 
+     * @param vector The vector to transform.
+     * @param out The destination.
+     */
+    public void mult(Vector3 vector, Vector3 out) {
+        transform(vector, out);
+    }
+
     /**
      * Transform the given vector by this matrix.
      * 
@@ -155,6 +173,22 @@ public class Matrix3 {
         return mult(vector);
     }
 
+    /**
+     * Transform the given vector by this matrix, writing the result
+     * to the destination vector, which may be the given one.
+     * 
+     * @param vector The vector to transform.
+     * @param out The destination.
+     */
+    public void transform(Vector3 vector, Vector3 out) {
+        double x = vector.getX();
+        double y = vector.getY();
+        double z = vector.getZ();
+        out.setX(x * data[0] + y * data[1] + z * data[2]);
+        out.setY(x * data[3] + y * data[4] + z * data[5]);
+        out.setZ(x * data[6] + y * data[7] + z * data[8]);
+    }
+
     /**
      * Transform the given vector by the transpose of this matrix.
      * 
@@ -164,6 +198,21 @@ public class Matrix3 {
         return new Vector3(vector.getX() * data[0] + vector.getY() * data[3] + vector.getZ() * data[6], vector.getX() * data[1] + vector.getY() * data[4] + vector.getZ() * data[7], vector.getX() * data[2] + vector.getY() * data[5] + vector.getZ() * data[8]);
     }
 
+    /**
+     * Transform the given vector by the transpose of this matrix,
+     * writing the result to the destination vector, which may be
+     * the given one.
+     * 
+     * @param vector The vector to transform.
+     * @param out The destination.
+     */
+    public void transformTranspose(Vector3 vector, Vector3 out) {
+        double x = vector.getX();
+        double y = vector.getY();
+        double z = vector.getZ();
+        out.set(x * data[0] + y * data[3] + z * data[6], x * data[1] + y * data[4] + z * data[7], x * data[2] + y * data[5] + z * data[8]);
+    }
+
     /**
      * Gets a vector representing one row in the matrix.
      * 
@@ -173,6 +222,16 @@ public class Matrix3 {
         return new Vector3(data[i * 3], data[i * 3 + 1], data[i * 3 + 2]);
     }
 
+    /**
+     * Writes one row of the matrix into the destination vector.
+     * 
+     * @param i The row to return.
+     * @param out The destination.
+     */
+    public void getRowVector(int i, Vector3 out) {
+        out.set(data[i * 3], data[i * 3 + 1], data[i * 3 + 2]);
+    }
+
     /**
      * Gets a vector representing one axis (i.e. one column) in the matrix.
      * 
@@ -184,6 +243,17 @@ public class Matrix3 {
         return new Vector3(data[i], data[i + 3], data[i + 6]);
     }
 
+    /**
+     * Writes one axis (i.e. one column) of the matrix into the
+     * destination vector.
+     * 
+     * @param i The column to return.
+     * @param out The destination.
+     */
+    public void getAxisVector(int i, Vector3 out) {
+        out.set(data[i], data[i + 3], data[i + 6]);
+    }
+
     /**
      * Sets the matrix to be the inverse of the given matrix.
      * 
@@ -272,6 +342,31 @@ public class Matrix3 {
                            data[6] * o.data[2] + data[7] * o.data[5] + data[8] * o.data[8]);
     }
 
+    /**
+     * Writes this matrix multiplied by the given other matrix into
+     * the destination, which may be this or the other matrix.
+     */
+    public void mult(Matrix3 o, Matrix3 out) {
+        double t0 = data[0] * o.data[0] + data[1] * o.data[3] + data[2] * o.data[6];
+        double t1 = data[0] * o.data[1] + data[1] * o.data[4] + data[2] * o.data[7];
+        double t2 = data[0] * o.data[2] + data[1] * o.data[5] + data[2] * o.data[8];
+        double t3 = data[3] * o.data[0] + data[4] * o.data[3] + data[5] * o.data[6];
+        double t4 = data[3] * o.data[1] + data[4] * o.data[4] + data[5] * o.data[7];
+        double t5 = data[3] * o.data[2] + data[4] * o.data[5] + data[5] * o.data[8];
+        double t6 = data[6] * o.data[0] + data[7] * o.data[3] + data[8] * o.data[6];
+        double t7 = data[6] * o.data[1] + data[7] * o.data[4] + data[8] * o.data[7];
+        double t8 = data[6] * o.data[2] + data[7] * o.data[5] + data[8] * o.data[8];
+        out.data[0] = t0;
+        out.data[1] = t1;
+        out.data[2] = t2;
+        out.data[3] = t3;
+        out.data[4] = t4;
+        out.data[5] = t5;
+        out.data[6] = t6;
+        out.data[7] = t7;
+        out.data[8] = t8;
+    }
+
     /**
      * Multiplies this matrix in place by the given other matrix.
      */
@@ -360,6 +455,15 @@ public class Matrix3 {
         return result;
     }
 
+    /**
+     * Interpolates a couple of matrices into the destination.
+     */
+    public static void linearInterpolate(Matrix3 a, Matrix3 b, double prop, Matrix3 out) {
+        for (int i = 0; i < 9; i++) {
+            out.data[i] = a.data[i] * (1 - prop) + b.data[i] * prop;
+        }
+    }
+
     @Override
     public String toString() {
         return "[" + data[0] + ", " + data[1] + ", " + data[2] + ", " + data[3] + ", " + data[4] + ", " + data[5] + ", " + data[6] + ", " + data[7] + ", " + data[8] + "]";
@@ -38,6 +38,13 @@ public class Matrix4 {
         this.data[i] = data;
     }
 
+    /**
+     * Copies the given matrix into this one.
+     */
+    public void set(Matrix4 m) {
+        System.arraycopy(m.data, 0, data, 0, 12);
+    }
+
     /**
      * Sets the matrix to be a diagonal matrix with the given coefficients.
      */
@@ -72,6 +79,41 @@ public class Matrix4 {
         return result;
     }
 
+    /**
+     * Writes this matrix multiplied by the given other matrix into
+     * the destination, which may be this or the other matrix.
+     */
+    public void mult(Matrix4 o, Matrix4 out) {
+        double t0 = (o.data[0] * data[0]) + (o.data[4] * data[1]) + (o.data[8] * data[2]);
+        double t4 = (o.data[0] * data[4]) + (o.data[4] * data[5]) + (o.data[8] * data[6]);
+        double t8 = (o.data[0] * data[8]) + (o.data[4] * data[9]) + (o.data[8] * data[10]);
+
+        double t1 = (o.data[1] * data[0]) + (o.data[5] * data[1]) + (o.data[9] * data[2]);
+        double t5 = (o.data[1] * data[4]) + (o.data[5] * data[5]) + (o.data[9] * data[6]);
+        double t9 = (o.data[1] * data[8]) + (o.data[5] * data[9]) + (o.data[9] * data[10]);
+
+        double t2 = (o.data[2] * data[0]) + (o.data[6] * data[1]) + (o.data[10] * data[2]);
+        double t6 = (o.data[2] * data[4]) + (o.data[6] * data[5]) + (o.data[10] * data[6]);
+        double t10 = (o.data[2] * data[8]) + (o.data[6] * data[9]) + (o.data[10] * data[10]);
+
+        double t3 = (o.data[3] * data[0]) + (o.data[7] * data[1]) + (o.data[11] * data[2]) + data[3];
+        double t7 = (o.data[3] * data[4]) + (o.data[7] * data[5]) + (o.data[11] * data[6]) + data[7];
+        double t11 = (o.data[3] * data[8]) + (o.data[7] * data[9]) + (o.data[11] * data[10]) + data[11];
+
+        out.data[0] = t0;
+        out.data[1] = t1;
+        out.data[2] = t2;
+        out.data[3] = t3;
+        out.data[4] = t4;
+        out.data[5] = t5;
+        out.data[6] = t6;
+        out.data[7] = t7;
+        out.data[8] = t8;
+        out.data[9] = t9;
+        out.data[10] = t10;
+        out.data[11] = t11;
+    }
+
     /**
      * Transform the given vector by this matrix.
      * 
@@ -101,6 +143,20 @@ public class Matrix4 {
         return mult(vector);
     }
 
+    /**
+     * Transform the given vector by this matrix, writing the result
+     * to the destination vector, which may be the given one.
+     * 
+     * @param vector The vector to transform.
+     * @param out The destination.
+     */
+    public void transform(Vector3 vector, Vector3 out) {
+        double x = vector.getX();
+        double y = vector.getY();
+        double z = vector.getZ();
+        out.set(x * data[0] + y * data[1] + z * data[2] + data[3], x * data[4] + y * data[5] + z * data[6] + data[7], x * data[8] + y * data[9] + z * data[10] + data[11]);
+    }
+
     /**
      * Returns the determinant of the matrix.
      */
@@ -166,6 +222,20 @@ public class Matrix4 {
         vector.getX() * data[8] + vector.getY() * data[9] + vector.getZ() * data[10]);
     }
 
+    /**
+     * Transform the given direction vector by this matrix, writing
+     * the result to the destination vector, which may be the given one.
+     * 
+     * @param vector The vector to transform.
+     * @param out The destination.
+     */
+    public void transformDirection(Vector3 vector, Vector3 out) {
+        double x = vector.getX();
+        double y = vector.getY();
+        double z = vector.getZ();
+        out.set(x * data[0] + y * data[1] + z * data[2], x * data[4] + y * data[5] + z * data[6], x * data[8] + y * data[9] + z * data[10]);
+    }
+
     /**
      * Transform the given direction vector by the
      * transformational inverse of this matrix.
@@ -190,6 +260,21 @@ public class Matrix4 {
         vector.getX() * data[2] + vector.getY() * data[6] + vector.getZ() * data[10]);
     }
 
+    /**
+     * Transform the given direction vector by the transformational
+     * inverse of this matrix, writing the result to the destination
+     * vector, which may be the given one.
+     * 
+     * @param vector The vector to transform.
+     * @param out The destination.
+     */
+    public void transformInverseDirection(Vector3 vector, Vector3 out) {
+        double x = vector.getX();
+        double y = vector.getY();
+        double z = vector.getZ();
+        out.set(x * data[0] + y * data[4] + z * data[8], x * data[1] + y * data[5] + z * data[9], x * data[2] + y * data[6] + z * data[10]);
+    }
+
     /**
      * Transform the given vector by the transformational inverse
      * of this matrix.
@@ -215,6 +300,22 @@ public class Matrix4 {
         tmp.getX() * data[2] + tmp.getY() * data[6] + tmp.getZ() * data[10]);
     }
 
+    /**
+     * Transform the given vector by the transformational inverse
+     * of this matrix, writing the result to the destination vector.
+     * Unlike {@link #transformInverse(Vector3)}, the given vector is
+     * not modified (unless it is also the destination).
+     * 
+     * @param vector The vector to transform.
+     * @param out The destination.
+     */
+    public void transformInverse(Vector3 vector, Vector3 out) {
+        double x = vector.getX() - data[3];
+        double y = vector.getY() - data[7];
+        double z = vector.getZ() - data[11];
+        out.set(x * data[0] + y * data[4] + z * data[8], x * data[1] + y * data[5] + z * data[9], x * data[2] + y * data[6] + z * data[10]);
+    }
+
     /**
      * Gets a vector representing one axis (i.e. one column) in the matrix.
      * 
@@ -227,6 +328,18 @@ public class Matrix4 {
         return new Vector3(data[i], data[i + 4], data[i + 8]);
     }
 
+    /**
+     * Writes one axis (i.e. one column) of the matrix into the
+     * destination vector.
+     * 
+     * @param i The row to return. Row 3 corresponds to the position
+     *            of the transform matrix.
+     * @param out The destination.
+     */
+    public void getAxisVector(int i, Vector3 out) {
+        out.set(data[i], data[i + 4], data[i + 8]);
+    }
+
     /**
      * Sets this matrix to be the rotation matrix corresponding to
      * the given quaternion.
@@ -126,6 +126,23 @@ public class Quaternion {
         this.k = k;
     }
 
+    /**
+     * Sets the components of this quaternion.
+     */
+    public void set(double r, double i, double j, double k) {
+        this.r = r;
+        this.i = i;
+        this.j = j;
+        this.k = k;
+    }
+
+    /**
+     * Copies the given quaternion into this one.
+     */
+    public void set(Quaternion q) {
+        set(q.r, q.i, q.j, q.k);
+    }
+
     /**
      * Normalises the quaternion to unit length, making it a valid orientation
      * quaternion.
@@ -154,11 +171,27 @@ public class Quaternion {
      *            The quaternion by which to multiply.
      */
     public void multToMe(Quaternion multiplier) {
-        Quaternion q = new Quaternion(this);
-        r = q.r * multiplier.r - q.i * multiplier.i - q.j * multiplier.j - q.k * multiplier.k;
-        i = q.r * multiplier.i + q.i * multiplier.r + q.j * multiplier.k - q.k * multiplier.j;
-        j = q.r * multiplier.j + q.j * multiplier.r + q.k * multiplier.i - q.i * multiplier.k;
-        k = q.r * multiplier.k + q.k * multiplier.r + q.i * multiplier.j - q.j * multiplier.i;
+        double qr = r, qi = i, qj = j, qk = k;
+        r = qr * multiplier.r - qi * multiplier.i - qj * multiplier.j - qk * multiplier.k;
+        i = qr * multiplier.i + qi * multiplier.r + qj * multiplier.k - qk * multiplier.j;
+        j = qr * multiplier.j + qj * multiplier.r + qk * multiplier.i - qi * multiplier.k;
+        k = qr * multiplier.k + qk * multiplier.r + qi * multiplier.j - qj * multiplier.i;
+    }
+
+    /**
+     * Writes this quaternion multiplied by the given quaternion into the
+     * destination, which may be this or the multiplier.
+     * 
+     * @param multiplier
+     *            The quaternion by which to multiply.
+     * @param out
+     *            The destination.
+     */
+    public void mult(Quaternion multiplier, Quaternion out) {
+        out.set(r * multiplier.r - i * multiplier.i - j * multiplier.j - k * multiplier.k, //
+                r * multiplier.i + i * multiplier.r + j * multiplier.k - k * multiplier.j, //
+                r * multiplier.j + j * multiplier.r + k * multiplier.i - i * multiplier.k, //
+                r * multiplier.k + k * multiplier.r + i * multiplier.j - j * multiplier.i);
     }
 
     /**
@@ -172,12 +205,18 @@ public class Quaternion {
      *            The amount of the vector to add.
      */
     public void addScaledVector(Vector3 vector, double scale) {
-        Quaternion q = new Quaternion(0, vector.getX() * scale, vector.getY() * scale, vector.getZ() * scale);
-        q.multToMe(this);
-        r += q.r * (0.5);
-        i += q.i * (0.5);
-        j += q.j * (0.5);
-        k += q.k * (0.5);
+        // (0, vector * scale) * this, expanded to avoid the temporary
+        double x = vector.getX() * scale;
+        double y = vector.getY() * scale;
+        double z = vector.getZ() * scale;
+        double qr = -x * i - y * j - z * k;
+        double qi = x * r + y * k - z * j;
+        double qj = y * r + z * i - x * k;
+        double qk = z * r + x * j - y * i;
+        r += qr * (0.5);
+        i += qi * (0.5);
+        j += qj * (0.5);
+        k += qk * (0.5);
     }
 
     public void rotateByVector(Vector3 vector) {
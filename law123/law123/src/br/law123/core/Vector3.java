@@ -84,6 +84,20 @@ public class Vector3 {
 			z = value;
 	}
 
+	/** Sets the components of this vector. */
+	public void set(double x, double y, double z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	/** Copies the components of the given vector into this. */
+	public void set(Vector3 v) {
+		x = v.x;
+		y = v.y;
+		z = v.z;
+	}
+
 	/** Adds the given vector to this. */
 	public void sumToMe(Vector3 v) {
 		x += v.x;
@@ -98,6 +112,14 @@ public class Vector3 {
 		return new Vector3(x + v.x, y + v.y, z + v.z);
 	}
 
+	/**
+	 * Writes the value of the given vector added to this into the
+	 * destination, which may be this or the given vector.
+	 */
+	public void sum(Vector3 v, Vector3 out) {
+		out.set(x + v.x, y + v.y, z + v.z);
+	}
+
 	/** Subtracts the given vector from this. */
 	public void subToMe(Vector3 v) {
 		x -= v.x;
@@ -112,6 +134,14 @@ public class Vector3 {
 		return new Vector3(x - v.x, y - v.y, z - v.z);
 	}
 
+	/**
+	 * Writes the value of the given vector subtracted from this into the
+	 * destination, which may be this or the given vector.
+	 */
+	public void sub(Vector3 v, Vector3 out) {
+		out.set(x - v.x, y - v.y, z - v.z);
+	}
+
 	/** Multiplies this vector by the given scalar. */
 	public void multToMe(double value) {
 		x *= value;
@@ -124,6 +154,11 @@ public class Vector3 {
 		return new Vector3(x * value, y * value, z * value);
 	}
 
+	/** Writes this vector scaled by the given value into the destination. */
+	public void mult(double value, Vector3 out) {
+		out.set(x * value, y * value, z * value);
+	}
+
 	/**
 	 * Calculates and returns a component-wise product of this vector with the
 	 * given vector.
@@ -132,6 +167,14 @@ public class Vector3 {
 		return new Vector3(x * vector.x, y * vector.y, z * vector.z);
 	}
 
+	/**
+	 * Writes the component-wise product of this vector with the given
+	 * vector into the destination.
+	 */
+	public void componentProduct(Vector3 vector, Vector3 out) {
+		out.set(x * vector.x, y * vector.y, z * vector.z);
+	}
+
 	/**
 	 * Performs a component-wise product with the given vector and sets this
 	 * vector to its result.
@@ -151,16 +194,22 @@ public class Vector3 {
 				* vector.z, x * vector.y - y * vector.x);		
 	}
 
+	/**
+	 * Writes the vector product of this vector with the given vector into
+	 * the destination, which may be this or the given vector.
+	 */
+	public void vectorProduct(Vector3 vector, Vector3 out) {
+		out.set(y * vector.z - z * vector.y, z * vector.x - x * vector.z, x
+				* vector.y - y * vector.x);
+	}
+
 	/**
 	 * Updates this vector to be the vector product of its current value and the
 	 * given vector.
 	 */
 	public void restToMe(Vector3 vector) {
-		Vector3 v = vectorProduct(vector);
-		this.x = v.x;
-		this.y = v.y;
-		this.z = v.z;
-		this.pad = v.pad;
+		vectorProduct(vector, this);
+		this.pad = 0;
 	}
 
 	/**
@@ -172,6 +221,14 @@ public class Vector3 {
 				* vector.z, x * vector.y - y * vector.x);
 	}
 
+	/**
+	 * Writes the vector product of this vector with the given vector into
+	 * the destination, which may be this or the given vector.
+	 */
+	public void rest(Vector3 vector, Vector3 out) {
+		vectorProduct(vector, out);
+	}
+
 	/**
 	 * Calculates and returns the scalar product of this vector with the given
 	 * vector.
@@ -232,6 +289,12 @@ public class Vector3 {
 		return result;
 	}
 
+	/** Writes the normalised version of this vector into the destination. */
+	public void unit(Vector3 out) {
+		out.set(this);
+		out.normalise();
+	}
+
 	/** Checks if the two vectors have identical components. */
 	public boolean isEquals(Vector3 other) {
 		return x == other.x && y == other.y && z == other.z;
@@ -37,6 +37,22 @@ public class RigidBody implements Cloneable {
 
 	private Vector3 lastFrameAcceleration = new Vector3();
 
+	// temporrios e fatores de amortecimento da integrao, reaproveitados
+	private final Vector3 angularAcceleration = new Vector3();
+	private double cachedDuration = Double.NaN;
+	private double cachedLinearDamping = Double.NaN;
+	private double cachedAngularDamping = Double.NaN;
+	private double linearDampingFactor;
+	private double angularDampingFactor;
+	private double motionBias;
+
+	// quando presente, o estado do corpo vive no slot do store
+	private RigidBodyStore store;
+	private int storeIndex = -1;
+
+	// o corpo de que este  cpia, ver clone()
+	private RigidBody original = this;
+
 	/**
 	 * Realiza os clculos de transformao de matrix a partir dos dados do
 	 * corpo. </br>
@@ -47,6 +63,10 @@ public class RigidBody implements Cloneable {
 	 * <li>- Executado automaticamente no processo de integrao.
 	 */
 	public void calculateDerivedData() {
+		if (store != null) {
+			store.calculateDerivedData(storeIndex, storeIndex + 1);
+			return;
+		}
 		orientation.normalise();
 
 		// Calculate the transform matrix for the body.
@@ -63,18 +83,28 @@ public class RigidBody implements Cloneable {
 	 * durao. </br>
 	 * <br>
 	 * Newton-Euler  uma aproximao linear  integral correta, e por isso pode
-	 * ser imprecisa ema alguns casos.
+	 * ser imprecisa ema alguns casos. </br>
+	 * No aloca objetos: os vetores so atualizados no lugar, e os fatores de
+	 * amortecimento s so recalculados quando a durao ou o amortecimento
+	 * mudam.
 	 */
 	public void integrate(double duration) {
+		if (store != null) {
+			if (store.awake[storeIndex])
+				store.integrate(storeIndex, storeIndex + 1, duration);
+			return;
+		}
 		if (!isAwake)
 			return;
 
 		// Calculate linear acceleration from force inputs.
-		lastFrameAcceleration = new Vector3(acceleration);
+		lastFrameAcceleration.setX(acceleration.getX());
+		lastFrameAcceleration.setY(acceleration.getY());
+		lastFrameAcceleration.setZ(acceleration.getZ());
 		lastFrameAcceleration.addScaledVector(forceAccum, inverseMass);
 
 		// Calculate angular acceleration from torque inputs.
-		Vector3 angularAcceleration = inverseInertiaTensorWorld.transform(torqueAccum);
+		inverseInertiaTensorWorld.transform(torqueAccum, angularAcceleration);
 
 		// Adjust velocities
 		// Update linear velocity from both acceleration and impulse.
@@ -84,8 +114,9 @@ public class RigidBody implements Cloneable {
 		rotation.addScaledVector(angularAcceleration, duration);
 
 		// Impose drag.
-		velocity.multToMe(Math.pow(linearDamping, duration));
-		rotation.multToMe(Math.pow(angularDamping, duration));
+		updateDampingFactors(duration);
+		velocity.multToMe(linearDampingFactor);
+		rotation.multToMe(angularDampingFactor);
 
 		// Adjust positions
 		// Update linear position.
@@ -106,7 +137,7 @@ public class RigidBody implements Cloneable {
 		if (canSleep) {
 			double currentMotion = velocity.scalarProduct(velocity) + rotation.scalarProduct(rotation);
 
-			double bias = Math.pow(0.5, duration);
+			double bias = motionBias;
 			motion = bias * motion + (1 - bias) * currentMotion;
 
 			double sleepEpsilon = Core.get().getSleepEpsilon();
@@ -117,6 +148,23 @@ public class RigidBody implements Cloneable {
 		}
 	}
 
+	private void updateDampingFactors(double duration) {
+		if (duration != cachedDuration) {
+			cachedDuration = duration;
+			cachedLinearDamping = Double.NaN;
+			cachedAngularDamping = Double.NaN;
+			motionBias = Math.pow(0.5, duration);
+		}
+		if (linearDamping != cachedLinearDamping) {
+			cachedLinearDamping = linearDamping;
+			linearDampingFactor = Math.pow(linearDamping, duration);
+		}
+		if (angularDamping != cachedAngularDamping) {
+			cachedAngularDamping = angularDamping;
+			angularDampingFactor = Math.pow(angularDamping, duration);
+		}
+	}
+
 	/* @} */
 
 	/**
@@ -128,6 +176,8 @@ public class RigidBody implements Cloneable {
 	public void setMass(double mass) {
 		assert (mass != 0);
 		this.inverseMass = 1.0 / mass;
+		if (store != null)
+			store.inverseMass[storeIndex] = inverseMass;
 	}
 
 	/**
@@ -144,6 +194,8 @@ public class RigidBody implements Cloneable {
 
 	private void setInverseMass(double inverseMass) {
 		this.inverseMass = inverseMass;
+		if (store != null)
+			store.inverseMass[storeIndex] = inverseMass;
 	}
 
 	/**
@@ -175,6 +227,8 @@ public class RigidBody implements Cloneable {
 	public void setInertiaTensor(Matrix3 inertiaTensor) {
 		inverseInertiaTensor.setInverse(inertiaTensor);
 		RigidBodyUtils.checkInverseInertiaTensor(inverseInertiaTensor);
+		if (store != null)
+			System.arraycopy(inverseInertiaTensor.data, 0, store.inverseInertiaTensor, storeIndex * 9, 9);
 	}
 
 	/**
@@ -191,6 +245,8 @@ public class RigidBody implements Cloneable {
 	private void setInverseInertiaTensor(Matrix3 inverseInertiaTensor) {
 		RigidBodyUtils.checkInverseInertiaTensor(inverseInertiaTensor);
 		this.inverseInertiaTensor = inverseInertiaTensor;
+		if (store != null)
+			System.arraycopy(inverseInertiaTensor.data, 0, store.inverseInertiaTensor, storeIndex * 9, 9);
 	}
 
 	/**
@@ -210,6 +266,8 @@ public class RigidBody implements Cloneable {
 	 */
 	public void setLinearDamping(double linearDamping) {
 		this.linearDamping = linearDamping;
+		if (store != null)
+			store.linearDamping[storeIndex] = linearDamping;
 	}
 
 	/**
@@ -220,6 +278,8 @@ public class RigidBody implements Cloneable {
 	 */
 	public void setAngularDamping(double angularDamping) {
 		this.angularDamping = angularDamping;
+		if (store != null)
+			store.angularDamping[storeIndex] = angularDamping;
 	}
 
 	/**
@@ -229,6 +289,12 @@ public class RigidBody implements Cloneable {
 	 *            a posio.
 	 */
 	public void setPosition(Vector3 position) {
+		if (store != null) {
+			store.px[storeIndex] = position.getX();
+			store.py[storeIndex] = position.getY();
+			store.pz[storeIndex] = position.getZ();
+			return;
+		}
 		this.position = position;
 	}
 
@@ -238,9 +304,26 @@ public class RigidBody implements Cloneable {
 	 * @return uma cpia.
 	 */
 	public Vector3 getPosition() {
+		if (store != null) {
+			return new Vector3(store.px[storeIndex], store.py[storeIndex], store.pz[storeIndex]);
+		}
 		return fillVector3(this.position);
 	}
 
+	/**
+	 * Copia a posio para o vetor informado.
+	 * 
+	 * @param out
+	 *            destino.
+	 */
+	public void getPosition(Vector3 out) {
+		if (store != null) {
+			out.set(store.px[storeIndex], store.py[storeIndex], store.pz[storeIndex]);
+			return;
+		}
+		out.set(position);
+	}
+
 	/**
 	 * Seta a orientao. </br>
 	 * No precisa ser normalizada.
@@ -249,6 +332,14 @@ public class RigidBody implements Cloneable {
 	 *            orientao.
 	 */
 	public void setOrientation(Quaternion orientation) {
+		if (store != null) {
+			orientation.normalise();
+			store.qr[storeIndex] = orientation.getR();
+			store.qi[storeIndex] = orientation.getI();
+			store.qj[storeIndex] = orientation.getJ();
+			store.qk[storeIndex] = orientation.getK();
+			return;
+		}
 		this.orientation = orientation;
 		this.orientation.normalise();
 	}
@@ -259,11 +350,28 @@ public class RigidBody implements Cloneable {
 	 * @return
 	 */
 	public Quaternion getOrientation() {
+		if (store != null) {
+			return new Quaternion(store.qr[storeIndex], store.qi[storeIndex], store.qj[storeIndex], store.qk[storeIndex]);
+		}
 		Quaternion o = new Quaternion();
 		fillQuaternion(this.orientation, o);
 		return o;
 	}
 
+	/**
+	 * Copia a orientao para o quaternion informado.
+	 * 
+	 * @param out
+	 *            destino.
+	 */
+	public void getOrientation(Quaternion out) {
+		if (store != null) {
+			out.set(store.qr[storeIndex], store.qi[storeIndex], store.qj[storeIndex], store.qk[storeIndex]);
+			return;
+		}
+		out.set(orientation);
+	}
+
 	/**
 	 * Preenche a matrix com os dados transformados da posio e orientao do
 	 * corpo para utilizao em aplicao OpenGL.
@@ -272,6 +380,7 @@ public class RigidBody implements Cloneable {
 	 *            matriz que deve ser preenchida.
 	 */
 	public void getGLTransform(float[] matrix) {
+		Matrix4 transformMatrix = getTransform();
 		matrix[0] = (float) transformMatrix.getData(0);
 		matrix[1] = (float) transformMatrix.getData(4);
 		matrix[2] = (float) transformMatrix.getData(8);
@@ -294,11 +403,16 @@ public class RigidBody implements Cloneable {
 	}
 
 	/**
-	 * Obtm a matriz de transformao do corpo.
+	 * Obtm a matriz de transformao do corpo. </br>
+	 * Se o corpo est em um {@link RigidBodyStore}, a matriz  atualizada a
+	 * partir do store a cada chamada.
 	 * 
 	 * @return a matriz.
 	 */
 	public Matrix4 getTransform() {
+		if (store != null) {
+			System.arraycopy(store.transform, storeIndex * 12, transformMatrix.getData(), 0, 12);
+		}
 		return transformMatrix;
 	}
 
@@ -311,7 +425,7 @@ public class RigidBody implements Cloneable {
 	 * @return ponto convertido.
 	 */
 	public Vector3 getPointInWorldSpace(Vector3 point) {
-		return transformMatrix.transform(point);
+		return getTransform().transform(point);
 	}
 
 	/**
@@ -321,16 +435,41 @@ public class RigidBody implements Cloneable {
 	 *            a velocidade.
 	 */
 	public void setVelocity(Vector3 velocity) {
+		if (store != null) {
+			store.vx[storeIndex] = velocity.getX();
+			store.vy[storeIndex] = velocity.getY();
+			store.vz[storeIndex] = velocity.getZ();
+			return;
+		}
 		this.velocity = velocity;
 	}
 
 	/**
-	 * Obtm a matriz de velocidade do corpo.
+	 * Obtm uma cpia da velocidade do corpo. </br>
+	 * Para alterar a velocidade, use {@link #setVelocity(Vector3)} ou
+	 * {@link #addVelocity(Vector3)}.
 	 * 
-	 * @return a velocidade.
+	 * @return uma cpia.
 	 */
 	public Vector3 getVelocity() {
-		return velocity;
+		if (store != null) {
+			return new Vector3(store.vx[storeIndex], store.vy[storeIndex], store.vz[storeIndex]);
+		}
+		return new Vector3(velocity);
+	}
+
+	/**
+	 * Copia a velocidade para o vetor informado.
+	 * 
+	 * @param out
+	 *            destino.
+	 */
+	public void getVelocity(Vector3 out) {
+		if (store != null) {
+			out.set(store.vx[storeIndex], store.vy[storeIndex], store.vz[storeIndex]);
+			return;
+		}
+		out.set(velocity);
 	}
 
 	/**
@@ -340,6 +479,12 @@ public class RigidBody implements Cloneable {
 	 *            velocidade a adicionar.
 	 */
 	public void addVelocity(Vector3 deltaVelocity) {
+		if (store != null) {
+			store.vx[storeIndex] += deltaVelocity.getX();
+			store.vy[storeIndex] += deltaVelocity.getY();
+			store.vz[storeIndex] += deltaVelocity.getZ();
+			return;
+		}
 		velocity.sumToMe(deltaVelocity);
 	}
 
@@ -350,16 +495,41 @@ public class RigidBody implements Cloneable {
 	 *            a rotao.
 	 */
 	public void setRotation(Vector3 rotation) {
+		if (store != null) {
+			store.wx[storeIndex] = rotation.getX();
+			store.wy[storeIndex] = rotation.getY();
+			store.wz[storeIndex] = rotation.getZ();
+			return;
+		}
 		this.rotation = rotation;
 	}
 
 	/**
-	 * Obtm a rotao do corpo.
+	 * Obtm uma cpia da rotao do corpo. </br>
+	 * Para alterar a rotao, use {@link #setRotation(Vector3)} ou
+	 * {@link #addRotation(Vector3)}.
 	 * 
-	 * @return a rotao.
+	 * @return uma cpia.
 	 */
 	public Vector3 getRotation() {
-		return rotation;
+		if (store != null) {
+			return new Vector3(store.wx[storeIndex], store.wy[storeIndex], store.wz[storeIndex]);
+		}
+		return new Vector3(rotation);
+	}
+
+	/**
+	 * Copia a rotao para o vetor informado.
+	 * 
+	 * @param out
+	 *            destino.
+	 */
+	public void getRotation(Vector3 out) {
+		if (store != null) {
+			out.set(store.wx[storeIndex], store.wy[storeIndex], store.wz[storeIndex]);
+			return;
+		}
+		out.set(rotation);
 	}
 
 	/**
@@ -369,6 +539,12 @@ public class RigidBody implements Cloneable {
 	 *            rotao a adicionar.
 	 */
 	public void addRotation(Vector3 deltaRotation) {
+		if (store != null) {
+			store.wx[storeIndex] += deltaRotation.getX();
+			store.wy[storeIndex] += deltaRotation.getY();
+			store.wz[storeIndex] += deltaRotation.getZ();
+			return;
+		}
 		rotation.sumToMe(deltaRotation);
 	}
 
@@ -378,6 +554,9 @@ public class RigidBody implements Cloneable {
 	 * @return true se _, false se -_-.
 	 */
 	public boolean getAwake() {
+		if (store != null) {
+			return store.awake[storeIndex];
+		}
 		return isAwake;
 	}
 
@@ -397,6 +576,16 @@ public class RigidBody implements Cloneable {
 	 *            novo estado.
 	 */
 	public void setAwake(boolean awake) {
+		if (store != null) {
+			store.awake[storeIndex] = awake;
+			if (awake) {
+				store.motion[storeIndex] = Core.get().getSleepEpsilon() * 2.0f;
+			} else {
+				store.vx[storeIndex] = store.vy[storeIndex] = store.vz[storeIndex] = 0;
+				store.wx[storeIndex] = store.wy[storeIndex] = store.wz[storeIndex] = 0;
+			}
+			return;
+		}
 		if (awake) {
 			isAwake = true;
 
@@ -418,8 +607,10 @@ public class RigidBody implements Cloneable {
 	 */
 	public void setCanSleep(boolean canSleep) {
 		this.canSleep = canSleep;
+		if (store != null)
+			store.canSleep[storeIndex] = canSleep;
 
-		if (!canSleep && !isAwake)
+		if (!canSleep && !getAwake())
 			setAwake();
 	}
 
@@ -428,13 +619,35 @@ public class RigidBody implements Cloneable {
 	 * integrao. </br>
 	 *  baseada no espao global.
 	 * 
-	 * @return a acelerao linear.
+	 * @return uma cpia da acelerao linear.
 	 */
 	public Vector3 getLastFrameAcceleration() {
-		return lastFrameAcceleration;
+		if (store != null) {
+			return new Vector3(store.lax[storeIndex], store.lay[storeIndex], store.laz[storeIndex]);
+		}
+		return new Vector3(lastFrameAcceleration);
+	}
+
+	/**
+	 * Copia a acelerao linear da ltima integrao para o vetor informado.
+	 * 
+	 * @param out
+	 *            destino.
+	 */
+	public void getLastFrameAcceleration(Vector3 out) {
+		if (store != null) {
+			out.set(store.lax[storeIndex], store.lay[storeIndex], store.laz[storeIndex]);
+			return;
+		}
+		out.set(lastFrameAcceleration);
 	}
 
 	private void clearAccumulators() {
+		if (store != null) {
+			store.fx[storeIndex] = store.fy[storeIndex] = store.fz[storeIndex] = 0;
+			store.tx[storeIndex] = store.ty[storeIndex] = store.tz[storeIndex] = 0;
+			return;
+		}
 		forceAccum.clear();
 		torqueAccum.clear();
 	}
@@ -446,6 +659,13 @@ public class RigidBody implements Cloneable {
 	 *            fora a aplicar.
 	 */
 	public void addForce(Vector3 force) {
+		if (store != null) {
+			store.fx[storeIndex] += force.getX();
+			store.fy[storeIndex] += force.getY();
+			store.fz[storeIndex] += force.getZ();
+			store.awake[storeIndex] = true;
+			return;
+		}
 		forceAccum.sumToMe(force);
 		isAwake = true;
 	}
@@ -462,6 +682,12 @@ public class RigidBody implements Cloneable {
 	public void addForceAtPoint(Vector3 force, Vector3 point) {
 		// Convert to coordinates relative to center of mass.
 		Vector3 pt = point;
+		if (store != null) {
+			pt.subToMe(getPosition());
+			addForce(force);
+			addTorque(pt.rest(force));
+			return;
+		}
 		pt.subToMe(position);
 
 		forceAccum.sumToMe(force);
@@ -494,6 +720,13 @@ public class RigidBody implements Cloneable {
 	 *            torque.
 	 */
 	public void addTorque(Vector3 torque) {
+		if (store != null) {
+			store.tx[storeIndex] += torque.getX();
+			store.ty[storeIndex] += torque.getY();
+			store.tz[storeIndex] += torque.getZ();
+			store.awake[storeIndex] = true;
+			return;
+		}
 		torqueAccum.sumToMe(torque);
 		isAwake = true;
 	}
@@ -505,6 +738,11 @@ public class RigidBody implements Cloneable {
 	 */
 	public void setAcceleration(Vector3 acceleration) {
 		this.acceleration = acceleration;
+		if (store != null) {
+			store.ax[storeIndex] = acceleration.getX();
+			store.ay[storeIndex] = acceleration.getY();
+			store.az[storeIndex] = acceleration.getZ();
+		}
 	}
 
 	/**
@@ -542,31 +780,120 @@ public class RigidBody implements Cloneable {
 		destin.setK(origin.getK());
 	}
 
+	RigidBodyStore getStore() {
+		return store;
+	}
+
+	int getStoreIndex() {
+		return storeIndex;
+	}
+
+	void attach(RigidBodyStore store, int storeIndex) {
+		this.store = store;
+		this.storeIndex = storeIndex;
+	}
+
+	/**
+	 * Copia o estado do corpo para o slot do store.
+	 */
+	void storeTo(RigidBodyStore s, int i) {
+		s.px[i] = position.getX();
+		s.py[i] = position.getY();
+		s.pz[i] = position.getZ();
+		s.qr[i] = orientation.getR();
+		s.qi[i] = orientation.getI();
+		s.qj[i] = orientation.getJ();
+		s.qk[i] = orientation.getK();
+		s.vx[i] = velocity.getX();
+		s.vy[i] = velocity.getY();
+		s.vz[i] = velocity.getZ();
+		s.wx[i] = rotation.getX();
+		s.wy[i] = rotation.getY();
+		s.wz[i] = rotation.getZ();
+		s.ax[i] = acceleration.getX();
+		s.ay[i] = acceleration.getY();
+		s.az[i] = acceleration.getZ();
+		s.fx[i] = forceAccum.getX();
+		s.fy[i] = forceAccum.getY();
+		s.fz[i] = forceAccum.getZ();
+		s.tx[i] = torqueAccum.getX();
+		s.ty[i] = torqueAccum.getY();
+		s.tz[i] = torqueAccum.getZ();
+		s.lax[i] = lastFrameAcceleration.getX();
+		s.lay[i] = lastFrameAcceleration.getY();
+		s.laz[i] = lastFrameAcceleration.getZ();
+		s.inverseMass[i] = inverseMass;
+		s.linearDamping[i] = linearDamping;
+		s.angularDamping[i] = angularDamping;
+		s.motion[i] = motion;
+		s.awake[i] = isAwake;
+		s.canSleep[i] = canSleep;
+		System.arraycopy(inverseInertiaTensor.data, 0, s.inverseInertiaTensor, i * 9, 9);
+		System.arraycopy(inverseInertiaTensorWorld.data, 0, s.inverseInertiaTensorWorld, i * 9, 9);
+		System.arraycopy(transformMatrix.getData(), 0, s.transform, i * 12, 12);
+	}
+
+	/**
+	 * Copia o estado do slot do store para o corpo.
+	 */
+	void loadFrom(RigidBodyStore s, int i) {
+		position = new Vector3(s.px[i], s.py[i], s.pz[i]);
+		orientation = new Quaternion(s.qr[i], s.qi[i], s.qj[i], s.qk[i]);
+		velocity = new Vector3(s.vx[i], s.vy[i], s.vz[i]);
+		rotation = new Vector3(s.wx[i], s.wy[i], s.wz[i]);
+		forceAccum = new Vector3(s.fx[i], s.fy[i], s.fz[i]);
+		torqueAccum = new Vector3(s.tx[i], s.ty[i], s.tz[i]);
+		lastFrameAcceleration = new Vector3(s.lax[i], s.lay[i], s.laz[i]);
+		motion = s.motion[i];
+		isAwake = s.awake[i];
+		System.arraycopy(s.inverseInertiaTensorWorld, i * 9, inverseInertiaTensorWorld.data, 0, 9);
+		System.arraycopy(s.transform, i * 12, transformMatrix.getData(), 0, 12);
+	}
+
 	@Override
 	public String toString() {
+		// no store, o estado  lido do slot para um corpo solto, sem
+		// alterar os campos deste
+		RigidBody state = this;
+		if (store != null) {
+			state = new RigidBody();
+			state.loadFrom(store, storeIndex);
+		}
+
 		StringBuilder sb = new StringBuilder();
 
 		sb.append("InverseMass: ").append(inverseMass).append("\n");
 		sb.append("InverseInertiaTensor: ").append(inverseInertiaTensor).append("\n");
 		sb.append("LinearDamping: ").append(linearDamping).append("\n");
 		sb.append("AngularDamping: ").append(angularDamping).append("\n");
-		sb.append("Position: ").append(position).append("\n");
-		sb.append("Orientation: ").append(orientation).append("\n");
-		sb.append("Velocity: ").append(velocity).append("\n");
-		sb.append("Rotation: ").append(rotation).append("\n");
-		sb.append("InverseInertiaTensorWorld: ").append(inverseInertiaTensorWorld).append("\n");
-		sb.append("Motion: ").append(motion).append("\n");
-		sb.append("IsAwake: ").append(isAwake).append("\n");
+		sb.append("Position: ").append(state.position).append("\n");
+		sb.append("Orientation: ").append(state.orientation).append("\n");
+		sb.append("Velocity: ").append(state.velocity).append("\n");
+		sb.append("Rotation: ").append(state.rotation).append("\n");
+		sb.append("InverseInertiaTensorWorld: ").append(state.inverseInertiaTensorWorld).append("\n");
+		sb.append("Motion: ").append(state.motion).append("\n");
+		sb.append("IsAwake: ").append(state.isAwake).append("\n");
 		sb.append("CanSleep: ").append(canSleep).append("\n");
-		sb.append("TransformMatrix: ").append(transformMatrix).append("\n");
-		sb.append("ForceAccum: ").append(forceAccum).append("\n");
-		sb.append("TorqueAccum: ").append(torqueAccum).append("\n");
+		sb.append("TransformMatrix: ").append(state.transformMatrix).append("\n");
+		sb.append("ForceAccum: ").append(state.forceAccum).append("\n");
+		sb.append("TorqueAccum: ").append(state.torqueAccum).append("\n");
 		sb.append("Acceleration: ").append(acceleration).append("\n");
-		sb.append("LastFrameAcceleration: ").append(lastFrameAcceleration).append("\n");
+		sb.append("LastFrameAcceleration: ").append(state.lastFrameAcceleration).append("\n");
 
 		return sb.toString();
 	}
 
+	/**
+	 * Obtm o corpo de que este  cpia, feita por {@link #clone()}, ou o
+	 * prprio corpo. Identifica o corpo mesmo nos contatos que levam uma
+	 * cpia dele.
+	 * 
+	 * @return o corpo original.
+	 */
+	public RigidBody getOriginal() {
+		return original;
+	}
+
 	@Override
 	public Object clone() throws CloneNotSupportedException {
 		RigidBody rb = new RigidBody();
@@ -575,24 +902,33 @@ public class RigidBody implements Cloneable {
 		rb.setInverseInertiaTensor(new Matrix3(inverseInertiaTensor));
 		rb.setLinearDamping(linearDamping);
 		rb.setAngularDamping(angularDamping);
-		rb.setPosition(new Vector3(position));
-		rb.setOrientation(new Quaternion(orientation));
-		rb.setVelocity(new Vector3(velocity));
-		rb.setRotation(new Vector3(rotation));
-		rb.inverseInertiaTensorWorld = new Matrix3(inverseInertiaTensorWorld);
-
-		rb.motion = motion;
-		rb.setAwake(isAwake);
-		rb.setCanSleep(canSleep);
 
-		rb.transformMatrix = new Matrix4();
-		rb.transformMatrix.setData(transformMatrix.getData());
-
-		rb.forceAccum = new Vector3(forceAccum);
-		rb.torqueAccum = new Vector3(torqueAccum);
+		if (store != null) {
+			// o estado  lido do slot direto para a cpia, sem alterar os
+			// campos deste corpo
+			rb.loadFrom(store, storeIndex);
+			rb.setAwake(rb.isAwake);
+			rb.setCanSleep(canSleep);
+		} else {
+			rb.setPosition(new Vector3(position));
+			rb.setOrientation(new Quaternion(orientation));
+			rb.setVelocity(new Vector3(velocity));
+			rb.setRotation(new Vector3(rotation));
+			rb.inverseInertiaTensorWorld = new Matrix3(inverseInertiaTensorWorld);
+
+			rb.motion = motion;
+			rb.setAwake(isAwake);
+			rb.setCanSleep(canSleep);
+
+			rb.transformMatrix = new Matrix4();
+			rb.transformMatrix.setData(transformMatrix.getData());
+
+			rb.forceAccum = new Vector3(forceAccum);
+			rb.torqueAccum = new Vector3(torqueAccum);
+			rb.lastFrameAcceleration = new Vector3(lastFrameAcceleration);
+		}
 		rb.setAcceleration(new Vector3(acceleration));
-
-		rb.lastFrameAcceleration = new Vector3(lastFrameAcceleration);
+		rb.original = original;
 
 		return rb;
 	}
@@ -603,9 +939,28 @@ public class RigidBody implements Cloneable {
 	 * @return o tensor.
 	 */
 	public Matrix3 getInverseInertiaTensorWorld() {
+		if (store != null) {
+			Matrix3 m = new Matrix3();
+			System.arraycopy(store.inverseInertiaTensorWorld, storeIndex * 9, m.data, 0, 9);
+			return m;
+		}
 		Matrix3 m = new Matrix3();
 		fillMatrix3(this.inverseInertiaTensorWorld, m);
 		return m;
 	}
 
+	/**
+	 * Copia o tensor inercial relativo ao mundo para a matriz informada.
+	 * 
+	 * @param out
+	 *            destino.
+	 */
+	public void getInverseInertiaTensorWorld(Matrix3 out) {
+		if (store != null) {
+			System.arraycopy(store.inverseInertiaTensorWorld, storeIndex * 9, out.data, 0, 9);
+			return;
+		}
+		out.set(inverseInertiaTensorWorld);
+	}
+
 }
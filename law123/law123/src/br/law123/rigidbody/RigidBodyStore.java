@@ -0,0 +1,442 @@
+package br.law123.rigidbody;
+
+import java.util.Arrays;
+
+import br.law123.core.Core;
+
+/**
+ * Structure-of-arrays storage for the state of many rigid bodies.
+ * Each attached {@link RigidBody} becomes a handle onto one slot of the store:
+ * position, orientation, velocities, accumulators, sleep state and the
+ * derived matrices live in one contiguous <code>double[]</code> per
+ * component, and the body accessors read and write those arrays. Contacts,
+ * forces and the application keep using the {@link RigidBody} API.
+ * <p>
+ * {@link #integrate(double)} runs the same Newton-Euler step of
+ * {@link RigidBody#integrate(double)} for every awake body as straight loops
+ * over the arrays, without per-body allocations, and reuses each slot's
+ * damping factors (two <code>Math.pow</code> per body) while the damping and
+ * the step duration do not change.
+ *
+ * @author teixeira
+ */
+public final class RigidBodyStore {
+
+    private RigidBody[] bodies;
+    private int size;
+
+    // state of each slot (3, 9 or 12 entries per slot for vectors and matrices)
+    double[] px, py, pz;
+    double[] qr, qi, qj, qk;
+    double[] vx, vy, vz;
+    double[] wx, wy, wz;
+    double[] ax, ay, az;
+    double[] fx, fy, fz;
+    double[] tx, ty, tz;
+    double[] lax, lay, laz;
+    double[] inverseMass;
+    double[] linearDamping, angularDamping;
+    double[] motion;
+    boolean[] awake;
+    boolean[] canSleep;
+    double[] inverseInertiaTensor;
+    double[] inverseInertiaTensorWorld;
+    double[] transform;
+
+    // damping factors of each slot, valid for the slot's factorDuration
+    private double[] linearFactor, angularFactor;
+    private double[] cachedLinearDamping, cachedAngularDamping;
+    private double[] factorDuration;
+
+    private int activeCount;
+
+    public RigidBodyStore() {
+        this(64);
+    }
+
+    public RigidBodyStore(int capacity) {
+        bodies = new RigidBody[Math.max(1, capacity)];
+        allocate(bodies.length);
+    }
+
+    /**
+     * Attaches the body to the store, which becomes the owner of its state.
+     *
+     * @param body the body.
+     * @return <code>false</code> if the body was already attached to a store.
+     */
+    public boolean add(RigidBody body) {
+        if (body.getStore() != null) {
+            return false;
+        }
+        if (size == bodies.length) {
+            grow(size * 2);
+        }
+        int slot = size++;
+        bodies[slot] = body;
+        body.storeTo(this, slot);
+        body.attach(this, slot);
+        return true;
+    }
+
+    /**
+     * Detaches the body from the store, copying its state back to it.
+     *
+     * @param body the body.
+     * @return <code>true</code> if the body was attached to this store.
+     */
+    public boolean remove(RigidBody body) {
+        if (body.getStore() != this) {
+            return false;
+        }
+        int slot = body.getStoreIndex();
+        body.loadFrom(this, slot);
+        body.attach(null, -1);
+
+        int last = --size;
+        if (slot != last) {
+            move(last, slot);
+            bodies[slot] = bodies[last];
+            bodies[slot].attach(this, slot);
+        }
+        bodies[last] = null;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return how many bodies were awake and integrated in the last step.
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * Integrates every attached body, with the same semantics of
+     * {@link RigidBody#integrate(double)}.
+     *
+     * @param duration the step duration.
+     */
+    public void integrate(double duration) {
+        activeCount = integrate(0, size, duration);
+    }
+
+    /**
+     * Integrates the awake bodies of the slots <code>[from, to)</code>.
+     * Disjoint ranges touch disjoint data, so they can be integrated by
+     * different threads at the same time.
+     *
+     * @return how many bodies were integrated.
+     */
+    public int integrate(int from, int to, double duration) {
+        dampingFactors(from, to, duration);
+        integrateVelocities(from, to, duration);
+        integratePositions(from, to, duration);
+        normaliseOrientations(from, to, true);
+        calculateTransforms(from, to, true);
+        calculateInertiaTensors(from, to, true);
+        clearAccumulators(from, to);
+        return updateMotion(from, to, duration);
+    }
+
+    /**
+     * Normalises the orientation and calculates the transform and the inverse
+     * inertia tensor in world space of the slots <code>[from, to)</code>.
+     */
+    void calculateDerivedData(int from, int to) {
+        normaliseOrientations(from, to, false);
+        calculateTransforms(from, to, false);
+        calculateInertiaTensors(from, to, false);
+    }
+
+    private void dampingFactors(int from, int to, double duration) {
+        for (int i = from; i < to; i++) {
+            if (duration != factorDuration[i]) {
+                factorDuration[i] = duration;
+                cachedLinearDamping[i] = Double.NaN;
+                cachedAngularDamping[i] = Double.NaN;
+            }
+            if (linearDamping[i] != cachedLinearDamping[i]) {
+                cachedLinearDamping[i] = linearDamping[i];
+                linearFactor[i] = Math.pow(linearDamping[i], duration);
+            }
+            if (angularDamping[i] != cachedAngularDamping[i]) {
+                cachedAngularDamping[i] = angularDamping[i];
+                angularFactor[i] = Math.pow(angularDamping[i], duration);
+            }
+        }
+    }
+
+    private void integrateVelocities(int from, int to, double duration) {
+        for (int i = from; i < to; i++) {
+            if (!awake[i]) {
+                continue;
+            }
+            // linear acceleration from force inputs
+            lax[i] = ax[i] + fx[i] * inverseMass[i];
+            lay[i] = ay[i] + fy[i] * inverseMass[i];
+            laz[i] = az[i] + fz[i] * inverseMass[i];
+
+            // velocity from acceleration and impulse, then drag
+            vx[i] = (vx[i] + lax[i] * duration) * linearFactor[i];
+            vy[i] = (vy[i] + lay[i] * duration) * linearFactor[i];
+            vz[i] = (vz[i] + laz[i] * duration) * linearFactor[i];
+        }
+        double[] t = inverseInertiaTensorWorld;
+        for (int i = from; i < to; i++) {
+            if (!awake[i]) {
+                continue;
+            }
+            // angular acceleration from torque inputs
+            int m = i * 9;
+            double aax = t[m] * tx[i] + t[m + 1] * ty[i] + t[m + 2] * tz[i];
+            double aay = t[m + 3] * tx[i] + t[m + 4] * ty[i] + t[m + 5] * tz[i];
+            double aaz = t[m + 6] * tx[i] + t[m + 7] * ty[i] + t[m + 8] * tz[i];
+
+            wx[i] = (wx[i] + aax * duration) * angularFactor[i];
+            wy[i] = (wy[i] + aay * duration) * angularFactor[i];
+            wz[i] = (wz[i] + aaz * duration) * angularFactor[i];
+        }
+    }
+
+    private void integratePositions(int from, int to, double duration) {
+        for (int i = from; i < to; i++) {
+            if (!awake[i]) {
+                continue;
+            }
+            px[i] += vx[i] * duration;
+            py[i] += vy[i] * duration;
+            pz[i] += vz[i] * duration;
+
+            // q += 0.5 * (0, w * duration) * q
+            double si = wx[i] * duration;
+            double sj = wy[i] * duration;
+            double sk = wz[i] * duration;
+            double r = qr[i], i0 = qi[i], j0 = qj[i], k0 = qk[i];
+
+            qr[i] = r + (-si * i0 - sj * j0 - sk * k0) * 0.5;
+            qi[i] = i0 + (si * r + sj * k0 - sk * j0) * 0.5;
+            qj[i] = j0 + (sj * r + sk * i0 - si * k0) * 0.5;
+            qk[i] = k0 + (sk * r + si * j0 - sj * i0) * 0.5;
+        }
+    }
+
+    private void normaliseOrientations(int from, int to, boolean awakeOnly) {
+        for (int i = from; i < to; i++) {
+            if (awakeOnly && !awake[i]) {
+                continue;
+            }
+            double d = qr[i] * qr[i] + qi[i] * qi[i] + qj[i] * qj[i] + qk[i] * qk[i];
+            if (d > 0) {
+                d = 1.0 / Math.sqrt(d);
+                qr[i] *= d;
+                qi[i] *= d;
+                qj[i] *= d;
+                qk[i] *= d;
+            } else {
+                qr[i] = 1;
+            }
+        }
+    }
+
+    private void calculateTransforms(int from, int to, boolean awakeOnly) {
+        for (int i = from; i < to; i++) {
+            if (awakeOnly && !awake[i]) {
+                continue;
+            }
+            int m = i * 12;
+            double r = qr[i], i0 = qi[i], j0 = qj[i], k0 = qk[i];
+            transform[m] = 1 - 2 * j0 * j0 - 2 * k0 * k0;
+            transform[m + 1] = 2 * i0 * j0 - 2 * r * k0;
+            transform[m + 2] = 2 * i0 * k0 + 2 * r * j0;
+            transform[m + 3] = px[i];
+            transform[m + 4] = 2 * i0 * j0 + 2 * r * k0;
+            transform[m + 5] = 1 - 2 * i0 * i0 - 2 * k0 * k0;
+            transform[m + 6] = 2 * j0 * k0 - 2 * r * i0;
+            transform[m + 7] = py[i];
+            transform[m + 8] = 2 * i0 * k0 - 2 * r * j0;
+            transform[m + 9] = 2 * j0 * k0 + 2 * r * i0;
+            transform[m + 10] = 1 - 2 * i0 * i0 - 2 * j0 * j0;
+            transform[m + 11] = pz[i];
+        }
+    }
+
+    private void calculateInertiaTensors(int from, int to, boolean awakeOnly) {
+        double[] rm = transform;
+        double[] ib = inverseInertiaTensor;
+        double[] iw = inverseInertiaTensorWorld;
+        for (int i = from; i < to; i++) {
+            if (awakeOnly && !awake[i]) {
+                continue;
+            }
+            int t = i * 12;
+            int m = i * 9;
+            // same expansion of RigidBodyUtils.transformInertiaTensor
+            double t4 = rm[t] * ib[m] + rm[t + 1] * ib[m + 3] + rm[t + 2] * ib[m + 6];
+            double t9 = rm[t] * ib[m + 1] + rm[t + 1] * ib[m + 4] + rm[t + 2] * ib[m + 7];
+            double t14 = rm[t] * ib[m + 2] + rm[t + 1] * ib[m + 5] + rm[t + 2] * ib[m + 8];
+            double t28 = rm[t + 4] * ib[m] + rm[t + 5] * ib[m + 3] + rm[t + 6] * ib[m + 6];
+            double t33 = rm[t + 4] * ib[m + 1] + rm[t + 5] * ib[m + 4] + rm[t + 6] * ib[m + 7];
+            double t38 = rm[t + 4] * ib[m + 2] + rm[t + 5] * ib[m + 5] + rm[t + 6] * ib[m + 8];
+            double t52 = rm[t + 8] * ib[m] + rm[t + 9] * ib[m + 3] + rm[t + 10] * ib[m + 6];
+            double t57 = rm[t + 8] * ib[m + 1] + rm[t + 9] * ib[m + 4] + rm[t + 10] * ib[m + 7];
+            double t62 = rm[t + 8] * ib[m + 2] + rm[t + 9] * ib[m + 5] + rm[t + 10] * ib[m + 8];
+
+            iw[m] = t4 * rm[t] + t9 * rm[t + 1] + t14 * rm[t + 2];
+            iw[m + 1] = t4 * rm[t + 4] + t9 * rm[t + 5] + t14 * rm[t + 6];
+            iw[m + 2] = t4 * rm[t + 8] + t9 * rm[t + 9] + t14 * rm[t + 10];
+            iw[m + 3] = t28 * rm[t] + t33 * rm[t + 1] + t38 * rm[t + 2];
+            iw[m + 4] = t28 * rm[t + 4] + t33 * rm[t + 5] + t38 * rm[t + 6];
+            iw[m + 5] = t28 * rm[t + 8] + t33 * rm[t + 9] + t38 * rm[t + 10];
+            iw[m + 6] = t52 * rm[t] + t57 * rm[t + 1] + t62 * rm[t + 2];
+            iw[m + 7] = t52 * rm[t + 4] + t57 * rm[t + 5] + t62 * rm[t + 6];
+            iw[m + 8] = t52 * rm[t + 8] + t57 * rm[t + 9] + t62 * rm[t + 10];
+        }
+    }
+
+    private void clearAccumulators(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!awake[i]) {
+                continue;
+            }
+            fx[i] = fy[i] = fz[i] = 0;
+            tx[i] = ty[i] = tz[i] = 0;
+        }
+    }
+
+    private int updateMotion(int from, int to, double duration) {
+        double bias = Math.pow(0.5, duration);
+        double sleepEpsilon = Core.get().getSleepEpsilon();
+        int integrated = 0;
+        for (int i = from; i < to; i++) {
+            if (!awake[i]) {
+                continue;
+            }
+            integrated++;
+            if (!canSleep[i]) {
+                continue;
+            }
+            double currentMotion = vx[i] * vx[i] + vy[i] * vy[i] + vz[i] * vz[i] + wx[i] * wx[i] + wy[i] * wy[i] + wz[i] * wz[i];
+            motion[i] = bias * motion[i] + (1 - bias) * currentMotion;
+
+            if (motion[i] < sleepEpsilon) {
+                // same of RigidBody.setAwake(false)
+                awake[i] = false;
+                vx[i] = vy[i] = vz[i] = 0;
+                wx[i] = wy[i] = wz[i] = 0;
+            } else if (motion[i] > 10 * sleepEpsilon) {
+                motion[i] = 10 * sleepEpsilon;
+            }
+        }
+        return integrated;
+    }
+
+    /**
+     * Copies every component of one slot to another.
+     */
+    private void move(int from, int to) {
+        double[][] scalars = { px, py, pz, qr, qi, qj, qk, vx, vy, vz, wx, wy, wz, ax, ay, az, fx, fy, fz, tx, ty, tz, lax, lay, laz, inverseMass, linearDamping, angularDamping, motion, linearFactor, angularFactor, cachedLinearDamping, cachedAngularDamping, factorDuration };
+        for (double[] a : scalars) {
+            a[to] = a[from];
+        }
+        awake[to] = awake[from];
+        canSleep[to] = canSleep[from];
+        System.arraycopy(inverseInertiaTensor, from * 9, inverseInertiaTensor, to * 9, 9);
+        System.arraycopy(inverseInertiaTensorWorld, from * 9, inverseInertiaTensorWorld, to * 9, 9);
+        System.arraycopy(transform, from * 12, transform, to * 12, 12);
+    }
+
+    private void allocate(int capacity) {
+        px = new double[capacity];
+        py = new double[capacity];
+        pz = new double[capacity];
+        qr = new double[capacity];
+        qi = new double[capacity];
+        qj = new double[capacity];
+        qk = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        vz = new double[capacity];
+        wx = new double[capacity];
+        wy = new double[capacity];
+        wz = new double[capacity];
+        ax = new double[capacity];
+        ay = new double[capacity];
+        az = new double[capacity];
+        fx = new double[capacity];
+        fy = new double[capacity];
+        fz = new double[capacity];
+        tx = new double[capacity];
+        ty = new double[capacity];
+        tz = new double[capacity];
+        lax = new double[capacity];
+        lay = new double[capacity];
+        laz = new double[capacity];
+        inverseMass = new double[capacity];
+        linearDamping = new double[capacity];
+        angularDamping = new double[capacity];
+        motion = new double[capacity];
+        awake = new boolean[capacity];
+        canSleep = new boolean[capacity];
+        inverseInertiaTensor = new double[capacity * 9];
+        inverseInertiaTensorWorld = new double[capacity * 9];
+        transform = new double[capacity * 12];
+
+        linearFactor = new double[capacity];
+        angularFactor = new double[capacity];
+        cachedLinearDamping = new double[capacity];
+        cachedAngularDamping = new double[capacity];
+        factorDuration = new double[capacity];
+        Arrays.fill(factorDuration, Double.NaN);
+    }
+
+    private void grow(int capacity) {
+        bodies = Arrays.copyOf(bodies, capacity);
+        px = Arrays.copyOf(px, capacity);
+        py = Arrays.copyOf(py, capacity);
+        pz = Arrays.copyOf(pz, capacity);
+        qr = Arrays.copyOf(qr, capacity);
+        qi = Arrays.copyOf(qi, capacity);
+        qj = Arrays.copyOf(qj, capacity);
+        qk = Arrays.copyOf(qk, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        vz = Arrays.copyOf(vz, capacity);
+        wx = Arrays.copyOf(wx, capacity);
+        wy = Arrays.copyOf(wy, capacity);
+        wz = Arrays.copyOf(wz, capacity);
+        ax = Arrays.copyOf(ax, capacity);
+        ay = Arrays.copyOf(ay, capacity);
+        az = Arrays.copyOf(az, capacity);
+        fx = Arrays.copyOf(fx, capacity);
+        fy = Arrays.copyOf(fy, capacity);
+        fz = Arrays.copyOf(fz, capacity);
+        tx = Arrays.copyOf(tx, capacity);
+        ty = Arrays.copyOf(ty, capacity);
+        tz = Arrays.copyOf(tz, capacity);
+        lax = Arrays.copyOf(lax, capacity);
+        lay = Arrays.copyOf(lay, capacity);
+        laz = Arrays.copyOf(laz, capacity);
+        inverseMass = Arrays.copyOf(inverseMass, capacity);
+        linearDamping = Arrays.copyOf(linearDamping, capacity);
+        angularDamping = Arrays.copyOf(angularDamping, capacity);
+        motion = Arrays.copyOf(motion, capacity);
+        awake = Arrays.copyOf(awake, capacity);
+        canSleep = Arrays.copyOf(canSleep, capacity);
+        inverseInertiaTensor = Arrays.copyOf(inverseInertiaTensor, capacity * 9);
+        inverseInertiaTensorWorld = Arrays.copyOf(inverseInertiaTensorWorld, capacity * 9);
+        transform = Arrays.copyOf(transform, capacity * 12);
+
+        int old = linearFactor.length;
+        linearFactor = Arrays.copyOf(linearFactor, capacity);
+        angularFactor = Arrays.copyOf(angularFactor, capacity);
+        cachedLinearDamping = Arrays.copyOf(cachedLinearDamping, capacity);
+        cachedAngularDamping = Arrays.copyOf(cachedAngularDamping, capacity);
+        factorDuration = Arrays.copyOf(factorDuration, capacity);
+        Arrays.fill(factorDuration, old, capacity, Double.NaN);
+    }
+
+}
@@ -1,5 +1,7 @@
 package br.law123.rigidbody.contact;
 
+import java.util.Arrays;
+
 import br.law123.core.Matrix3;
 import br.law123.core.Quaternion;
 import br.law123.core.Vector3;
@@ -55,12 +57,12 @@ public class Contact {
     /**
      * Holds the position of the contact in world coordinates.
      */
-    private Vector3 contactPoint;
+    private final Vector3 contactPoint = new Vector3();
 
     /**
      * Holds the direction of the contact in world coordinates.
      */
-    private Vector3 contactNormal = new Vector3();
+    private final Vector3 contactNormal = new Vector3();
 
     /**
      * Holds the depth of penetration at the contact point. If both
@@ -95,6 +97,62 @@ public class Contact {
      */
     protected Vector3[] relativeContactPosition = new Vector3[2];
 
+    /**
+     * Identifies the features (vertex, edge or face) of the bodies that
+     * generated the contact, so the same contact can be recognised in
+     * the next step. Zero for shapes with a single feature, like spheres.
+     */
+    private int feature;
+
+    /**
+     * Holds the impulse accumulated by the iterative impulse solver, in
+     * contact coordinates. It is seeded from the previous step when the
+     * solver warm-starts.
+     */
+    protected final Vector3 accumulatedImpulse = new Vector3();
+
+    /**
+     * Data set up by prepareImpulse: the effective mass along each
+     * contact axis, the inverse mass of each body (zero if it can't
+     * move), and the closing velocity the normal impulse aims at.
+     */
+    private final double[] axisMass = new double[3];
+    private final double[] inverseMass = new double[2];
+    private final boolean[] movable = new boolean[2];
+    private double targetVelocity;
+    private boolean impulseActive;
+
+    /**
+     * Scratch values reused by the resolution, so resolving a
+     * contact does not allocate.
+     */
+    private final Vector3 tmp1 = new Vector3();
+    private final Vector3 tmp2 = new Vector3();
+    private final Vector3 tmp3 = new Vector3();
+    private final Vector3 impulseContact = new Vector3();
+    private final Vector3 impulse = new Vector3();
+    private final Matrix3[] inverseInertiaTensor = { new Matrix3(), new Matrix3() };
+    private final Matrix3 tmpMatrix1 = new Matrix3();
+    private final Matrix3 tmpMatrix2 = new Matrix3();
+    private final Matrix3 tmpMatrix3 = new Matrix3();
+
+    public Contact() {
+    }
+
+    /**
+     * Creates a copy of the contact details (bodies, material, point,
+     * normal, penetration and basis), for keeping a contact after the
+     * original is reused.
+     */
+    public Contact(Contact other) {
+        setBodyData(other.body[0], other.body[1], other.friction, other.restitution);
+        contactPoint.set(other.contactPoint);
+        contactNormal.set(other.contactNormal);
+        penetration = other.penetration;
+        feature = other.feature;
+        System.arraycopy(other.contactToWorld.data, 0, contactToWorld.data, 0, 9);
+    }
+
     public RigidBody[] getBody() {
         return body;
     }
@@ -120,7 +178,7 @@ public class Contact {
     }
 
     public void setContactPoint(Vector3 contactPoint) {
-        this.contactPoint = new Vector3(contactPoint);
+        this.contactPoint.set(contactPoint);
     }
 
     public Vector3 getContactNormal() {
@@ -128,7 +186,7 @@ public class Contact {
     }
 
     public void setContactNormal(Vector3 contactNormal) {
-        this.contactNormal = new Vector3(contactNormal);
+        this.contactNormal.set(contactNormal);
     }
 
     public double getPenetration() {
@@ -143,6 +201,14 @@ public class Contact {
         return contactToWorld;
     }
 
+    public int getFeature() {
+        return feature;
+    }
+
+    public void setFeature(int feature) {
+        this.feature = feature;
+    }
+
     /**
      * Sets the data that doesn't normally depend on the position
      * of the contact (i.e. the bodies, and their material properties).
@@ -168,15 +234,24 @@ public class Contact {
         calculateContactBasis();
 
         // Store the relative position of the contact relative to each body
-        relativeContactPosition[0] = contactPoint.sub(body[0].getPosition());
-        if (body[1] != null) {
-            relativeContactPosition[1] = contactPoint.sub(body[1].getPosition());
+        for (int i = 0; i < 2; i++) {
+            if (body[i] != null) {
+                if (relativeContactPosition[i] == null) {
+                    relativeContactPosition[i] = new Vector3();
+                }
+                body[i].getPosition(tmp1);
+                contactPoint.sub(tmp1, relativeContactPosition[i]);
+            }
         }
 
         // Find the relative velocity of the bodies at the contact point.
-        contactVelocity = calculateLocalVelocity(0, duration);
+        if (contactVelocity == null) {
+            contactVelocity = new Vector3();
+        }
+        calculateLocalVelocity(0, duration, contactVelocity);
         if (body[1] != null) {
-            contactVelocity.subToMe(calculateLocalVelocity(1, duration));
+            calculateLocalVelocity(1, duration, tmp3);
+            contactVelocity.subToMe(tmp3);
         }
 
         // Calculate the desired change in velocity for resolution
@@ -231,11 +306,15 @@ public class Contact {
         double velocityFromAcc = 0;
 
         if (body[0].getAwake()) {
-            velocityFromAcc += body[0].getLastFrameAcceleration().mult(duration).mult(contactNormal);
+            body[0].getLastFrameAcceleration(tmp1);
+            tmp1.multToMe(duration);
+            velocityFromAcc += tmp1.scalarProduct(contactNormal);
         }
 
         if (body[1] != null && body[1].getAwake()) {
-            velocityFromAcc -= body[1].getLastFrameAcceleration().mult(duration).mult(contactNormal);
+            body[1].getLastFrameAcceleration(tmp1);
+            tmp1.multToMe(duration);
+            velocityFromAcc -= tmp1.scalarProduct(contactNormal);
         }
 
         // If the velocity is very slow, limit the restitution
@@ -250,25 +329,30 @@ public class Contact {
     }
 
     /**
-     * Calculates and returns the velocity of the contact
-     * point on the given body.
+     * Calculates the velocity of the contact point on the given
+     * body, writing it to the destination.
      */
-    protected Vector3 calculateLocalVelocity(int bodyIndex, double duration) {
+    protected void calculateLocalVelocity(int bodyIndex, double duration, Vector3 out) {
         RigidBody thisBody = body[bodyIndex];
 
         // Work out the velocity of the contact point.
-        Vector3 velocity = thisBody.getRotation().rest(relativeContactPosition[bodyIndex]);
-        velocity.sumToMe(thisBody.getVelocity());
+        Vector3 velocity = tmp1;
+        thisBody.getRotation(velocity);
+        velocity.vectorProduct(relativeContactPosition[bodyIndex], velocity);
+        thisBody.getVelocity(tmp2);
+        velocity.sumToMe(tmp2);
 
         // Turn the velocity into contact-coordinates.
-        Vector3 _contactVelocity = contactToWorld.transformTranspose(velocity);
+        contactToWorld.transformTranspose(velocity, out);
 
         // Calculate the ammount of velocity that is due to forces without
         // reactions.
-        Vector3 accVelocity = thisBody.getLastFrameAcceleration().mult(duration);
+        Vector3 accVelocity = tmp2;
+        thisBody.getLastFrameAcceleration(accVelocity);
+        accVelocity.multToMe(duration);
 
         // Calculate the velocity in contact-coordinates.
-        accVelocity = contactToWorld.transformTranspose(accVelocity);
+        contactToWorld.transformTranspose(accVelocity, accVelocity);
 
         // We ignore any component of acceleration in the contact normal
         // direction, we are only interested in planar acceleration
@@ -276,10 +360,7 @@ public class Contact {
 
         // Add the planar velocities - if there's enough friction they will
         // be removed during velocity resolution
-        _contactVelocity.sumToMe(accVelocity);
-
-        // And return it
-        return _contactVelocity;
+        out.sumToMe(accVelocity);
     }
 
     /**
@@ -294,9 +375,7 @@ public class Contact {
      * directionss are set so they are at right angles to it.
      */
     protected void calculateContactBasis() {
-        Vector3[] contactTangent = new Vector3[2];
-        contactTangent[0] = new Vector3();
-        contactTangent[1] = new Vector3();
+        Vector3[] contactTangent = { tmp1, tmp2 };
 
         // Check whether the Z-axis is nearer to the X or Y axis
         if (Math.abs(contactNormal.getX()) > Math.abs(contactNormal.getY())) {
@@ -344,30 +423,28 @@ public class Contact {
     protected void applyVelocityChange(Vector3 velocityChange[], Vector3 rotationChange[]) {
         // Get hold of the inverse mass and inverse inertia tensor, both in
         // world coordinates.
-        Matrix3[] inverseInertiaTensor = { null, null };
-        inverseInertiaTensor[0] = body[0].getInverseInertiaTensorWorld();
+        body[0].getInverseInertiaTensorWorld(inverseInertiaTensor[0]);
         if (body[1] != null) {
-            inverseInertiaTensor[1] = body[1].getInverseInertiaTensorWorld();
+            body[1].getInverseInertiaTensorWorld(inverseInertiaTensor[1]);
         }
 
         // We will calculate the impulse for each contact axis
-        Vector3 impulseContact;
-
         if (friction == 0.0) {
             // Use the short format for frictionless contacts
-            impulseContact = calculateFrictionlessImpulse(inverseInertiaTensor);
+            calculateFrictionlessImpulse(inverseInertiaTensor, impulseContact);
         } else {
             // Otherwise we may have impulses that aren't in the direction of the
             // contact, so we need the more complex version.
-            impulseContact = calculateFrictionImpulse(inverseInertiaTensor);
+            calculateFrictionImpulse(inverseInertiaTensor, impulseContact);
         }
 
         // Convert impulse to world coordinates
-        Vector3 impulse = contactToWorld.transform(impulseContact);
+        contactToWorld.transform(impulseContact, impulse);
 
         // Split in the impulse into linear and rotational components
-        Vector3 impulsiveTorque = relativeContactPosition[0].rest(impulse);
-        rotationChange[0] = inverseInertiaTensor[0].transform(impulsiveTorque);
+        Vector3 impulsiveTorque = tmp1;
+        relativeContactPosition[0].vectorProduct(impulse, impulsiveTorque);
+        inverseInertiaTensor[0].transform(impulsiveTorque, rotationChange[0]);
         velocityChange[0].clear();
         velocityChange[0].addScaledVector(impulse, body[0].getInverseMass());
 
@@ -377,8 +454,8 @@ public class Contact {
 
         if (body[1] != null) {
             // Work out body one's linear and angular changes
-            impulsiveTorque = impulse.rest(relativeContactPosition[1]);
-            rotationChange[1] = inverseInertiaTensor[1].transform(impulsiveTorque);
+            impulse.vectorProduct(relativeContactPosition[1], impulsiveTorque);
+            inverseInertiaTensor[1].transform(impulsiveTorque, rotationChange[1]);
             velocityChange[1].clear();
             velocityChange[1].addScaledVector(impulse, -body[1].getInverseMass());
 
@@ -405,13 +482,15 @@ public class Contact {
         // of the contact normal, due to angular inertia only.
         for (int i = 0; i < 2; i++)
             if (body[i] != null) {
-                Matrix3 inverseInertiaTensor = body[i].getInverseInertiaTensorWorld();
+                Matrix3 inverseInertiaTensor = tmpMatrix1;
+                body[i].getInverseInertiaTensorWorld(inverseInertiaTensor);
 
                 // Use the same procedure as for calculating frictionless
                 // velocity change to work out the angular inertia.
-                Vector3 angularInertiaWorld = relativeContactPosition[i].rest(contactNormal);
-                angularInertiaWorld = inverseInertiaTensor.transform(angularInertiaWorld);
-                angularInertiaWorld = angularInertiaWorld.rest(relativeContactPosition[i]);
+                Vector3 angularInertiaWorld = tmp1;
+                relativeContactPosition[i].vectorProduct(contactNormal, angularInertiaWorld);
+                inverseInertiaTensor.transform(angularInertiaWorld, angularInertiaWorld);
+                angularInertiaWorld.vectorProduct(relativeContactPosition[i], angularInertiaWorld);
                 angularInertia[i] = angularInertiaWorld.mult(contactNormal);
 
                 // The linear component is simply the inverse mass
@@ -462,17 +541,20 @@ public class Contact {
                     angularChange[i].clear();
                 } else {
                     // Work out the direction we'd like to rotate in.
-                    Vector3 targetAngularDirection = relativeContactPosition[i].vectorProduct(contactNormal);
+                    Vector3 targetAngularDirection = tmp1;
+                    relativeContactPosition[i].vectorProduct(contactNormal, targetAngularDirection);
 
-                    Matrix3 inverseInertiaTensor = body[i].getInverseInertiaTensorWorld();
+                    Matrix3 inverseInertiaTensor = tmpMatrix1;
+                    body[i].getInverseInertiaTensorWorld(inverseInertiaTensor);
 
                     // Work out the direction we'd need to rotate to achieve that
-                    angularChange[i] = inverseInertiaTensor.transform(targetAngularDirection).mult(angularMove[i] / angularInertia[i]);
+                    inverseInertiaTensor.transform(targetAngularDirection, angularChange[i]);
+                    angularChange[i].multToMe(angularMove[i] / angularInertia[i]);
                 }
 
                 // Velocity change is easier - it is just the linear movement
                 // along the contact normal.
-                linearChange[i] = contactNormal.mult(linearMove[i]);
+                contactNormal.mult(linearMove[i], linearChange[i]);
 
                 // Now we can start to apply the values we've calculated.
                 // Apply the linear movement
@@ -501,14 +583,15 @@ public class Contact {
      * save calculation time: the calling function has access to
      * these anyway.
      */
-    protected Vector3 calculateFrictionlessImpulse(Matrix3[] inverseInertiaTensor) {
+    protected void calculateFrictionlessImpulse(Matrix3[] inverseInertiaTensor, Vector3 impulseContact) {
 
         // Build a vector that shows the change in velocity in
         // world space for a unit impulse in the direction of the contact
         // normal.
-        Vector3 deltaVelWorld = relativeContactPosition[0].rest(contactNormal);
-        deltaVelWorld = inverseInertiaTensor[0].transform(deltaVelWorld);
-        deltaVelWorld = deltaVelWorld.rest(relativeContactPosition[0]);
+        Vector3 deltaVelWorld = tmp1;
+        relativeContactPosition[0].vectorProduct(contactNormal, deltaVelWorld);
+        inverseInertiaTensor[0].transform(deltaVelWorld, deltaVelWorld);
+        deltaVelWorld.vectorProduct(relativeContactPosition[0], deltaVelWorld);
 
         // Work out the change in velocity in contact coordiantes.
         double deltaVelocity = deltaVelWorld.mult(contactNormal);
@@ -519,9 +602,9 @@ public class Contact {
         // Check if we need to the second body's data
         if (body[1] != null) {
             // Go through the same transformation sequence again
-            deltaVelWorld = relativeContactPosition[1].rest(contactNormal);
-            deltaVelWorld = inverseInertiaTensor[1].transform(deltaVelWorld);
-            deltaVelWorld = deltaVelWorld.rest(relativeContactPosition[1]);
+            relativeContactPosition[1].vectorProduct(contactNormal, deltaVelWorld);
+            inverseInertiaTensor[1].transform(deltaVelWorld, deltaVelWorld);
+            deltaVelWorld.vectorProduct(relativeContactPosition[1], deltaVelWorld);
 
             // Add the change in velocity due to rotation
             deltaVelocity += deltaVelWorld.mult(contactNormal);
@@ -530,12 +613,10 @@ public class Contact {
             deltaVelocity += body[1].getInverseMass();
         }
 
-        Vector3 impulseContact = new Vector3();
         // Calculate the required size of the impulse
         impulseContact.setX(desiredDeltaVelocity / deltaVelocity);
         impulseContact.setY(0);
         impulseContact.setZ(0);
-        return impulseContact;
     }
 
     /**
@@ -545,19 +626,19 @@ public class Contact {
      * object - is specified to save calculation time: the calling
      * function has access to these anyway.
      */
-    protected Vector3 calculateFrictionImpulse(Matrix3[] inverseInertiaTensor) {
-        Vector3 impulseContact;
+    protected void calculateFrictionImpulse(Matrix3[] inverseInertiaTensor, Vector3 impulseContact) {
         double inverseMass = body[0].getInverseMass();
 
         // The equivalent of a cross product in matrices is multiplication
         // by a skew symmetric matrix - we build the matrix for converting
         // between linear and angular quantities.
-        Matrix3 impulseToTorque = new Matrix3();
+        Matrix3 impulseToTorque = tmpMatrix1;
         impulseToTorque.setSkewSymmetric(relativeContactPosition[0]);
 
         // Build the matrix to convert contact impulse to change in velocity
         // in world coordinates.
-        Matrix3 deltaVelWorld = new Matrix3(impulseToTorque);
+        Matrix3 deltaVelWorld = tmpMatrix2;
+        deltaVelWorld.set(impulseToTorque);
         deltaVelWorld.multToMe(inverseInertiaTensor[0]);
         deltaVelWorld.multToMe(impulseToTorque);
         deltaVelWorld.multToMe(-1);
@@ -581,7 +662,8 @@ public class Contact {
         }
 
         // Do a change of basis to convert into contact coordinates.
-        Matrix3 deltaVelocity = contactToWorld.transpose();
+        Matrix3 deltaVelocity = tmpMatrix3;
+        deltaVelocity.setTranspose(contactToWorld);
         deltaVelocity.multToMe(deltaVelWorld);
         deltaVelocity.multToMe(contactToWorld);
 
@@ -590,14 +672,18 @@ public class Contact {
         deltaVelocity.data[4] += inverseMass;
         deltaVelocity.data[8] += inverseMass;
 
-        // Invert to get the impulse needed per unit velocity
-        Matrix3 impulseMatrix = deltaVelocity.inverse();
+        // Invert to get the impulse needed per unit velocity (a singular
+        // matrix leaves the zero matrix, as inverse() does)
+        Matrix3 impulseMatrix = tmpMatrix1;
+        Arrays.fill(impulseMatrix.data, 0);
+        impulseMatrix.setInverse(deltaVelocity);
 
         // Find the target velocities to kill
-        Vector3 velKill = new Vector3(desiredDeltaVelocity, -contactVelocity.getY(), -contactVelocity.getZ());
+        Vector3 velKill = tmp1;
+        velKill.set(desiredDeltaVelocity, -contactVelocity.getY(), -contactVelocity.getZ());
 
         // Find the impulse to kill target velocities
-        impulseContact = impulseMatrix.transform(velKill);
+        impulseMatrix.transform(velKill, impulseContact);
 
         // Check for exceeding friction
         double planarImpulse = Math.sqrt(impulseContact.getY() * impulseContact.getY() + impulseContact.getZ() * impulseContact.getZ());
@@ -611,7 +697,155 @@ public class Contact {
             impulseContact.setY(impulseContact.getY() * friction * impulseContact.getX());
             impulseContact.setZ(impulseContact.getZ() * friction * impulseContact.getX());
         }
-        return impulseContact;
+    }
+
+    /**
+     * Prepares the contact for the iterative impulse solver, working out
+     * the effective mass along each contact axis and the normal velocity
+     * to reach. Sleeping bodies are treated as immovable. Must be called
+     * after calculateInternals.
+     * 
+     * @return false if neither body can move, so the contact is skipped.
+     */
+    protected boolean prepareImpulse() {
+        for (int i = 0; i < 2; i++) {
+            movable[i] = body[i] != null && body[i].getAwake();
+            if (movable[i]) {
+                inverseMass[i] = body[i].getInverseMass();
+                body[i].getInverseInertiaTensorWorld(inverseInertiaTensor[i]);
+            } else {
+                inverseMass[i] = 0;
+            }
+        }
+
+        // The velocity change per unit impulse along each axis, as in
+        // calculateFrictionlessImpulse.
+        Vector3 axis = tmp1;
+        Vector3 deltaVelWorld = tmp2;
+        for (int a = 0; a < 3; a++) {
+            contactToWorld.getAxisVector(a, axis);
+            double deltaVelocity = inverseMass[0] + inverseMass[1];
+            for (int i = 0; i < 2; i++) {
+                if (movable[i]) {
+                    relativeContactPosition[i].vectorProduct(axis, deltaVelWorld);
+                    inverseInertiaTensor[i].transform(deltaVelWorld, deltaVelWorld);
+                    deltaVelWorld.vectorProduct(relativeContactPosition[i], deltaVelWorld);
+                    deltaVelocity += deltaVelWorld.scalarProduct(axis);
+                }
+            }
+            axisMass[a] = deltaVelocity > 0 ? 1 / deltaVelocity : 0;
+        }
+
+        targetVelocity = contactVelocity.getX() + desiredDeltaVelocity;
+        impulseActive = axisMass[0] > 0;
+        return impulseActive;
+    }
+
+    /**
+     * @return whether the last prepareImpulse found a body that can move.
+     */
+    protected boolean isImpulseActive() {
+        return impulseActive;
+    }
+
+    /**
+     * Applies the accumulated impulse, as loaded from the previous step,
+     * before the solver iterates.
+     */
+    protected void warmStart() {
+        if (!impulseActive) {
+            accumulatedImpulse.clear();
+            return;
+        }
+        contactToWorld.transform(accumulatedImpulse, impulse);
+        applyImpulse(impulse);
+    }
+
+    /**
+     * Performs one projected Gauss-Seidel iteration on this contact: the
+     * friction impulse, clamped to the friction cone of the accumulated
+     * normal impulse, then the normal impulse, clamped so the total never
+     * pulls the bodies together.
+     * 
+     * @return the change in closing velocity made by the normal impulse.
+     */
+    protected double solveImpulse() {
+        if (!impulseActive) return 0;
+        Vector3 velocity = tmp3;
+
+        if (friction != 0) {
+            calculateRelativeVelocity(velocity);
+            double oldY = accumulatedImpulse.getY();
+            double oldZ = accumulatedImpulse.getZ();
+            double y = oldY - velocity.getY() * axisMass[1];
+            double z = oldZ - velocity.getZ() * axisMass[2];
+            double maxImpulse = friction * accumulatedImpulse.getX();
+            double planarImpulse = Math.sqrt(y * y + z * z);
+            if (planarImpulse > maxImpulse) {
+                double scale = planarImpulse > 0 ? maxImpulse / planarImpulse : 0;
+                y *= scale;
+                z *= scale;
+            }
+            accumulatedImpulse.setY(y);
+            accumulatedImpulse.setZ(z);
+            impulseContact.set(0, y - oldY, z - oldZ);
+            contactToWorld.transform(impulseContact, impulse);
+            applyImpulse(impulse);
+        }
+
+        calculateRelativeVelocity(velocity);
+        double old = accumulatedImpulse.getX();
+        double normal = Math.max(old + (targetVelocity - velocity.getX()) * axisMass[0], 0);
+        accumulatedImpulse.setX(normal);
+        impulseContact.set(normal - old, 0, 0);
+        contactToWorld.transform(impulseContact, impulse);
+        applyImpulse(impulse);
+        return Math.abs(normal - old) / axisMass[0];
+    }
+
+    /**
+     * Writes the velocity of body one relative to body two at the
+     * contact point, in contact coordinates.
+     */
+    private void calculateRelativeVelocity(Vector3 out) {
+        body[0].getRotation(out);
+        out.vectorProduct(relativeContactPosition[0], out);
+        body[0].getVelocity(tmp1);
+        out.sumToMe(tmp1);
+
+        if (body[1] != null) {
+            body[1].getRotation(tmp1);
+            tmp1.vectorProduct(relativeContactPosition[1], tmp1);
+            body[1].getVelocity(tmp2);
+            tmp1.sumToMe(tmp2);
+            out.subToMe(tmp1);
+        }
+        contactToWorld.transformTranspose(out, out);
+    }
+
+    /**
+     * Applies the given world impulse to body one, and its opposite to
+     * body two, skipping the bodies that can't move.
+     */
+    private void applyImpulse(Vector3 impulse) {
+        Vector3 change = tmp1;
+        Vector3 impulsiveTorque = tmp2;
+        if (movable[0]) {
+            change.clear();
+            change.addScaledVector(impulse, inverseMass[0]);
+            body[0].addVelocity(change);
+            relativeContactPosition[0].vectorProduct(impulse, impulsiveTorque);
+            inverseInertiaTensor[0].transform(impulsiveTorque, change);
+            body[0].addRotation(change);
+        }
+        if (movable[1]) {
+            change.clear();
+            change.addScaledVector(impulse, -inverseMass[1]);
+            body[1].addVelocity(change);
+            impulse.vectorProduct(relativeContactPosition[1], impulsiveTorque);
+            inverseInertiaTensor[1].transform(impulsiveTorque, change);
+            body[1].addRotation(change);
+        }
     }
 
 }
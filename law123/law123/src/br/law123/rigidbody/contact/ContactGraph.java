@@ -0,0 +1,221 @@
+package br.law123.rigidbody.contact;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.law123.rigidbody.RigidBody;
+
+/**
+ * Book-keeping used by the contact resolver to avoid scanning every
+ * contact on each iteration.
+ *
+ * The graph indexes, for each body, the contacts it takes part in, so
+ * the contacts affected by resolving one contact can be found in time
+ * proportional to the number of contacts on its two bodies. It also
+ * keeps an indexed max-heap over a per-contact key (desired delta
+ * velocity or penetration), so the worst contact is found in constant
+ * time and a changed key is repositioned in logarithmic time.
+ *
+ * Ties are broken by contact index, and NaN keys sort as negative
+ * infinity, so the heap picks exactly the contact a linear scan for
+ * the first strictly greatest value would pick.
+ */
+class ContactGraph {
+
+    private final Map<RigidBody, Integer> bodyIndex = new IdentityHashMap<RigidBody, Integer>();
+
+    // Body slots of each contact (two per contact), -1 for the scenery.
+    private int[] contactBodies = new int[0];
+
+    // Contacts of each body: adjacency[start[b]] to adjacency[start[b + 1]].
+    private int[] start = new int[1];
+    private int[] adjacency = new int[0];
+
+    // Contacts found by the last neighbours() call.
+    private int[] neighbours = new int[0];
+    private int[] visited = new int[0];
+    private int visitStamp;
+
+    private double[] key = new double[0];
+    private int[] heap = new int[0];
+    private int[] heapPosition = new int[0];
+    private int size;
+
+    /**
+     * Indexes the bodies of the given contacts. Must be called after the
+     * contacts have had their internals calculated, since that may swap
+     * their bodies.
+     */
+    void build(List<Contact> contacts) {
+        size = contacts.size();
+        if (key.length < size) {
+            int capacity = Math.max(size, key.length * 2);
+            contactBodies = new int[capacity * 2];
+            adjacency = new int[capacity * 2];
+            neighbours = new int[capacity];
+            visited = new int[capacity];
+            key = new double[capacity];
+            heap = new int[capacity];
+            heapPosition = new int[capacity];
+        }
+
+        bodyIndex.clear();
+        int edges = 0;
+        for (int i = 0; i < size; i++) {
+            RigidBody[] bodies = contacts.get(i).getBody();
+            for (int b = 0; b < 2; b++) {
+                if (bodies[b] == null) {
+                    contactBodies[i * 2 + b] = -1;
+                    continue;
+                }
+                Integer index = bodyIndex.get(bodies[b]);
+                if (index == null) {
+                    index = bodyIndex.size();
+                    bodyIndex.put(bodies[b], index);
+                }
+                contactBodies[i * 2 + b] = index;
+                edges++;
+            }
+        }
+
+        int bodyCount = bodyIndex.size();
+        if (start.length < bodyCount + 1) {
+            start = new int[Math.max(bodyCount + 1, start.length * 2)];
+        }
+        Arrays.fill(start, 0, bodyCount + 1, 0);
+        for (int i = 0; i < size * 2; i++) {
+            if (contactBodies[i] >= 0) {
+                start[contactBodies[i] + 1]++;
+            }
+        }
+        for (int b = 0; b < bodyCount; b++) {
+            start[b + 1] += start[b];
+        }
+        // Fill each body's row in contact order, using the row start as
+        // the cursor; each start then points at the next row, so shift
+        // them back by one.
+        for (int i = 0; i < size * 2; i++) {
+            int body = contactBodies[i];
+            if (body >= 0) {
+                adjacency[start[body]++] = i / 2;
+            }
+        }
+        System.arraycopy(start, 0, start, 1, bodyCount);
+        start[0] = 0;
+        assert start[bodyCount] == edges;
+
+        Arrays.fill(visited, 0, size, 0);
+        visitStamp = 0;
+    }
+
+    /**
+     * Finds the contacts sharing a body with the given contact,
+     * including the contact itself. Each contact is listed once.
+     *
+     * @return the number of contacts found, see {@link #getNeighbour(int)}.
+     */
+    int neighbours(int contact) {
+        int stamp = ++visitStamp;
+        int count = 0;
+        for (int d = 0; d < 2; d++) {
+            int body = contactBodies[contact * 2 + d];
+            if (body < 0) continue;
+            for (int k = start[body]; k < start[body + 1]; k++) {
+                int other = adjacency[k];
+                if (visited[other] != stamp) {
+                    visited[other] = stamp;
+                    neighbours[count++] = other;
+                }
+            }
+        }
+        return count;
+    }
+
+    int getNeighbour(int i) {
+        return neighbours[i];
+    }
+
+    /**
+     * Sets the initial key of a contact. Call {@link #buildHeap()} once
+     * every key is set.
+     */
+    void initKey(int contact, double value) {
+        key[contact] = sortable(value);
+    }
+
+    void buildHeap() {
+        for (int i = 0; i < size; i++) {
+            heap[i] = i;
+            heapPosition[i] = i;
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Changes the key of a contact, keeping the heap ordered.
+     */
+    void updateKey(int contact, double value) {
+        double old = key[contact];
+        key[contact] = sortable(value);
+        if (key[contact] > old) {
+            siftUp(heapPosition[contact]);
+        } else {
+            siftDown(heapPosition[contact]);
+        }
+    }
+
+    /**
+     * @return the contact with the greatest key, the lowest index on ties.
+     */
+    int top() {
+        return heap[0];
+    }
+
+    double topKey() {
+        return key[heap[0]];
+    }
+
+    private static double sortable(double value) {
+        return Double.isNaN(value) ? Double.NEGATIVE_INFINITY : value;
+    }
+
+    private boolean before(int a, int b) {
+        return key[a] > key[b] || (key[a] == key[b] && a < b);
+    }
+
+    private void siftUp(int i) {
+        int contact = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!before(contact, heap[parent])) break;
+            place(heap[parent], i);
+            i = parent;
+        }
+        place(contact, i);
+    }
+
+    private void siftDown(int i) {
+        int contact = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], contact)) break;
+            place(heap[child], i);
+            i = child;
+        }
+        place(contact, i);
+    }
+
+    private void place(int contact, int position) {
+        heap[position] = contact;
+        heapPosition[contact] = position;
+    }
+
+}
@@ -15,6 +15,12 @@ public class ContactResolver {
     private int velocityIterationsUsed;
     private int positionIterationsUsed;
 
+    private final ContactGraph graph = new ContactGraph();
+    private final Vector3[] velocityChange = { new Vector3(), new Vector3() };
+    private final Vector3[] rotationChange = { new Vector3(), new Vector3() };
+    private final Vector3 deltaVel = new Vector3();
+    private final Vector3 contactDeltaVel = new Vector3();
+
     public ContactResolver(int iterations) {
         this(iterations, 0.01, 0.01);
     }
@@ -29,7 +35,7 @@ public class ContactResolver {
     }
 
     public ContactResolver(int velocityIterations, int positionIterations, double velocityEpsilon, double positionEpsilon) {
-        setIterations(velocityIterations);
+        setIterations(velocityIterations, positionIterations);
         setEpsilon(velocityEpsilon, positionEpsilon);
     }
 
@@ -40,7 +46,7 @@ public class ContactResolver {
         return (velocityIterations > 0) && (positionIterations > 0) && (positionEpsilon >= 0.0f) && (positionEpsilon >= 0.0f);
     }
 
-    void setIterations(int velocityIterations, int positionIterations) {
+    public void setIterations(int velocityIterations, int positionIterations) {
         this.velocityIterations = velocityIterations;
         this.positionIterations = positionIterations;
     }
@@ -54,6 +60,18 @@ public class ContactResolver {
         this.positionEpsilon = positionEpsilon;
     }
 
+    public double getVelocityEpsilon() {
+        return velocityEpsilon;
+    }
+
+    public double getPositionEpsilon() {
+        return positionEpsilon;
+    }
+
+    protected int getVelocityIterations() {
+        return velocityIterations;
+    }
+
     public void resolveContacts(List<Contact> contacts, double duration) {
         // Make sure we have something to do.
         if (contacts.size() < 1) {
@@ -65,6 +83,10 @@ public class ContactResolver {
         // Prepare the contacts for processing
         prepareContacts(contacts, duration);
 
+        // Index the contacts of each body, so each iteration only
+        // updates the contacts sharing a body with the resolved one.
+        graph.build(contacts);
+
         // Resolve the interpenetration problems with the contacts.
         adjustPositions(contacts, duration);
 
@@ -78,27 +100,24 @@ public class ContactResolver {
         }
     }
 
-    private void adjustVelocities(List<Contact> contacts, double duration) {
-        Vector3[] velocityChange = { new Vector3(), new Vector3() };
-        Vector3[] rotationChange = { new Vector3(), new Vector3() };
-        Vector3 deltaVel = new Vector3();
+    /**
+     * Resolves the velocity issues with the given array of contacts,
+     * worst first, using the given number of iterations.
+     */
+    protected void adjustVelocities(List<Contact> contacts, double duration) {
+        for (int i = 0; i < contacts.size(); i++) {
+            graph.initKey(i, contacts.get(i).desiredDeltaVelocity);
+        }
+        graph.buildHeap();
 
         // iteratively handle impacts in order of severity.
         velocityIterationsUsed = 0;
         while (velocityIterationsUsed < velocityIterations) {
             // Find contact with maximum magnitude of probable velocity change.
-            double max = velocityEpsilon;
-            int index = contacts.size();
-            for (int i = 0; i < contacts.size(); i++) {
-                Contact contact = contacts.get(i);
-                if (contact.desiredDeltaVelocity > max) {
-                    max = contact.desiredDeltaVelocity;
-                    index = i;
-                }
-            }
-            if (index == contacts.size()) {
+            if (!(graph.topKey() > velocityEpsilon)) {
                 break;
             }
+            int index = graph.top();
 
             // Match the awake state at the contact
             Contact contact = contacts.get(index);
@@ -110,7 +129,9 @@ public class ContactResolver {
             // With the change in velocity of the two bodies, the update of
             // contact velocities means that some of the relative closing
             // velocities need recomputing.
-            for (int i = 0; i < contacts.size(); i++) {
+            int count = graph.neighbours(index);
+            for (int n = 0; n < count; n++) {
+                int i = graph.getNeighbour(n);
                 // Check each body in the contact
                 for (int b = 0; b < 2; b++) {
                     Contact contacti = contacts.get(i);
@@ -119,16 +140,20 @@ public class ContactResolver {
                         // resolved contact
                         for (int d = 0; d < 2; d++) {
                             if (contacti.getBody()[b] == contact.getBody()[d]) {
-                                deltaVel = velocityChange[d].sum(rotationChange[d].vectorProduct(contacti.relativeContactPosition[b]));
+                                rotationChange[d].vectorProduct(contacti.relativeContactPosition[b], deltaVel);
+                                velocityChange[d].sum(deltaVel, deltaVel);
 
                                 // The sign of the change is negative if we're dealing
                                 // with the second body in a contact.
-                                contacti.contactVelocity.sumToMe(contacti.getContactToWorld().transformTranspose(deltaVel).mult(b == 1 ? -1 : 1));
+                                contacti.getContactToWorld().transformTranspose(deltaVel, contactDeltaVel);
+                                contactDeltaVel.multToMe(b == 1 ? -1 : 1);
+                                contacti.contactVelocity.sumToMe(contactDeltaVel);
                                 contacti.calculateDesiredDeltaVelocity(duration);
                             }
                         }
                     }
                 }
+                graph.updateKey(i, contacts.get(i).desiredDeltaVelocity);
             }
             velocityIterationsUsed++;
         }
@@ -139,29 +164,24 @@ public class ContactResolver {
      * using the given number of iterations.
      */
     private void adjustPositions(List<Contact> contacts, double duration) {
-        int i;
-        int index;
-        Vector3[] linearChange = new Vector3[2];
-        Vector3[] angularChange = { new Vector3(), new Vector3() };
-        double max;
-        Vector3 deltaPosition;
+        Vector3[] linearChange = velocityChange;
+        Vector3[] angularChange = rotationChange;
+        Vector3 deltaPosition = deltaVel;
+
+        for (int i = 0; i < contacts.size(); i++) {
+            graph.initKey(i, contacts.get(i).getPenetration());
+        }
+        graph.buildHeap();
 
         // iteratively resolve interpenetrations in order of severity.
         positionIterationsUsed = 0;
         while (positionIterationsUsed < positionIterations) {
             // Find biggest penetration
-            max = positionEpsilon;
-            index = contacts.size();
-            for (i = 0; i < contacts.size(); i++) {
-                Contact contact = contacts.get(i);
-                if (contact.getPenetration() > max) {
-                    max = contact.getPenetration();
-                    index = i;
-                }
-            }
-            if (index == contacts.size()) {
+            double max = graph.topKey();
+            if (!(max > positionEpsilon)) {
                 break;
             }
+            int index = graph.top();
 
             // Match the awake state at the contact
             Contact contact = contacts.get(index);
@@ -172,7 +192,9 @@ public class ContactResolver {
 
             // Again this action may have changed the penetration of other
             // bodies, so we update contacts.
-            for (i = 0; i < contacts.size(); i++) {
+            int count = graph.neighbours(index);
+            for (int n = 0; n < count; n++) {
+                int i = graph.getNeighbour(n);
                 // Check each body in the contact
                 for (int b = 0; b < 2; b++)
                     if (contacts.get(i).getBody()[b] != null) {
@@ -181,16 +203,19 @@ public class ContactResolver {
                         for (int d = 0; d < 2; d++) {
                             Contact contacti = contacts.get(i);
                             if (contacti.getBody()[b] == contact.getBody()[d]) {
-                                deltaPosition = linearChange[d].sum(angularChange[d].vectorProduct(contacti.relativeContactPosition[b]));
+                                angularChange[d].vectorProduct(contacti.relativeContactPosition[b], deltaPosition);
+                                linearChange[d].sum(deltaPosition, deltaPosition);
 
                                 // The sign of the change is positive if we're
                                 // dealing with the second body in a contact
                                 // and negative otherwise (because we're
                                 // subtracting the resolution)..
-                                contacti.setPenetration(contacti.getPenetration() + deltaPosition.scalarProduct(contacti.getContactNormal().mult(b == 1 ? 1 : -1)));
+                                double sign = b == 1 ? 1 : -1;
+                                contacti.setPenetration(contacti.getPenetration() + sign * deltaPosition.scalarProduct(contacti.getContactNormal()));
                             }
                         }
                     }
+                graph.updateKey(i, contacts.get(i).getPenetration());
             }
             positionIterationsUsed++;
         }
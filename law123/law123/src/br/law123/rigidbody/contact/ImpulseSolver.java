@@ -0,0 +1,109 @@
+package br.law123.rigidbody.contact;
+
+import java.util.List;
+
+/**
+ * A contact resolver that solves velocities with projected Gauss-Seidel
+ * over accumulated impulses, instead of resolving the worst contact
+ * first.
+ *
+ * Each iteration sweeps every contact, applying the change in impulse
+ * needed to reach its target closing velocity (and to stop sliding,
+ * within the friction cone). The impulse accumulated on each contact is
+ * clamped rather than the change, so later iterations can undo an
+ * earlier over-correction. The accumulated impulses are kept in a
+ * {@link WarmStartCache} and reapplied at the start of the next step,
+ * so resting contacts start close to their solution and a few
+ * iterations are enough.
+ *
+ * Interpenetration is still resolved as in {@link ContactResolver},
+ * before the velocities.
+ */
+public class ImpulseSolver extends ContactResolver {
+
+    /**
+     * Fraction of last step's impulse reapplied when warm-starting. A
+     * little under one, so stale impulses don't add energy.
+     */
+    public static final double DEFAULT_WARM_START_FACTOR = 0.85;
+
+    private final WarmStartCache cache;
+    private final WarmStartCache.Key probe = new WarmStartCache.Key();
+    private double warmStartFactor = DEFAULT_WARM_START_FACTOR;
+
+    private int impulseIterationsUsed;
+
+    public ImpulseSolver(int velocityIterations, int positionIterations) {
+        this(velocityIterations, positionIterations, 0.01, 0.01, new WarmStartCache());
+    }
+
+    public ImpulseSolver(int velocityIterations, int positionIterations, double velocityEpsilon, double positionEpsilon, WarmStartCache cache) {
+        super(velocityIterations, positionIterations, velocityEpsilon, positionEpsilon);
+        this.cache = cache;
+    }
+
+    public WarmStartCache getCache() {
+        return cache;
+    }
+
+    public double getWarmStartFactor() {
+        return warmStartFactor;
+    }
+
+    /**
+     * @param warmStartFactor fraction of last step's impulse to reapply,
+     *        zero to start every step cold.
+     */
+    public void setWarmStartFactor(double warmStartFactor) {
+        this.warmStartFactor = warmStartFactor;
+    }
+
+    /**
+     * @return the number of sweeps made by the last call.
+     */
+    public int getImpulseIterationsUsed() {
+        return impulseIterationsUsed;
+    }
+
+    @Override
+    protected void adjustVelocities(List<Contact> contacts, double duration) {
+        int count = contacts.size();
+
+        // Wake the bodies first, so every contact sees the final state.
+        for (int i = 0; i < count; i++) {
+            Contact contact = contacts.get(i);
+            if (contact.desiredDeltaVelocity > getVelocityEpsilon()) {
+                contact.matchAwakeState();
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            Contact contact = contacts.get(i);
+            if (contact.prepareImpulse()) {
+                cache.load(contact, probe, warmStartFactor);
+            }
+            contact.warmStart();
+        }
+
+        // Sweep until no contact needs a noticeable velocity change.
+        impulseIterationsUsed = 0;
+        while (impulseIterationsUsed < getVelocityIterations()) {
+            double max = 0;
+            for (int i = 0; i < count; i++) {
+                max = Math.max(max, contacts.get(i).solveImpulse());
+            }
+            impulseIterationsUsed++;
+            if (max <= getVelocityEpsilon()) {
+                break;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            Contact contact = contacts.get(i);
+            if (contact.isImpulseActive()) {
+                cache.store(contact, probe);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package br.law123.rigidbody.contact;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import br.law123.rigidbody.RigidBody;
+
+/**
+ * Keeps the impulses accumulated by the {@link ImpulseSolver} from one
+ * step to the next, keyed by the two bodies of a contact and its
+ * feature id, so a contact generated again by the same features starts
+ * from the impulse that held it last step.
+ *
+ * A cache may be shared by solvers running on different threads, as
+ * long as they resolve contacts of disjoint sets of bodies (as contact
+ * islands do). {@link #endFrame()} must be called once per step, after
+ * every contact has been resolved, to drop the contacts that were not
+ * generated again.
+ */
+public class WarmStartCache {
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+    private long frame;
+
+    /**
+     * Sets the accumulated impulse of the contact to the one stored for
+     * it, scaled by the given factor, or to zero if there is none.
+     */
+    void load(Contact contact, Key probe, double factor) {
+        Entry entry = entries.get(probe.set(contact));
+        if (entry == null) {
+            contact.accumulatedImpulse.clear();
+        } else {
+            contact.accumulatedImpulse.set(entry.normal * factor, entry.tangent1 * factor, entry.tangent2 * factor);
+        }
+    }
+
+    /**
+     * Stores the accumulated impulse of the contact for the next step.
+     */
+    void store(Contact contact, Key probe) {
+        Entry entry = entries.get(probe.set(contact));
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(new Key().set(contact), entry);
+        }
+        entry.normal = contact.accumulatedImpulse.getX();
+        entry.tangent1 = contact.accumulatedImpulse.getY();
+        entry.tangent2 = contact.accumulatedImpulse.getZ();
+        entry.frame = frame;
+    }
+
+    /**
+     * Drops the contacts that were not stored since the last call, and
+     * starts a new step.
+     */
+    public void endFrame() {
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+            if (it.next().frame != frame) {
+                it.remove();
+            }
+        }
+        frame++;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Identifies a contact by its bodies and feature id. Bodies are
+     * compared by the identity of {@link RigidBody#getOriginal()}, since
+     * a contact may carry a copy of a body made for it alone (as for the
+     * bodies that are not integrated). Solvers keep one to look entries
+     * up without allocating.
+     */
+    static final class Key {
+
+        private RigidBody one;
+        private RigidBody two;
+        private int feature;
+        private int hash;
+
+        Key set(Contact contact) {
+            one = original(contact.getBody()[0]);
+            two = original(contact.getBody()[1]);
+            feature = contact.getFeature();
+            hash = (System.identityHashCode(one) * 31 + System.identityHashCode(two)) * 31 + feature;
+            return this;
+        }
+
+        private static RigidBody original(RigidBody body) {
+            return body == null ? null : body.getOriginal();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return one == other.one && two == other.two && feature == other.feature;
+        }
+    }
+
+    private static final class Entry {
+
+        double normal;
+        double tangent1;
+        double tangent2;
+        long frame;
+    }
+}